@@ -65,6 +65,15 @@ public class ImMultipartFormData {
         }
     }
 
+    /**
+     * 重置读取位置，以便再次从第一个数据开始读取（如重试请求时）
+     * <p>
+     * <font color="#666666">Reset the read position so the data can be read again from the first one (such as when a request is retried)</font>
+     */
+    public void reset() {
+        index = -1;
+    }
+
     /**
      * 添加ImFormData类型数据
      * <p>
@@ -40,6 +40,7 @@ public class ImResponseCookie {
     private String path;
     private boolean secure = false;
     private boolean httpOnly = false;
+    private long expiresAtMillis = -1;
 
     public void ImResponseCookie() {
     }
@@ -232,4 +233,29 @@ public class ImResponseCookie {
     public void setHttpOnly(boolean httpOnly) {
         this.httpOnly = httpOnly;
     }
+
+    /**
+     * 获取过期时间（Unix时间戳，毫秒），由Max-Age或Expires属性计算得出，Max-Age优先
+     * <p>
+     * <font color="#666666">Get the expiry time (Unix timestamp, milliseconds), computed from the Max-Age or Expires
+     * attribute, Max-Age first</font>
+     *
+     * @return 过期时间，-1表示会话Cookie <br /> <font color="#666666">Expiry time, -1 means a session cookie</font>
+     * @since 1.5.0
+     */
+    public long getExpiresAtMillis() {
+        return expiresAtMillis;
+    }
+
+    /**
+     * 设置过期时间（Unix时间戳，毫秒）
+     * <p>
+     * <font color="#666666">Set the expiry time (Unix timestamp, milliseconds)</font>
+     *
+     * @param expiresAtMillis 过期时间，-1表示会话Cookie <br /> <font color="#666666">Expiry time, -1 means a session cookie</font>
+     * @since 1.5.0
+     */
+    public void setExpiresAtMillis(long expiresAtMillis) {
+        this.expiresAtMillis = expiresAtMillis;
+    }
 }
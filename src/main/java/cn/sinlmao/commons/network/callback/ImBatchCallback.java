@@ -0,0 +1,53 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.callback;
+
+import cn.sinlmao.commons.network.http.ImBatchResult;
+import cn.sinlmao.commons.network.http.ImHttpClient;
+
+/**
+ * <b>批量请求结果回调接口类</b>
+ * <p>该接口用于在批量请求中逐个接收已完成的请求结果，无需等待整批请求完成
+ * <br /><br />
+ * <b>Batch request result callback interface class</b>
+ * <p>This interface receives the results of a batch one by one as the requests complete, without waiting for the whole batch
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 批量请求结果回调接口类
+ * @create 2019-11-21 14:35
+ * @see ImHttpClient#sendAll(java.util.Collection, int, ImBatchCallback)
+ * @since 1.5.0
+ */
+public interface ImBatchCallback {
+
+    /**
+     * 一个请求完成的回调
+     * <p>
+     * 按完成的顺序在执行请求的线程中调用，可能同时被多个线程调用；回调抛出异常时不再发起新的请求，
+     * 正在执行的请求完成后由sendAll抛出该异常
+     * <p>
+     * <font color="#666666">Callback when one request completes</font>
+     * <p>
+     * <font color="#666666">Called in completion order on the threads running the requests, possibly from several threads at
+     * once. When the callback throws, no more requests are started and sendAll throws the exception once the requests in
+     * flight complete.</font>
+     *
+     * @param result 请求结果 <br/> <font color="#666666">Request result</font>
+     */
+    void onResult(ImBatchResult result);
+
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.callback;
+
+import cn.sinlmao.commons.network.http.ImCircuitBreaker;
+import cn.sinlmao.commons.network.http.ImCircuitState;
+
+/**
+ * <b>熔断器状态回调接口类</b>
+ * <p>该接口用于接收熔断器的状态变化，比如记录日志或上报监控指标
+ * <br /><br />
+ * <b>Circuit breaker state callback interface class</b>
+ * <p>This interface receives circuit breaker state transitions, for example to log them or report metrics
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 熔断器状态回调接口类
+ * @create 2019-11-19 09:50
+ * @see ImCircuitBreaker
+ * @since 1.5.0
+ */
+public interface ImCircuitBreakerCallback {
+
+    /**
+     * 熔断器状态变化的回调
+     * <p>
+     * 在引起状态变化的请求线程中执行，应尽快返回
+     * <p>
+     * <font color="#666666">Callback for a circuit breaker state transition</font>
+     * <p>
+     * <font color="#666666">Runs on the request thread that caused the transition and should return quickly.</font>
+     *
+     * @param circuitBreaker 熔断器 <br/> <font color="#666666">Circuit breaker</font>
+     * @param from           原状态 <br/> <font color="#666666">Previous state</font>
+     * @param to             新状态 <br/> <font color="#666666">New state</font>
+     */
+    void onStateChange(ImCircuitBreaker circuitBreaker, ImCircuitState from, ImCircuitState to);
+
+}
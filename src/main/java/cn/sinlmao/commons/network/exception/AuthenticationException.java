@@ -38,6 +38,20 @@ public final class AuthenticationException extends RuntimeException {
      */
     public final static String NotHaveAuthentication = "Not have authentication.";
 
+    /**
+     * 返回一个等待身份认证超时异常说明
+     * <p>
+     * <font color="#666666">Return a waiting for authentication timeout exception description</font>
+     */
+    public final static String AuthenticationTimeout = "Waiting for authentication timed out.";
+
+    /**
+     * 返回一个执行身份认证失败异常说明
+     * <p>
+     * <font color="#666666">Return a authentication failed exception description</font>
+     */
+    public final static String AuthenticationFailed = "Authentication failed.";
+
     /**
      * 构建一个身份认证相关异常/警告
      * <p>
@@ -48,4 +62,16 @@ public final class AuthenticationException extends RuntimeException {
     public AuthenticationException(String message) {
         super(message);
     }
+
+    /**
+     * 构建一个身份认证相关异常/警告
+     * <p>
+     * <font color="#666666">Build a authentication related exception/warning</font>
+     *
+     * @param message 异常/警告信息 <br/> <font color="#666666">Exception/warning information</font>
+     * @param cause 异常/警告Throwable <br/> <font color="#666666">Exception/warning Throwable</font>
+     */
+    public AuthenticationException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
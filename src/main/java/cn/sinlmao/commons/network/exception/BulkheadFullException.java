@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.exception;
+
+import java.io.IOException;
+
+/**
+ * <b>隔离舱已满异常类</b>
+ * <p>
+ * 请求所属隔离舱的并发请求数已达到上限且在允许的等待时间内没有空位，或异步请求的等待队列已满时，请求不再执行，抛出该异常。
+ * 该异常继承IOException，可以与网络异常一同处理
+ * <br/><br/>
+ * <b>Bulkhead full exception class</b>
+ * <p>
+ * Thrown without running the request when its bulkhead has reached the concurrency limit and no slot frees up within
+ * the allowed wait, or when the queue of asynchronous requests is full. It extends IOException so that it can be
+ * handled together with network errors.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 隔离舱已满异常类
+ * @create 2019-11-20 14:10
+ * @since 1.5.0
+ */
+public final class BulkheadFullException extends IOException {
+
+    /**
+     * 返回一个隔离舱已满异常说明
+     * <p>
+     * <font color="#666666">Return a bulkhead full exception description</font>
+     */
+    public final static String BulkheadFull = "Bulkhead full: ";
+
+    private final String bulkheadName;
+
+    /**
+     * 构建一个隔离舱已满异常
+     * <p>
+     * <font color="#666666">Build a bulkhead full exception</font>
+     *
+     * @param bulkheadName 隔离舱名称 <br/> <font color="#666666">Bulkhead name</font>
+     * @param reason       原因说明 <br/> <font color="#666666">Reason</font>
+     */
+    public BulkheadFullException(String bulkheadName, String reason) {
+        super(BulkheadFull + bulkheadName + " (" + reason + ")");
+        this.bulkheadName = bulkheadName;
+    }
+
+    /**
+     * 获得隔离舱名称
+     * <p>
+     * <font color="#666666">Get the bulkhead name</font>
+     *
+     * @return 隔离舱名称 <br/> <font color="#666666">Bulkhead name</font>
+     */
+    public String getBulkheadName() {
+        return bulkheadName;
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.exception;
+
+import java.io.IOException;
+
+/**
+ * <b>熔断器打开异常类</b>
+ * <p>
+ * 目标主机（或路由）的熔断器处于打开状态时，请求不再建立连接，立即抛出该异常。
+ * 该异常继承IOException，可以与网络异常一同处理
+ * <br/><br/>
+ * <b>Circuit breaker open exception class</b>
+ * <p>
+ * Thrown at once, without opening a connection, when the circuit breaker of the target host (or route) is open.
+ * It extends IOException so that it can be handled together with network errors.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 熔断器打开异常类
+ * @create 2019-11-19 09:40
+ * @since 1.5.0
+ */
+public final class CircuitBreakerOpenException extends IOException {
+
+    /**
+     * 返回一个熔断器打开异常说明
+     * <p>
+     * <font color="#666666">Return a circuit breaker open exception description</font>
+     */
+    public final static String CircuitBreakerOpen = "Circuit breaker is open: ";
+
+    private final String circuitName;
+
+    /**
+     * 构建一个熔断器打开异常
+     * <p>
+     * <font color="#666666">Build a circuit breaker open exception</font>
+     *
+     * @param circuitName 熔断器名称（主机或路由） <br/> <font color="#666666">Circuit breaker name (host or route)</font>
+     */
+    public CircuitBreakerOpenException(String circuitName) {
+        super(CircuitBreakerOpen + circuitName);
+        this.circuitName = circuitName;
+    }
+
+    /**
+     * 获得熔断器名称（主机或路由）
+     * <p>
+     * <font color="#666666">Get the circuit breaker name (host or route)</font>
+     *
+     * @return 熔断器名称 <br/> <font color="#666666">Circuit breaker name</font>
+     */
+    public String getCircuitName() {
+        return circuitName;
+    }
+}
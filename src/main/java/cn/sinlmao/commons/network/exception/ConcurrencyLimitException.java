@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.exception;
+
+import java.io.IOException;
+
+/**
+ * <b>并发限制异常类</b>
+ * <p>
+ * 目标主机正在执行的请求数已达到自适应并发上限，且在允许的等待时间内没有空位时，请求不再建立连接，抛出该异常。
+ * 该异常继承IOException，可以与网络异常一同处理
+ * <br/><br/>
+ * <b>Concurrency limit exception class</b>
+ * <p>
+ * Thrown without opening a connection when the requests in flight to the target host have reached the adaptive
+ * concurrency limit and no slot frees up within the allowed wait. It extends IOException so that it can be handled
+ * together with network errors.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 并发限制异常类
+ * @create 2019-11-19 15:20
+ * @since 1.5.0
+ */
+public final class ConcurrencyLimitException extends IOException {
+
+    /**
+     * 返回一个超过并发上限异常说明
+     * <p>
+     * <font color="#666666">Return a concurrency limit exceeded exception description</font>
+     */
+    public final static String ConcurrencyLimitExceeded = "Concurrency limit exceeded: ";
+
+    private final String host;
+    private final int limit;
+
+    /**
+     * 构建一个并发限制异常
+     * <p>
+     * <font color="#666666">Build a concurrency limit exception</font>
+     *
+     * @param host  主机（host:port） <br/> <font color="#666666">Host (host:port)</font>
+     * @param limit 当前并发上限 <br/> <font color="#666666">Current concurrency limit</font>
+     */
+    public ConcurrencyLimitException(String host, int limit) {
+        super(ConcurrencyLimitExceeded + host + " (limit " + limit + ")");
+        this.host = host;
+        this.limit = limit;
+    }
+
+    /**
+     * 获得主机（host:port）
+     * <p>
+     * <font color="#666666">Get the host (host:port)</font>
+     *
+     * @return 主机 <br/> <font color="#666666">Host</font>
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 获得抛出异常时的并发上限
+     * <p>
+     * <font color="#666666">Get the concurrency limit when the exception was thrown</font>
+     *
+     * @return 并发上限 <br/> <font color="#666666">Concurrency limit</font>
+     */
+    public int getLimit() {
+        return limit;
+    }
+}
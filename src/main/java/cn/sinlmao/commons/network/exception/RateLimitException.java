@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.exception;
+
+import java.io.IOException;
+
+/**
+ * <b>速率限制异常类</b>
+ * <p>
+ * 请求需要等待令牌桶放行的时间超过允许的最长等待时间（或请求的剩余时间）时，请求不再建立连接，抛出该异常。
+ * 该异常继承IOException，可以与网络异常一同处理
+ * <br/><br/>
+ * <b>Rate limit exception class</b>
+ * <p>
+ * Thrown without opening a connection when a request would have to wait longer than the allowed maximum wait (or the
+ * remaining time of the request) for the token bucket to let it through. It extends IOException so that it can be
+ * handled together with network errors.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 速率限制异常类
+ * @create 2019-11-19 17:10
+ * @since 1.5.0
+ */
+public final class RateLimitException extends IOException {
+
+    /**
+     * 返回一个超过速率限制异常说明
+     * <p>
+     * <font color="#666666">Return a rate limit exceeded exception description</font>
+     */
+    public final static String RateLimitExceeded = "Rate limit exceeded: ";
+
+    private final String host;
+    private final long waitMillis;
+
+    /**
+     * 构建一个速率限制异常
+     * <p>
+     * <font color="#666666">Build a rate limit exception</font>
+     *
+     * @param host       主机（host:port） <br/> <font color="#666666">Host (host:port)</font>
+     * @param waitMillis 需要等待的时间（毫秒） <br/> <font color="#666666">Wait needed (milliseconds)</font>
+     */
+    public RateLimitException(String host, long waitMillis) {
+        super(RateLimitExceeded + host + " (wait " + waitMillis + "ms)");
+        this.host = host;
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * 获得主机（host:port）
+     * <p>
+     * <font color="#666666">Get the host (host:port)</font>
+     *
+     * @return 主机 <br/> <font color="#666666">Host</font>
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 获得放行请求需要等待的时间（毫秒）
+     * <p>
+     * <font color="#666666">Get how long the request would have had to wait (milliseconds)</font>
+     *
+     * @return 需要等待的时间 <br/> <font color="#666666">Wait needed</font>
+     */
+    public long getWaitMillis() {
+        return waitMillis;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+/**
+ * <b>批量请求结果类</b>
+ * <p>
+ * 该类为ImHttpClient.sendAll中一个请求的结果，包括请求在输入中的位置、响应或请求抛出的异常，
+ * 单个请求失败不影响其它请求
+ * <br/><br/>
+ * <b>Batch request result class</b>
+ * <p>
+ * This class is the result of one request of ImHttpClient.sendAll: the position of the request in the input, and
+ * either its response or the exception it threw. One failed request does not affect the others.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 批量请求结果类
+ * @create 2019-11-21 14:20
+ * @see ImHttpClient#sendAll(java.util.Collection, int)
+ * @since 1.5.0
+ */
+public final class ImBatchResult {
+
+    private final int index;
+    private final ImRequest request;
+    private final ImResponse response;
+    private final Exception error;
+
+    /**
+     * 【内部方法】 构建批量请求结果
+     *
+     * @param index    请求在输入中的位置
+     * @param request  请求
+     * @param response 响应，失败时为null
+     * @param error    请求抛出的异常，成功时为null
+     */
+    ImBatchResult(int index, ImRequest request, ImResponse response, Exception error) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+        this.error = error;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得请求在输入中的位置，从0开始
+     * <p>
+     * <font color="#666666">Get the position of the request in the input, starting from 0</font>
+     *
+     * @return 请求的位置 <br/> <font color="#666666">Position of the request</font>
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 获得请求
+     * <p>
+     * <font color="#666666">Get the request</font>
+     *
+     * @return ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     */
+    public ImRequest getRequest() {
+        return request;
+    }
+
+    /**
+     * 获得响应
+     * <p>
+     * <font color="#666666">Get the response</font>
+     *
+     * @return ImResponse会话响应对象，请求抛出异常时为null <br/> <font color="#666666">ImResponse Response object, null when the request threw an exception</font>
+     */
+    public ImResponse getResponse() {
+        return response;
+    }
+
+    /**
+     * 获得请求抛出的异常
+     * <p>
+     * <font color="#666666">Get the exception thrown by the request</font>
+     *
+     * @return 异常，请求未抛出异常时为null <br/> <font color="#666666">Exception, null when the request did not throw</font>
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * 请求是否未抛出异常（不判断响应状态码）
+     * <p>
+     * <font color="#666666">Whether the request did not throw an exception (the response code is not checked)</font>
+     *
+     * @return 是否未抛出异常 <br/> <font color="#666666">Whether no exception was thrown</font>
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,364 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.exception.BulkheadFullException;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <b>隔离舱类</b>
+ * <p>
+ * 该类为一组请求（如同一个上游或同一优先级）提供独立的资源：最多maxConcurrent个请求同时执行（同步及异步请求共用，
+ * 也就限制了该组请求占用的连接数），异步请求由隔离舱自己的线程执行，最多maxQueue个异步请求排队。
+ * 并发数已满时同步请求最多等待maxWait毫秒，异步请求在队列中等待；超出限制的请求抛出BulkheadFullException。
+ * 排队的异步请求及等待许可的请求按请求的优先级（带老化）依次执行。慢的上游只会耗尽自己隔离舱的资源，不影响其它请求
+ * <br/><br/>
+ * <b>Bulkhead class</b>
+ * <p>
+ * This class gives a group of requests, such as the calls to one upstream or one priority class, resources of their
+ * own. At most maxConcurrent requests run at the same time (shared by synchronous and asynchronous requests, which also
+ * bounds the connections the group uses); asynchronous requests run on threads of the bulkhead, and at most maxQueue of
+ * them wait in its queue. When the bulkhead is full, synchronous requests wait at most maxWait milliseconds and
+ * asynchronous requests wait in the queue; requests over the limits throw BulkheadFullException. Queued asynchronous
+ * requests and requests waiting for a permit go in order of request priority (with aging). A slow upstream can then
+ * only exhaust its own compartment.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 隔离舱类
+ * @create 2019-11-20 14:30
+ * @see ImRequest#setBulkhead(ImBulkhead)
+ * @since 1.5.0
+ */
+public class ImBulkhead {
+
+    //空闲线程的存活时间
+    private final static long KEEP_ALIVE = TimeUnit.SECONDS.toNanos(60);
+
+    //当前线程所属的隔离舱，隔离舱线程上的请求等待至请求的截止时间
+    private final static ThreadLocal<ImBulkhead> WORKER = new ThreadLocal<ImBulkhead>();
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueue;
+    private volatile long maxWait = 0;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final ImPriorityQueue<Runnable> tasks = new ImPriorityQueue<Runnable>();
+    private final ImPriorityQueue<Waiter> waiters = new ImPriorityQueue<Waiter>();
+    private int active;
+    private int queued;
+    private int workers;
+    private int idleWorkers;
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建隔离舱
+     * <p>
+     * <font color="#666666">Build a bulkhead</font>
+     *
+     * @param name          隔离舱名称，用于线程名称及异常说明 <br/> <font color="#666666">Bulkhead name, used in thread names and exceptions</font>
+     * @param maxConcurrent 最多同时执行的请求数 <br/> <font color="#666666">Maximum requests running at the same time</font>
+     * @param maxQueue      最多排队的异步请求数 <br/> <font color="#666666">Maximum asynchronous requests waiting in the queue</font>
+     */
+    public ImBulkhead(String name, int maxConcurrent, int maxQueue) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        if (maxConcurrent < 1 || maxQueue < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueue = maxQueue;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置同步请求在并发数已满时的最长等待时间（毫秒），默认为0（不等待）
+     * <p>
+     * <font color="#666666">Set the longest wait of synchronous requests when the bulkhead is full (milliseconds), default is 0 (no wait)</font>
+     *
+     * @param maxWait 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     * @return ImBulkhead对象实体 <br/> <font color="#666666">ImBulkhead object entity</font>
+     */
+    public ImBulkhead setMaxWait(long maxWait) {
+        this.maxWait = Math.max(maxWait, 0);
+        return this;
+    }
+
+    /**
+     * 获得同步请求在并发数已满时的最长等待时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the longest wait of synchronous requests when the bulkhead is full (milliseconds)</font>
+     *
+     * @return 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * 获得隔离舱名称
+     * <p>
+     * <font color="#666666">Get the bulkhead name</font>
+     *
+     * @return 隔离舱名称 <br/> <font color="#666666">Bulkhead name</font>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获得最多同时执行的请求数
+     * <p>
+     * <font color="#666666">Get the maximum requests running at the same time</font>
+     *
+     * @return 最多同时执行的请求数 <br/> <font color="#666666">Maximum concurrent requests</font>
+     */
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * 获得最多排队的异步请求数
+     * <p>
+     * <font color="#666666">Get the maximum asynchronous requests waiting in the queue</font>
+     *
+     * @return 最多排队的异步请求数 <br/> <font color="#666666">Maximum queued requests</font>
+     */
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    /**
+     * 获得正在执行的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests running</font>
+     *
+     * @return 正在执行的请求数 <br/> <font color="#666666">Requests running</font>
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得排队的异步请求数
+     * <p>
+     * <font color="#666666">Get the number of asynchronous requests waiting in the queue</font>
+     *
+     * @return 排队的异步请求数 <br/> <font color="#666666">Queued requests</font>
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 获得被拒绝的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests rejected</font>
+     *
+     * @return 被拒绝的请求数 <br/> <font color="#666666">Rejected requests</font>
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 取得执行许可，隔离舱线程上的异步请求最多等待至请求的截止时间，其它请求最多等待maxWait毫秒；
+     * 释放的许可按优先级交给等待的请求
+     *
+     * @param remainingMillis 请求的剩余时间（毫秒）
+     * @param priority        请求的优先级
+     * @return 本隔离舱
+     * @throws BulkheadFullException  在等待时间内没有空位
+     * @throws InterruptedIOException 等待时被中断
+     */
+    ImBulkhead acquire(long remainingMillis, int priority) throws BulkheadFullException, InterruptedIOException {
+        long wait = WORKER.get() == this ? remainingMillis : Math.min(maxWait, remainingMillis);
+        lock.lock();
+        try {
+            //已有请求在等待时不插队
+            if (active < maxConcurrent && waiters.isEmpty()) {
+                active++;
+                return this;
+            }
+            long nanos = TimeUnit.MILLISECONDS.toNanos(wait);
+            if (nanos <= 0) {
+                rejectedCount.incrementAndGet();
+                throw new BulkheadFullException(name, "max concurrent " + maxConcurrent);
+            }
+            Waiter waiter = new Waiter(lock.newCondition());
+            ImPriorityQueue.Entry<Waiter> entry = waiters.offer(waiter, priority);
+            try {
+                while (!waiter.granted) {
+                    if (nanos <= 0) {
+                        waiters.remove(entry);
+                        rejectedCount.incrementAndGet();
+                        throw new BulkheadFullException(name, "max concurrent " + maxConcurrent);
+                    }
+                    nanos = waiter.condition.awaitNanos(nanos);
+                }
+                return this;
+            } catch (InterruptedException e) {
+                //已交给本请求的许可转交给下一个请求
+                if (waiter.granted) {
+                    release();
+                } else {
+                    waiters.remove(entry);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bulkhead.");
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 【内部方法】 释放执行许可，有请求在等待时直接交给优先级最高的请求
+     */
+    void release() {
+        lock.lock();
+        try {
+            Waiter waiter = waiters.poll();
+            if (waiter != null) {
+                waiter.granted = true;
+                waiter.condition.signal();
+            } else {
+                active--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 【内部方法】 为异步请求预留一个队列位置，之后必须调用{@link #enqueue(Runnable)}
+     *
+     * @return 是否预留成功
+     */
+    boolean admit() {
+        lock.lock();
+        try {
+            //空闲及尚未创建的线程可以立即执行的请求不计入排队
+            if (queued >= maxQueue + maxConcurrent - (workers - idleWorkers)) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+            queued++;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 【内部方法】 将已预留位置的异步请求放入队列，由隔离舱线程按优先级执行
+     *
+     * @param task     异步请求
+     * @param priority 请求的优先级
+     */
+    void enqueue(Runnable task, int priority) {
+        lock.lock();
+        try {
+            tasks.offer(task, priority);
+            if (idleWorkers > 0) {
+                taskAvailable.signal();
+            } else if (workers < maxConcurrent) {
+                workers++;
+                Thread thread = new Thread(this::work, "ImBulkhead-" + name + "-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void work() {
+        WORKER.set(this);
+        while (true) {
+            Runnable task;
+            lock.lock();
+            try {
+                long nanos = KEEP_ALIVE;
+                while (tasks.isEmpty()) {
+                    if (nanos <= 0) {
+                        workers--;
+                        return;
+                    }
+                    idleWorkers++;
+                    try {
+                        nanos = taskAvailable.awaitNanos(nanos);
+                    } catch (InterruptedException e) {
+                        nanos = 0;
+                    } finally {
+                        idleWorkers--;
+                    }
+                }
+                task = tasks.poll();
+                queued--;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                //异步请求的异常已由回调处理，隔离舱线程继续执行其它请求
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 等待许可的请求
+     */
+    private static final class Waiter {
+
+        private final Condition condition;
+        private boolean granted;
+
+        private Waiter(Condition condition) {
+            this.condition = condition;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+/**
+ * <b>响应缓存状态枚举类</b>
+ * <p>
+ * 该类表示ImResponse与HTTP响应缓存的关系，用于统计缓存命中及条件请求的结果
+ * <br/><br/>
+ * <b>Response cache status enumeration class</b>
+ * <p>
+ * This class tells how an ImResponse relates to the HTTP response cache, for metrics on cache hits and conditional requests.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 响应缓存状态枚举类
+ * @create 2019-11-17 14:10
+ * @see ImResponse#getCacheStatus()
+ * @since 1.5.0
+ */
+public enum ImCacheStatus {
+
+    /**
+     * [NONE] 未使用缓存
+     * <p>
+     * <font color="#666666">[NONE] The cache was not used</font>
+     */
+    NONE,
+    /**
+     * [MISS] 缓存未命中，响应来自网络
+     * <p>
+     * <font color="#666666">[MISS] Cache miss, the response came from the network</font>
+     */
+    MISS,
+    /**
+     * [HIT] 缓存命中，响应来自缓存，未访问网络
+     * <p>
+     * <font color="#666666">[HIT] Cache hit, the response came from the cache without touching the network</font>
+     */
+    HIT,
+    /**
+     * [REVALIDATED] 条件请求返回304，响应内容来自缓存，响应头已更新
+     * <p>
+     * <font color="#666666">[REVALIDATED] The conditional request returned 304, the body came from the cache and the headers were updated</font>
+     */
+    REVALIDATED,
+    /**
+     * [STALE] 返回了过期的缓存响应（stale-while-revalidate或stale-if-error）
+     * <p>
+     * <font color="#666666">[STALE] A stale cached response was returned (stale-while-revalidate or stale-if-error)</font>
+     */
+    STALE
+}
@@ -0,0 +1,481 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <b>请求执行状态类</b>
+ * <p>
+ * 该类记录一次请求执行的截止时间及当前使用的连接，截止时间到达或请求被取消时，由时间轮定时器中止连接，
+ * 阻塞在该连接上的读写随即失败，并转换为SocketTimeoutException或InterruptedIOException。
+ * 在身份认证回调等同一线程内嵌套发起的请求继承外层请求的截止时间；对冲请求等并行执行的副本使用分支状态，随本请求一同中止
+ * <br/><br/>
+ * <b>Request execution state class</b>
+ * <p>
+ * This class tracks the deadline of one request execution and the connection it currently uses. When the deadline
+ * passes or the request is cancelled, the timing wheel aborts the connection, so any read or write blocked on it fails
+ * at once and is turned into SocketTimeoutException or InterruptedIOException. Requests nested on the same thread, for
+ * example from the authentication callback, inherit the deadline of the outer request. Copies run in parallel, such as
+ * hedged requests, use forks that are aborted together with this call.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 请求执行状态类
+ * @create 2019-11-18 11:05
+ * @since 1.5.0
+ */
+final class ImCall {
+
+    //当前线程正在执行的请求，用于嵌套请求继承截止时间
+    private final static ThreadLocal<ImCall> CURRENT = new ThreadLocal<ImCall>();
+
+    //关闭连接可能阻塞（如HTTPS连接等待写锁），由独立线程执行，避免阻塞时间轮定时器线程
+    private final static AtomicInteger DISCONNECTOR_THREADS = new AtomicInteger();
+    private final static Executor DISCONNECTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "ImHttpClient-disconnect-" + DISCONNECTOR_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ImCall parent;
+    private final long deadline;
+    private final ImTimeoutWheel.Timeout deadlineTimeout;
+
+    private volatile HttpURLConnection connection;
+    private volatile String abortReason;
+    private volatile boolean cancelled;
+    private volatile int responseCode;
+
+    //分支状态，由本请求的截止时间定时任务一同中止
+    private List<ImCall> forks;
+
+    //整个请求占用的隔离舱许可
+    private ImBulkhead bulkhead;
+
+    //会话的速率限制，以及首次网络请求是否已预留放行时间
+    private ImRateLimiter sessionRateLimiter;
+    private boolean rateReserved;
+
+    //当前网络请求选中的端点、熔断器许可、并发许可及开始时间
+    private ImEndpoint endpoint;
+    private ImCircuitBreaker circuitBreaker;
+    private ImConcurrencyLimiter.Limit concurrencyLimit;
+    private long attemptStart;
+
+    private ImCall(ImCall parent, long deadline, boolean scheduleDeadline) {
+        this.parent = parent;
+        this.deadline = deadline;
+        this.deadlineTimeout = deadline == Long.MAX_VALUE || !scheduleDeadline ? null
+                : ImTimeoutWheel.SHARED.schedule(() -> abort("Call timed out"),
+                TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()) + 1);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 开始执行请求，必须在finally中调用{@link #end()}
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @return 请求执行状态
+     */
+    static ImCall begin(ImRequest imRequest) {
+        ImCall parent = CURRENT.get();
+        long deadline = parent != null ? parent.deadline : Long.MAX_VALUE;
+        if (imRequest.getCallTimeout() > 0) {
+            deadline = Math.min(deadline, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(imRequest.getCallTimeout()));
+        }
+        ImCall call = new ImCall(parent, deadline, true);
+        CURRENT.set(call);
+        return call;
+    }
+
+    /**
+     * 结束执行请求，取消截止时间定时任务
+     */
+    void end() {
+        if (deadlineTimeout != null) {
+            deadlineTimeout.cancel();
+        }
+        if (bulkhead != null) {
+            bulkhead.release();
+            bulkhead = null;
+        }
+        connection = null;
+        if (parent != null) {
+            CURRENT.set(parent);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * 创建分支状态，用于在其它线程并行执行同一请求，分支使用本请求的截止时间，并随本请求一同中止；
+     * 分支不改变当前线程正在执行的请求，结束后应调用{@link #release(ImCall)}
+     *
+     * @return 分支状态
+     */
+    ImCall fork() {
+        ImCall fork = new ImCall(null, deadline, false);
+        fork.sessionRateLimiter = sessionRateLimiter;
+        synchronized (this) {
+            if (forks == null) {
+                forks = new ArrayList<ImCall>(2);
+            }
+            forks.add(fork);
+        }
+        if (cancelled) {
+            fork.cancel();
+        } else if (abortReason != null) {
+            fork.abort(abortReason);
+        }
+        return fork;
+    }
+
+    /**
+     * 释放分支状态
+     *
+     * @param fork 分支状态
+     */
+    void release(ImCall fork) {
+        synchronized (this) {
+            if (forks != null) {
+                forks.remove(fork);
+            }
+        }
+        fork.connection = null;
+    }
+
+    /**
+     * 取消请求，正在使用的连接被中止
+     */
+    void cancel() {
+        cancelled = true;
+        abort("Canceled");
+    }
+
+    /**
+     * 获取请求是否已被取消
+     *
+     * @return 是否已被取消
+     */
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 获取请求是否已被取消或已超过截止时间，即失败是否由本请求自身造成
+     *
+     * @return 是否已被取消或已超过截止时间
+     */
+    boolean isExpired() {
+        return cancelled || remainingMillis() <= 0;
+    }
+
+    /**
+     * 获取距离截止时间的剩余毫秒数，没有截止时间时为Long.MAX_VALUE
+     *
+     * @return 剩余毫秒数
+     */
+    long remainingMillis() {
+        if (deadline == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()), 0);
+    }
+
+    /**
+     * 检查请求是否已被取消或已超过截止时间
+     *
+     * @throws IOException 已被取消或已超过截止时间
+     */
+    void check() throws IOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Canceled");
+        }
+        if (abortReason != null || remainingMillis() <= 0) {
+            throw new SocketTimeoutException(abortReason != null ? abortReason : "Call timed out");
+        }
+    }
+
+    /**
+     * 获得实际使用的超时时间（毫秒），取设置值与剩余时间中较小的一个，0表示不限制
+     *
+     * @param timeout 设置的超时时间
+     * @return 实际使用的超时时间
+     * @throws IOException 已被取消或已超过截止时间
+     */
+    int timeout(int timeout) throws IOException {
+        check();
+        long remaining = remainingMillis();
+        if (remaining == Long.MAX_VALUE) {
+            return timeout;
+        }
+        int limit = (int) Math.min(Math.max(remaining, 1), Integer.MAX_VALUE);
+        return timeout > 0 ? Math.min(timeout, limit) : limit;
+    }
+
+    /**
+     * 绑定请求使用的连接，请求已被中止时立即断开
+     *
+     * @param connection HttpURLConnection
+     * @throws IOException 已被取消或已超过截止时间
+     */
+    void attach(HttpURLConnection connection) throws IOException {
+        this.connection = connection;
+        this.responseCode = 0;
+        this.attemptStart = System.nanoTime();
+        if (abortReason != null) {
+            connection.disconnect();
+        }
+        check();
+    }
+
+    /**
+     * 记录整个请求占用的隔离舱许可，请求结束时释放
+     *
+     * @param bulkhead 隔离舱
+     */
+    void holdBulkhead(ImBulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    /**
+     * 设置会话的速率限制
+     *
+     * @param sessionRateLimiter 会话的速率限制，可以为null
+     */
+    void setSessionRateLimiter(ImRateLimiter sessionRateLimiter) {
+        this.sessionRateLimiter = sessionRateLimiter;
+    }
+
+    /**
+     * 获得会话的速率限制
+     *
+     * @return 会话的速率限制，未设置时为null
+     */
+    ImRateLimiter getSessionRateLimiter() {
+        return sessionRateLimiter;
+    }
+
+    /**
+     * 标记首次网络请求的放行时间已由异步请求预留
+     */
+    void setRateReserved() {
+        this.rateReserved = true;
+    }
+
+    /**
+     * 取出放行时间已预留的标记，只有首次网络请求可以使用
+     *
+     * @return 放行时间是否已预留
+     */
+    boolean takeRateReserved() {
+        boolean reserved = rateReserved;
+        rateReserved = false;
+        return reserved;
+    }
+
+    /**
+     * 记录本次网络请求选中的端点
+     *
+     * @param endpoint 端点
+     */
+    void holdEndpoint(ImEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * 获取本次网络请求是否选中了端点组的端点
+     *
+     * @return 是否选中了端点
+     */
+    boolean hasEndpoint() {
+        return endpoint != null;
+    }
+
+    /**
+     * 记录本次网络请求已取得许可的熔断器
+     *
+     * @param circuitBreaker 熔断器
+     */
+    void holdCircuitBreaker(ImCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 记录本次网络请求已取得的并发许可
+     *
+     * @param concurrencyLimit 并发许可
+     */
+    void holdConcurrencyLimit(ImConcurrencyLimiter.Limit concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    /**
+     * 结束一次网络请求，释放许可并记录结果；请求被取消或未建立连接时结果不计入统计
+     *
+     * @param failed 是否失败
+     */
+    void endAttempt(boolean failed) {
+        boolean sample = !cancelled && attemptStart != 0;
+        long duration = sample ? System.nanoTime() - attemptStart : 0;
+        attemptStart = 0;
+        ImEndpoint endpoint = this.endpoint;
+        if (endpoint != null) {
+            this.endpoint = null;
+            endpoint.release(sample, failed, duration);
+        }
+        ImCircuitBreaker circuitBreaker = this.circuitBreaker;
+        if (circuitBreaker != null) {
+            this.circuitBreaker = null;
+            if (sample) {
+                circuitBreaker.record(failed, TimeUnit.NANOSECONDS.toMillis(duration));
+            } else {
+                circuitBreaker.release();
+            }
+        }
+        ImConcurrencyLimiter.Limit concurrencyLimit = this.concurrencyLimit;
+        if (concurrencyLimit != null) {
+            this.concurrencyLimit = null;
+            concurrencyLimit.release(sample, failed, duration);
+        }
+    }
+
+    /**
+     * 记录当前连接收到的响应状态码，服务器返回错误状态码时连接会抛出异常，重试时据此判断
+     *
+     * @param responseCode 响应状态码
+     */
+    void setResponseCode(int responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    /**
+     * 获得当前连接收到的响应状态码，未收到响应时为0
+     *
+     * @return 响应状态码
+     */
+    int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * 为请求数据写入流添加写入超时，每次写入超过该时间时中止连接
+     *
+     * @param output       请求数据写入流
+     * @param writeTimeout 写入超时时间（毫秒），0表示不限制
+     * @return 带写入超时的写入流
+     */
+    OutputStream guardWrite(OutputStream output, int writeTimeout) {
+        if (writeTimeout <= 0) {
+            return output;
+        }
+        return new FilterOutputStream(output) {
+            @Override
+            public void write(int b) throws IOException {
+                ImTimeoutWheel.Timeout timeout = scheduleWrite(writeTimeout);
+                try {
+                    out.write(b);
+                } finally {
+                    timeout.cancel();
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ImTimeoutWheel.Timeout timeout = scheduleWrite(writeTimeout);
+                try {
+                    out.write(b, off, len);
+                } finally {
+                    timeout.cancel();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                ImTimeoutWheel.Timeout timeout = scheduleWrite(writeTimeout);
+                try {
+                    out.flush();
+                } finally {
+                    timeout.cancel();
+                }
+            }
+        };
+    }
+
+    /**
+     * 将请求中止后连接抛出的IOException转换为对应的超时或取消异常
+     *
+     * @param e 连接抛出的IOException
+     * @return 转换后的IOException
+     */
+    IOException translate(IOException e) {
+        if (cancelled && !(e instanceof InterruptedIOException)) {
+            InterruptedIOException canceled = new InterruptedIOException("Canceled");
+            canceled.initCause(e);
+            return canceled;
+        }
+        String reason = abortReason;
+        if (reason != null && !(e instanceof SocketTimeoutException)) {
+            SocketTimeoutException timeout = new SocketTimeoutException(reason);
+            timeout.initCause(e);
+            return timeout;
+        }
+        return e;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private ImTimeoutWheel.Timeout scheduleWrite(int writeTimeout) throws IOException {
+        check();
+        return ImTimeoutWheel.SHARED.schedule(() -> abort("Write timed out"), writeTimeout);
+    }
+
+    private void abort(String reason) {
+        if (abortReason == null) {
+            abortReason = reason;
+        }
+        HttpURLConnection connection = this.connection;
+        if (connection != null) {
+            DISCONNECTOR.execute(connection::disconnect);
+        }
+        ImCall[] current;
+        synchronized (this) {
+            current = forks == null ? null : forks.toArray(new ImCall[0]);
+        }
+        if (current != null) {
+            for (ImCall fork : current) {
+                if (cancelled) {
+                    fork.cancel();
+                } else {
+                    fork.abort(reason);
+                }
+            }
+        }
+    }
+}
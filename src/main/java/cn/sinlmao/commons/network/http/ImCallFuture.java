@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <b>可取消的请求结果类</b>
+ * <p>
+ * 该类为ImHttpClient.sendAsync返回的请求结果，取消时一同取消正在执行的请求，请求使用的连接随即被中止，
+ * 尚未开始执行的请求不再执行
+ * <br/><br/>
+ * <b>Cancellable request result class</b>
+ * <p>
+ * This class is the request result returned by ImHttpClient.sendAsync. Cancelling it cancels the running request as
+ * well, so the connection it uses is aborted at once, and a request that has not started yet is not run.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 可取消的请求结果类
+ * @create 2019-11-21 16:10
+ * @since 1.5.0
+ */
+final class ImCallFuture extends CompletableFuture<ImResponse> {
+
+    private volatile ImCall call;
+
+    /**
+     * 绑定正在执行的请求，结果已被取消时立即取消请求
+     *
+     * @param call 请求执行状态
+     */
+    void bind(ImCall call) {
+        this.call = call;
+        if (isCancelled()) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        ImCall call = this.call;
+        if (cancelled && call != null) {
+            call.cancel();
+        }
+        return cancelled;
+    }
+}
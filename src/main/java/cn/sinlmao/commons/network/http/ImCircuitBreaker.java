@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>熔断器类</b>
+ * <p>
+ * 该类为一个主机（或路由）的熔断器，按最近若干次请求的滑动窗口统计失败率及慢请求率（网络异常及5xx响应为失败），
+ * 达到阈值时打开，打开期间请求立即抛出CircuitBreakerOpenException；打开一段时间后进入半开状态，
+ * 只放行少量探测请求，探测请求全部成功时关闭，任一失败时重新打开。熔断器由ImCircuitBreakerRegistry创建并按其配置运行
+ * <br/><br/>
+ * <b>Circuit breaker class</b>
+ * <p>
+ * This class is the circuit breaker of one host (or route). It tracks the failure rate and slow call rate over a
+ * sliding window of the most recent requests (network errors and 5xx responses are failures) and opens when a threshold
+ * is reached. While open, requests throw CircuitBreakerOpenException at once. After a while it turns half-open and lets
+ * a few probe requests through: it closes when they all succeed and opens again when any fails. Circuit breakers are
+ * created by ImCircuitBreakerRegistry and follow its settings.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 熔断器类
+ * @create 2019-11-19 10:10
+ * @see ImCircuitBreakerRegistry
+ * @since 1.5.0
+ */
+public class ImCircuitBreaker {
+
+    private final static byte OUTCOME_FAILURE = 1;
+    private final static byte OUTCOME_SLOW = 2;
+
+    private final String name;
+    private final ImCircuitBreakerRegistry registry;
+
+    //滑动窗口，记录最近请求的结果
+    private final byte[] outcomes;
+    private int position;
+    private int bufferedCalls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private volatile ImCircuitState state = ImCircuitState.CLOSED;
+    private long openedAt;
+    private int probesIssued;
+    private int probesDone;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * 【内部方法】 构建熔断器
+     *
+     * @param name     熔断器名称（主机或路由）
+     * @param registry 熔断器注册表
+     */
+    ImCircuitBreaker(String name, ImCircuitBreakerRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+        this.outcomes = new byte[registry.getSlidingWindowSize()];
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得熔断器名称（主机或路由）
+     * <p>
+     * <font color="#666666">Get the circuit breaker name (host or route)</font>
+     *
+     * @return 熔断器名称 <br/> <font color="#666666">Circuit breaker name</font>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获得熔断器状态
+     * <p>
+     * <font color="#666666">Get the circuit breaker state</font>
+     *
+     * @return 熔断器状态 <br/> <font color="#666666">Circuit breaker state</font>
+     */
+    public ImCircuitState getState() {
+        return state;
+    }
+
+    /**
+     * 获得滑动窗口内的失败率（0到1之间）
+     * <p>
+     * <font color="#666666">Get the failure rate within the sliding window (between 0 and 1)</font>
+     *
+     * @return 失败率 <br/> <font color="#666666">Failure rate</font>
+     */
+    public synchronized float getFailureRate() {
+        return bufferedCalls == 0 ? 0 : (float) failedCalls / bufferedCalls;
+    }
+
+    /**
+     * 获得滑动窗口内的慢请求率（0到1之间）
+     * <p>
+     * <font color="#666666">Get the slow call rate within the sliding window (between 0 and 1)</font>
+     *
+     * @return 慢请求率 <br/> <font color="#666666">Slow call rate</font>
+     */
+    public synchronized float getSlowCallRate() {
+        return bufferedCalls == 0 ? 0 : (float) slowCalls / bufferedCalls;
+    }
+
+    /**
+     * 获得滑动窗口内的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests within the sliding window</font>
+     *
+     * @return 请求数 <br/> <font color="#666666">Number of requests</font>
+     */
+    public synchronized int getBufferedCalls() {
+        return bufferedCalls;
+    }
+
+    /**
+     * 获得被拒绝（立即失败）的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests rejected (failed fast)</font>
+     *
+     * @return 被拒绝的请求数 <br/> <font color="#666666">Number of rejected requests</font>
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 重置熔断器为关闭状态，并清空滑动窗口
+     * <p>
+     * <font color="#666666">Reset the circuit breaker to the closed state and clear the sliding window</font>
+     */
+    public void reset() {
+        ImCircuitState from;
+        synchronized (this) {
+            from = state;
+            clearWindow();
+            state = ImCircuitState.CLOSED;
+        }
+        if (from != ImCircuitState.CLOSED) {
+            registry.fireStateChange(this, from, ImCircuitState.CLOSED);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 请求建立连接前获取许可
+     *
+     * @return 是否允许请求
+     */
+    boolean tryAcquire() {
+        if (state == ImCircuitState.CLOSED) {
+            return true;
+        }
+        ImCircuitState from = null;
+        boolean allowed;
+        synchronized (this) {
+            //打开时间已到，进入半开状态
+            if (state == ImCircuitState.OPEN && System.currentTimeMillis() - openedAt >= registry.getOpenDuration()) {
+                from = ImCircuitState.OPEN;
+                state = ImCircuitState.HALF_OPEN;
+                probesIssued = 0;
+                probesDone = 0;
+            }
+            if (state == ImCircuitState.CLOSED) {
+                allowed = true;
+            } else if (state == ImCircuitState.HALF_OPEN && probesIssued < registry.getHalfOpenProbes()) {
+                probesIssued++;
+                allowed = true;
+            } else {
+                allowed = false;
+            }
+        }
+        if (from != null) {
+            registry.fireStateChange(this, from, ImCircuitState.HALF_OPEN);
+        }
+        if (!allowed) {
+            rejectedCount.incrementAndGet();
+        }
+        return allowed;
+    }
+
+    /**
+     * 【内部方法】 记录请求结果
+     *
+     * @param failed   是否失败
+     * @param duration 请求用时（毫秒）
+     */
+    void record(boolean failed, long duration) {
+        boolean slow = duration >= registry.getSlowCallDuration();
+        ImCircuitState from;
+        ImCircuitState to;
+        synchronized (this) {
+            from = state;
+            if (state == ImCircuitState.HALF_OPEN) {
+                probesDone++;
+                if (failed || (slow && registry.getSlowCallRateThreshold() < 1)) {
+                    open();
+                } else if (probesDone >= registry.getHalfOpenProbes()) {
+                    clearWindow();
+                    state = ImCircuitState.CLOSED;
+                }
+            } else if (state == ImCircuitState.CLOSED) {
+                push((byte) ((failed ? OUTCOME_FAILURE : 0) | (slow ? OUTCOME_SLOW : 0)));
+                if (bufferedCalls >= registry.getMinimumCalls()
+                        && ((float) failedCalls / bufferedCalls >= registry.getFailureRateThreshold()
+                        || (float) slowCalls / bufferedCalls >= registry.getSlowCallRateThreshold())) {
+                    open();
+                }
+            }
+            to = state;
+        }
+        if (from != to) {
+            registry.fireStateChange(this, from, to);
+        }
+    }
+
+    /**
+     * 【内部方法】 放弃许可，请求被取消等结果不计入统计时调用
+     */
+    synchronized void release() {
+        if (state == ImCircuitState.HALF_OPEN && probesIssued > probesDone) {
+            probesIssued--;
+        }
+    }
+
+    private void open() {
+        state = ImCircuitState.OPEN;
+        openedAt = System.currentTimeMillis();
+        clearWindow();
+    }
+
+    private void push(byte outcome) {
+        if (bufferedCalls == outcomes.length) {
+            byte old = outcomes[position];
+            failedCalls -= old & OUTCOME_FAILURE;
+            slowCalls -= (old & OUTCOME_SLOW) >> 1;
+        } else {
+            bufferedCalls++;
+        }
+        outcomes[position] = outcome;
+        failedCalls += outcome & OUTCOME_FAILURE;
+        slowCalls += (outcome & OUTCOME_SLOW) >> 1;
+        position = (position + 1) % outcomes.length;
+    }
+
+    private void clearWindow() {
+        position = 0;
+        bufferedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+    }
+}
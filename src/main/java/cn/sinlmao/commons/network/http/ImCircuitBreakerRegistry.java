@@ -0,0 +1,401 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.callback.ImCircuitBreakerCallback;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>熔断器注册表类</b>
+ * <p>
+ * 该类按主机（host:port）或路由（host:port/path）创建并管理ImCircuitBreaker，所有熔断器共用该类的配置，
+ * 状态变化通过ImCircuitBreakerCallback回调。通过ImHttpClient.setCircuitBreakerRegistry启用。
+ * 按路由区分时优先使用ImRequest设置的路由名称，否则将路径中的数字、UUID等ID段归一为{id}；路由熔断器数量达到上限后，新路由使用主机的熔断器
+ * <br/><br/>
+ * <b>Circuit breaker registry class</b>
+ * <p>
+ * This class creates and manages an ImCircuitBreaker per host (host:port) or per route (host:port/path). All circuit
+ * breakers share the settings of this class, and state transitions are reported through ImCircuitBreakerCallback.
+ * Enabled with ImHttpClient.setCircuitBreakerRegistry. Per route, the route name set on ImRequest is used first;
+ * otherwise ID segments of the path such as numbers and UUIDs are normalised to {id}. Once the number of route circuit
+ * breakers reaches its limit, new routes use the circuit breaker of their host.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 熔断器注册表类
+ * @create 2019-11-19 10:45
+ * @see ImHttpClient#setCircuitBreakerRegistry(ImCircuitBreakerRegistry)
+ * @see ImCircuitBreaker
+ * @since 1.5.0
+ */
+public class ImCircuitBreakerRegistry {
+
+    private volatile float failureRateThreshold = 0.5f;
+    private volatile float slowCallRateThreshold = 1.0f;
+    private volatile long slowCallDuration = 60000;
+    private volatile int slidingWindowSize = 100;
+    private volatile int minimumCalls = 20;
+    private volatile long openDuration = 30000;
+    private volatile int halfOpenProbes = 5;
+    private volatile boolean perRoute = false;
+    private volatile int maxRoutes = 1024;
+    private volatile ImCircuitBreakerCallback callback;
+
+    private final ConcurrentHashMap<String, ImCircuitBreaker> circuitBreakers = new ConcurrentHashMap<String, ImCircuitBreaker>();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置打开熔断器的失败率阈值（0到1之间），默认为0.5
+     * <p>
+     * <font color="#666666">Set the failure rate that opens the circuit (between 0 and 1), default is 0.5</font>
+     *
+     * @param failureRateThreshold 失败率阈值 <br/> <font color="#666666">Failure rate threshold</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+        return this;
+    }
+
+    /**
+     * 获得打开熔断器的失败率阈值
+     * <p>
+     * <font color="#666666">Get the failure rate that opens the circuit</font>
+     *
+     * @return 失败率阈值 <br/> <font color="#666666">Failure rate threshold</font>
+     */
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * 设置打开熔断器的慢请求率阈值（0到1之间）及慢请求时间（毫秒），默认为1.0及60000
+     * <p>
+     * <font color="#666666">Set the slow call rate that opens the circuit (between 0 and 1) and the duration that makes a call slow (milliseconds),
+     * default is 1.0 and 60000</font>
+     *
+     * @param slowCallRateThreshold 慢请求率阈值 <br/> <font color="#666666">Slow call rate threshold</font>
+     * @param slowCallDuration      慢请求时间 <br/> <font color="#666666">Slow call duration</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setSlowCallRateThreshold(float slowCallRateThreshold, long slowCallDuration) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDuration = Math.max(slowCallDuration, 1);
+        return this;
+    }
+
+    /**
+     * 获得打开熔断器的慢请求率阈值
+     * <p>
+     * <font color="#666666">Get the slow call rate that opens the circuit</font>
+     *
+     * @return 慢请求率阈值 <br/> <font color="#666666">Slow call rate threshold</font>
+     */
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * 获得慢请求时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the duration that makes a call slow (milliseconds)</font>
+     *
+     * @return 慢请求时间 <br/> <font color="#666666">Slow call duration</font>
+     */
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * 设置滑动窗口大小（最近的请求数）及计算比率所需的最少请求数，默认为100及20，只对之后创建的熔断器生效
+     * <p>
+     * <font color="#666666">Set the sliding window size (most recent calls) and the minimum calls needed before rates are evaluated,
+     * default is 100 and 20. Only affects circuit breakers created afterwards.</font>
+     *
+     * @param slidingWindowSize 滑动窗口大小 <br/> <font color="#666666">Sliding window size</font>
+     * @param minimumCalls      最少请求数 <br/> <font color="#666666">Minimum calls</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setSlidingWindow(int slidingWindowSize, int minimumCalls) {
+        this.slidingWindowSize = Math.max(slidingWindowSize, 1);
+        this.minimumCalls = Math.min(Math.max(minimumCalls, 1), this.slidingWindowSize);
+        return this;
+    }
+
+    /**
+     * 获得滑动窗口大小
+     * <p>
+     * <font color="#666666">Get the sliding window size</font>
+     *
+     * @return 滑动窗口大小 <br/> <font color="#666666">Sliding window size</font>
+     */
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * 获得计算比率所需的最少请求数
+     * <p>
+     * <font color="#666666">Get the minimum calls needed before rates are evaluated</font>
+     *
+     * @return 最少请求数 <br/> <font color="#666666">Minimum calls</font>
+     */
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * 设置熔断器打开后进入半开状态前的时间（毫秒），默认为30000
+     * <p>
+     * <font color="#666666">Set how long the circuit stays open before turning half-open (milliseconds), default is 30000</font>
+     *
+     * @param openDuration 打开时间 <br/> <font color="#666666">Open duration</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setOpenDuration(long openDuration) {
+        this.openDuration = Math.max(openDuration, 0);
+        return this;
+    }
+
+    /**
+     * 获得熔断器打开后进入半开状态前的时间（毫秒）
+     * <p>
+     * <font color="#666666">Get how long the circuit stays open before turning half-open (milliseconds)</font>
+     *
+     * @return 打开时间 <br/> <font color="#666666">Open duration</font>
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * 设置半开状态放行的探测请求数，默认为5
+     * <p>
+     * <font color="#666666">Set the number of probe requests let through while half-open, default is 5</font>
+     *
+     * @param halfOpenProbes 探测请求数 <br/> <font color="#666666">Probe requests</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setHalfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+        return this;
+    }
+
+    /**
+     * 获得半开状态放行的探测请求数
+     * <p>
+     * <font color="#666666">Get the number of probe requests let through while half-open</font>
+     *
+     * @return 探测请求数 <br/> <font color="#666666">Probe requests</font>
+     */
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    /**
+     * 设置是否按路由（host:port/path）区分熔断器，默认按主机（host:port）区分
+     * <p>
+     * <font color="#666666">Set whether circuit breakers are kept per route (host:port/path), default is per host (host:port)</font>
+     *
+     * @param perRoute 是否按路由区分 <br/> <font color="#666666">Whether to keep one per route</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setPerRoute(boolean perRoute) {
+        this.perRoute = perRoute;
+        return this;
+    }
+
+    /**
+     * 是否按路由（host:port/path）区分熔断器
+     * <p>
+     * <font color="#666666">Whether circuit breakers are kept per route (host:port/path)</font>
+     *
+     * @return 是否按路由区分 <br/> <font color="#666666">Whether to keep one per route</font>
+     */
+    public boolean isPerRoute() {
+        return perRoute;
+    }
+
+    /**
+     * 设置按路由区分时熔断器数量的上限，达到上限后新路由使用主机的熔断器，默认为1024
+     * <p>
+     * <font color="#666666">Set the maximum number of circuit breakers when kept per route. Once reached, new routes use the
+     * circuit breaker of their host. Default is 1024.</font>
+     *
+     * @param maxRoutes 熔断器数量上限 <br/> <font color="#666666">Maximum number of circuit breakers</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setMaxRoutes(int maxRoutes) {
+        this.maxRoutes = Math.max(maxRoutes, 1);
+        return this;
+    }
+
+    /**
+     * 获得按路由区分时熔断器数量的上限
+     * <p>
+     * <font color="#666666">Get the maximum number of circuit breakers when kept per route</font>
+     *
+     * @return 熔断器数量上限 <br/> <font color="#666666">Maximum number of circuit breakers</font>
+     */
+    public int getMaxRoutes() {
+        return maxRoutes;
+    }
+
+    /**
+     * 设置熔断器状态回调接口
+     * <p>
+     * <font color="#666666">Set the circuit breaker state callback interface</font>
+     *
+     * @param callback 熔断器状态回调接口 <br/> <font color="#666666">Circuit breaker state callback interface</font>
+     * @return ImCircuitBreakerRegistry对象实体 <br/> <font color="#666666">ImCircuitBreakerRegistry object entity</font>
+     */
+    public ImCircuitBreakerRegistry setCallback(ImCircuitBreakerCallback callback) {
+        this.callback = callback;
+        return this;
+    }
+
+    /**
+     * 获得熔断器状态回调接口
+     * <p>
+     * <font color="#666666">Get the circuit breaker state callback interface</font>
+     *
+     * @return 熔断器状态回调接口 <br/> <font color="#666666">Circuit breaker state callback interface</font>
+     */
+    public ImCircuitBreakerCallback getCallback() {
+        return callback;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得指定名称（host:port或host:port/path）的熔断器，不存在时创建
+     * <p>
+     * <font color="#666666">Get the circuit breaker with the given name (host:port or host:port/path), created when missing</font>
+     *
+     * @param name 熔断器名称 <br/> <font color="#666666">Circuit breaker name</font>
+     * @return 熔断器 <br/> <font color="#666666">Circuit breaker</font>
+     */
+    public ImCircuitBreaker getCircuitBreaker(String name) {
+        ImCircuitBreaker circuitBreaker = circuitBreakers.get(name);
+        if (circuitBreaker == null) {
+            circuitBreaker = circuitBreakers.computeIfAbsent(name, key -> new ImCircuitBreaker(key, this));
+        }
+        return circuitBreaker;
+    }
+
+    /**
+     * 获得所有熔断器
+     * <p>
+     * <font color="#666666">Get all circuit breakers</font>
+     *
+     * @return 熔断器名称与熔断器 <br/> <font color="#666666">Circuit breaker names and circuit breakers</font>
+     */
+    public Map<String, ImCircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(new HashMap<String, ImCircuitBreaker>(circuitBreakers));
+    }
+
+    /**
+     * 【内部方法】 获得请求URL对应的熔断器
+     *
+     * @param url   请求URL
+     * @param route 请求的路由名称，可以为null
+     * @return 熔断器
+     */
+    ImCircuitBreaker getCircuitBreaker(URL url, String route) {
+        String host = url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        if (!perRoute) {
+            return getCircuitBreaker(host);
+        }
+        String name;
+        if (route != null) {
+            name = route.startsWith("/") ? host + route : host + "/" + route;
+        } else {
+            name = host + normalizePath(url.getPath());
+        }
+        ImCircuitBreaker circuitBreaker = circuitBreakers.get(name);
+        if (circuitBreaker != null) {
+            return circuitBreaker;
+        }
+        //路由数量达到上限时不再创建新的熔断器
+        return circuitBreakers.size() < maxRoutes ? getCircuitBreaker(name) : getCircuitBreaker(host);
+    }
+
+    /**
+     * 【内部方法】 将路径中的ID段（数字、UUID或较长的十六进制串）替换为{id}
+     */
+    static String normalizePath(String path) {
+        StringBuilder builder = null;
+        int start = 0;
+        int length = path.length();
+        while (start <= length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (isIdSegment(path, start, end)) {
+                if (builder == null) {
+                    builder = new StringBuilder(length).append(path, 0, start);
+                }
+                builder.append("{id}");
+            } else if (builder != null) {
+                builder.append(path, start, end);
+            }
+            if (end < length && builder != null) {
+                builder.append('/');
+            }
+            start = end + 1;
+        }
+        return builder == null ? path : builder.toString();
+    }
+
+    private static boolean isIdSegment(String path, int start, int end) {
+        boolean digit = false;
+        boolean hex = true;
+        boolean number = true;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else {
+                number = false;
+                if (!(c >= 'a' && c <= 'f') && !(c >= 'A' && c <= 'F') && c != '-') {
+                    hex = false;
+                }
+            }
+        }
+        return digit && (number || (hex && end - start >= 8));
+    }
+
+    /**
+     * 【内部方法】 执行状态变化回调，回调异常不影响请求
+     */
+    void fireStateChange(ImCircuitBreaker circuitBreaker, ImCircuitState from, ImCircuitState to) {
+        ImCircuitBreakerCallback callback = this.callback;
+        if (callback != null) {
+            try {
+                callback.onStateChange(circuitBreaker, from, to);
+            } catch (RuntimeException e) {
+                //回调异常不影响请求
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+/**
+ * <b>熔断器状态枚举类</b>
+ * <p>
+ * 该类表示ImCircuitBreaker的状态
+ * <br/><br/>
+ * <b>Circuit breaker state enumeration class</b>
+ * <p>
+ * This class represents the state of an ImCircuitBreaker.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 熔断器状态枚举类
+ * @create 2019-11-19 09:30
+ * @see ImCircuitBreaker
+ * @since 1.5.0
+ */
+public enum ImCircuitState {
+
+    /**
+     * [CLOSED] 关闭，请求正常执行并统计结果
+     * <p>
+     * <font color="#666666">[CLOSED] Closed, requests run normally and their outcomes are recorded</font>
+     */
+    CLOSED,
+    /**
+     * [OPEN] 打开，请求立即失败，不建立连接
+     * <p>
+     * <font color="#666666">[OPEN] Open, requests fail at once without opening a connection</font>
+     */
+    OPEN,
+    /**
+     * [HALF_OPEN] 半开，只允许少量探测请求，根据其结果关闭或重新打开
+     * <p>
+     * <font color="#666666">[HALF_OPEN] Half-open, only a few probe requests are let through and their outcome closes or reopens the circuit</font>
+     */
+    HALF_OPEN
+}
@@ -0,0 +1,393 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.exception.ConcurrencyLimitException;
+
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>自适应并发限制类</b>
+ * <p>
+ * 该类按主机（host:port）限制同时执行的请求数，上限根据实测的往返时间（RTT）及错误自动调整（梯度算法）：
+ * 无负载RTT（近期批次平均RTT的最小值）与实测RTT的比值决定上限的增减，RTT升高（上游开始排队）时收缩，RTT平稳时按sqrt(limit)的余量缓慢增长，
+ * 并定期将上限减半以重新测量无负载RTT；
+ * 网络异常、超时及5xx响应时按比例快速收缩（加性增、乘性减）。请求数达到上限时，请求最多等待maxWait毫秒（等待的请求按优先级取得许可），
+ * 仍没有空位则抛出ConcurrencyLimitException，从而找到上游的实际承载能力，避免排队崩溃
+ * <br/><br/>
+ * <b>Adaptive concurrency limiter class</b>
+ * <p>
+ * This class limits the requests in flight per host (host:port) and adjusts the limit from measured round-trip times
+ * (RTT) and errors with a gradient algorithm. The ratio of the no-load RTT (the lowest recent batch average) to the
+ * measured RTT drives the limit: it shrinks when RTT rises (the upstream starts queueing) and grows slowly by a headroom
+ * of sqrt(limit) while RTT is steady, and it is halved now and then to measure the no-load RTT again. Network errors, timeouts and 5xx responses shrink it multiplicatively (additive increase, multiplicative
+ * decrease). A request over the limit waits at most maxWait milliseconds (waiting requests get permits in priority
+ * order) and then throws ConcurrencyLimitException, so
+ * the client finds the real capacity of the upstream and avoids queueing collapse.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 自适应并发限制类
+ * @create 2019-11-19 15:40
+ * @see ImHttpClient#setConcurrencyLimiter(ImConcurrencyLimiter)
+ * @since 1.5.0
+ */
+public class ImConcurrencyLimiter {
+
+    //每批样本数，按批次平均RTT调整上限以消除单个样本的抖动
+    private final static int BATCH = 20;
+    //无负载RTT每批的上浮比例，使其能跟随上游基线的变化
+    private final static double MIN_RTT_DRIFT = 1.0 / 1000;
+    //每隔若干批将上限减半一次，在上游排队时重新测量无负载RTT
+    private final static int PROBE_BATCHES = 50;
+
+    private volatile int initialLimit = 20;
+    private volatile int minLimit = 1;
+    private volatile int maxLimit = 1000;
+    private volatile double rttTolerance = 1.5;
+    private volatile double backoffRatio = 0.9;
+    private volatile double smoothing = 0.2;
+    private volatile long maxWait = 0;
+
+    private final ConcurrentHashMap<String, Limit> limits = new ConcurrentHashMap<String, Limit>();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置并发上限的初始值、最小值及最大值，默认为20、1、1000
+     * <p>
+     * <font color="#666666">Set the initial, minimum and maximum concurrency limit, default is 20, 1 and 1000</font>
+     *
+     * @param initialLimit 初始值 <br/> <font color="#666666">Initial limit</font>
+     * @param minLimit     最小值 <br/> <font color="#666666">Minimum limit</font>
+     * @param maxLimit     最大值 <br/> <font color="#666666">Maximum limit</font>
+     * @return ImConcurrencyLimiter对象实体 <br/> <font color="#666666">ImConcurrencyLimiter object entity</font>
+     */
+    public ImConcurrencyLimiter setLimits(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException();
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * 获得并发上限的初始值
+     * <p>
+     * <font color="#666666">Get the initial concurrency limit</font>
+     *
+     * @return 初始值 <br/> <font color="#666666">Initial limit</font>
+     */
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * 获得并发上限的最小值
+     * <p>
+     * <font color="#666666">Get the minimum concurrency limit</font>
+     *
+     * @return 最小值 <br/> <font color="#666666">Minimum limit</font>
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * 获得并发上限的最大值
+     * <p>
+     * <font color="#666666">Get the maximum concurrency limit</font>
+     *
+     * @return 最大值 <br/> <font color="#666666">Maximum limit</font>
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * 设置RTT容忍倍数，实测RTT不超过无负载RTT的该倍数时上限不收缩，默认为1.5
+     * <p>
+     * <font color="#666666">Set the RTT tolerance, the limit does not shrink while the measured RTT stays within this multiple of the no-load RTT, default is 1.5</font>
+     *
+     * @param rttTolerance RTT容忍倍数 <br/> <font color="#666666">RTT tolerance</font>
+     * @return ImConcurrencyLimiter对象实体 <br/> <font color="#666666">ImConcurrencyLimiter object entity</font>
+     */
+    public ImConcurrencyLimiter setRttTolerance(double rttTolerance) {
+        if (rttTolerance < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.rttTolerance = rttTolerance;
+        return this;
+    }
+
+    /**
+     * 获得RTT容忍倍数
+     * <p>
+     * <font color="#666666">Get the RTT tolerance</font>
+     *
+     * @return RTT容忍倍数 <br/> <font color="#666666">RTT tolerance</font>
+     */
+    public double getRttTolerance() {
+        return rttTolerance;
+    }
+
+    /**
+     * 设置请求失败时上限的收缩比例，默认为0.9
+     * <p>
+     * <font color="#666666">Set the ratio the limit is multiplied by when a request fails, default is 0.9</font>
+     *
+     * @param backoffRatio 收缩比例（0到1之间） <br/> <font color="#666666">Backoff ratio (between 0 and 1)</font>
+     * @return ImConcurrencyLimiter对象实体 <br/> <font color="#666666">ImConcurrencyLimiter object entity</font>
+     */
+    public ImConcurrencyLimiter setBackoffRatio(double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException();
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * 获得请求失败时上限的收缩比例
+     * <p>
+     * <font color="#666666">Get the ratio the limit is multiplied by when a request fails</font>
+     *
+     * @return 收缩比例 <br/> <font color="#666666">Backoff ratio</font>
+     */
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * 设置请求数达到上限时的最长等待时间（毫秒），默认为0，即立即抛出ConcurrencyLimitException
+     * <p>
+     * <font color="#666666">Set the longest wait when the limit is reached (milliseconds), default is 0, which throws ConcurrencyLimitException at once</font>
+     *
+     * @param maxWait 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     * @return ImConcurrencyLimiter对象实体 <br/> <font color="#666666">ImConcurrencyLimiter object entity</font>
+     */
+    public ImConcurrencyLimiter setMaxWait(long maxWait) {
+        this.maxWait = Math.max(maxWait, 0);
+        return this;
+    }
+
+    /**
+     * 获得请求数达到上限时的最长等待时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the longest wait when the limit is reached (milliseconds)</font>
+     *
+     * @return 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * 获得主机当前的并发上限，没有请求过的主机为初始值
+     * <p>
+     * <font color="#666666">Get the current concurrency limit of a host, the initial limit for hosts not requested yet</font>
+     *
+     * @param host 主机（host:port） <br/> <font color="#666666">Host (host:port)</font>
+     * @return 并发上限 <br/> <font color="#666666">Concurrency limit</font>
+     */
+    public int getLimit(String host) {
+        Limit limit = limits.get(host);
+        return limit == null ? initialLimit : limit.getLimit();
+    }
+
+    /**
+     * 获得主机正在执行的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests in flight to a host</font>
+     *
+     * @param host 主机（host:port） <br/> <font color="#666666">Host (host:port)</font>
+     * @return 正在执行的请求数 <br/> <font color="#666666">Requests in flight</font>
+     */
+    public int getInFlight(String host) {
+        Limit limit = limits.get(host);
+        return limit == null ? 0 : limit.inFlight.get();
+    }
+
+    /**
+     * 获得因超过并发上限而被拒绝的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests rejected over the concurrency limit</font>
+     *
+     * @return 被拒绝的请求数 <br/> <font color="#666666">Rejected requests</font>
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 请求建立连接前取得并发许可，最多等待maxWait毫秒及请求的剩余时间，等待的请求按优先级取得许可
+     *
+     * @param url             请求URL
+     * @param remainingMillis 请求的剩余时间（毫秒）
+     * @param priority        请求的优先级
+     * @return 取得的许可
+     * @throws ConcurrencyLimitException 超过并发上限
+     * @throws InterruptedIOException    等待时被中断
+     */
+    Limit acquire(URL url, long remainingMillis, int priority) throws ConcurrencyLimitException, InterruptedIOException {
+        String host = url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+        Limit limit = limits.get(host);
+        if (limit == null) {
+            limit = limits.computeIfAbsent(host, key -> new Limit(initialLimit));
+        }
+        //已有请求在等待时，可以等待的请求不插队
+        long wait = Math.min(maxWait, remainingMillis);
+        if ((limit.waiters == 0 || wait <= 0) && limit.tryAcquire()) {
+            return limit;
+        }
+        if (wait > 0 && limit.await(wait, priority)) {
+            return limit;
+        }
+        rejectedCount.incrementAndGet();
+        throw new ConcurrencyLimitException(host, limit.getLimit());
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 一个主机的并发上限及正在执行的请求数
+     */
+    final class Limit {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double limit;
+        private volatile int waiters;
+        private final ImPriorityQueue<Object> queue = new ImPriorityQueue<Object>();
+        private double minRtt;
+        private double batchRtt;
+        private int batchCount;
+        private int batchInFlight;
+        private int batches;
+
+        private Limit(int initialLimit) {
+            this.limit = initialLimit;
+        }
+
+        int getLimit() {
+            return (int) limit;
+        }
+
+        /**
+         * 【内部方法】 无锁取得许可
+         */
+        private boolean tryAcquire() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= (int) limit) {
+                    return false;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            return true;
+        }
+
+        /**
+         * 【内部方法】 等待许可，只有排在最前的请求可以取得许可
+         */
+        private synchronized boolean await(long waitMillis, int priority) throws InterruptedIOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+            Object waiter = new Object();
+            ImPriorityQueue.Entry<Object> entry = queue.offer(waiter, priority);
+            waiters++;
+            try {
+                while (queue.peek() != waiter || !tryAcquire()) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the concurrency limit.");
+            } finally {
+                waiters--;
+                queue.remove(entry);
+                //排在最前的请求已改变
+                notifyAll();
+            }
+        }
+
+        /**
+         * 【内部方法】 释放许可，并根据请求结果调整上限
+         *
+         * @param sample   是否计入样本（被取消的请求不计入）
+         * @param dropped  是否失败（网络异常、超时、5xx响应）
+         * @param rttNanos 往返时间（纳秒）
+         */
+        void release(boolean sample, boolean dropped, long rttNanos) {
+            int inFlightAtEnd = inFlight.getAndDecrement();
+            if (sample) {
+                update(dropped, rttNanos, inFlightAtEnd);
+            }
+            if (waiters > 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void update(boolean dropped, long rttNanos, int inFlightAtEnd) {
+            double current = limit;
+            double newLimit;
+            if (dropped) {
+                newLimit = current * backoffRatio;
+            } else {
+                batchRtt += Math.max(rttNanos, 1);
+                batchInFlight = Math.max(batchInFlight, inFlightAtEnd);
+                if (++batchCount < BATCH) {
+                    return;
+                }
+                double rtt = batchRtt / batchCount;
+                int maxInFlight = batchInFlight;
+                batchRtt = 0;
+                batchCount = 0;
+                batchInFlight = 0;
+                //无负载RTT取批次平均RTT的最小值，并缓慢上浮
+                minRtt = minRtt == 0 ? rtt : Math.min(rtt, minRtt * (1 + MIN_RTT_DRIFT));
+                //请求数远低于上限时不增长，避免空闲时上限无限增大
+                if (maxInFlight < current / 2) {
+                    return;
+                }
+                //定期减半，让上游的队列排空以测量无负载RTT
+                if (++batches % PROBE_BATCHES == 0) {
+                    limit = Math.max(minLimit, Math.min(current, maxInFlight) / 2);
+                    return;
+                }
+                double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * minRtt / rtt));
+                newLimit = current * gradient + Math.sqrt(current);
+                newLimit = current * (1 - smoothing) + newLimit * smoothing;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        }
+    }
+}
@@ -0,0 +1,673 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.bean.ImResponseCookie;
+import cn.sinlmao.commons.network.tools.HttpDateTool;
+
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>会话Cookie存储类</b>
+ * <p>
+ * 该类按照RFC 6265的规则保存会话的Cookie，以可注册域名（registrable domain）为索引，并在域名下按Path匹配，
+ * 过期的Cookie会在访问时被淘汰。未指定域名的Cookie（通过ImSession.setCookie设置）对所有主机生效。
+ * <p>
+ * 该类是线程安全的：存储由并发Map构成，未指定域名的Cookie在写入时整体替换（写时复制），查找时不需要加锁。
+ * <br/><br/>
+ * <b>Session cookie store class</b>
+ * <p>
+ * This class keeps session cookies according to the rules of RFC 6265, indexed by registrable domain and matched by path
+ * within the domain. Expired cookies are evicted when accessed. Cookies without a domain (set through ImSession.setCookie)
+ * apply to all hosts.
+ * <p>
+ * This class is thread-safe: the store is made of concurrent maps, and the cookies without a domain are replaced as a
+ * whole on write (copy-on-write), so lookups never lock.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 会话Cookie存储类
+ * @create 2019-11-14 10:20
+ * @see ImSession
+ * @since 1.5.0
+ */
+public class ImCookieStore {
+
+    //常见的二级公共后缀（未引入完整的Public Suffix List）
+    private final static Set<String> SECOND_LEVEL_SUFFIXES = new HashSet<String>(Arrays.asList(
+            "com", "net", "org", "gov", "edu", "co", "ac", "or", "ne", "go"));
+
+    //按可注册域名索引的Cookie
+    private final ConcurrentHashMap<String, Map<String, Entry>> domainCookies = new ConcurrentHashMap<String, Map<String, Entry>>();
+    //未指定域名的Cookie（写时复制）
+    private volatile Map<String, String> globalCookies = Collections.emptyMap();
+
+    private final Object globalLock = new Object();
+    private final AtomicLong creationSequence = new AtomicLong();
+
+    //每次Cookie变化时递增的版本号，以及按版本号缓存的已序列化Cookie头（超出容量时淘汰最久未使用的）
+    private final static int HEADER_CACHE_SIZE = 512;
+    private final AtomicLong version = new AtomicLong();
+    private final Map<String, CookieHeader> headerCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CookieHeader>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CookieHeader> eldest) {
+                    return size() > HEADER_CACHE_SIZE;
+                }
+            });
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * <b>存储的Cookie条目</b>
+     * <p>
+     * <font color="#666666">Stored cookie entry</font>
+     */
+    static final class Entry {
+        final String name;
+        final String value;
+        final String domain;
+        final boolean hostOnly;
+        final String path;
+        final long expiresAt;
+        final boolean secure;
+        final boolean httpOnly;
+        final long creation;
+
+        Entry(String name, String value, String domain, boolean hostOnly, String path,
+              long expiresAt, boolean secure, boolean httpOnly, long creation) {
+            this.name = name;
+            this.value = value;
+            this.domain = domain;
+            this.hostOnly = hostOnly;
+            this.path = path;
+            this.expiresAt = expiresAt;
+            this.secure = secure;
+            this.httpOnly = httpOnly;
+            this.creation = creation;
+        }
+
+        String key() {
+            return name + ";" + domain + ";" + path;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt >= 0 && expiresAt <= now;
+        }
+    }
+
+    /**
+     * <b>已序列化的Cookie头</b>
+     * <p>
+     * <font color="#666666">Serialized Cookie header</font>
+     */
+    private static final class CookieHeader {
+        final long version;
+        final String value;
+        //所含Cookie中最早的过期时间，小于0表示不会过期
+        final long expiresAt;
+
+        CookieHeader(long version, String value, long expiresAt) {
+            this.version = version;
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 保存服务端返回的Cookie
+     * <p>
+     * 将根据请求URL校验Domain属性，不匹配的Cookie会被丢弃；Max-Age小于等于0或已过期的Cookie将删除已存在的同名Cookie
+     * <p>
+     * <font color="#666666">Store a cookie returned by the server</font>
+     * <p>
+     * <font color="#666666">The Domain attribute is checked against the request URL and mismatched cookies are dropped;
+     * a cookie with Max-Age less than or equal to 0 or an expiry in the past removes the existing cookie.</font>
+     *
+     * @param cookie     服务端返回的Cookie <br/> <font color="#666666">Cookie returned by the server</font>
+     * @param requestUrl 请求URL <br/> <font color="#666666">Request URL</font>
+     * @return 是否已保存 <br/> <font color="#666666">Whether it has been stored</font>
+     */
+    public boolean add(ImResponseCookie cookie, URL requestUrl) {
+        if (cookie == null || cookie.getName() == null || requestUrl == null) {
+            return false;
+        }
+
+        String host = requestUrl.getHost().toLowerCase(Locale.ROOT);
+
+        //处理Domain属性
+        String domain = attribute(cookie.getDomain());
+        boolean hostOnly;
+        if (domain == null || domain.isEmpty()) {
+            domain = host;
+            hostOnly = true;
+        } else {
+            domain = domain.toLowerCase(Locale.ROOT);
+            if (domain.startsWith(".")) {
+                domain = domain.substring(1);
+            }
+            //不允许设置为与请求主机不匹配的域名
+            if (!domainMatch(host, domain)) {
+                return false;
+            }
+            //不允许设置为公共后缀
+            if (isPublicSuffix(domain) && !domain.equals(host)) {
+                return false;
+            }
+            hostOnly = false;
+        }
+
+        //处理Path属性
+        String path = attribute(cookie.getPath());
+        if (path == null || !path.startsWith("/")) {
+            path = defaultPath(requestUrl.getPath());
+        }
+
+        //处理有效期，由解析时的Max-Age或Expires得出
+        long now = System.currentTimeMillis();
+        long expiresAt = cookie.getExpiresAtMillis();
+        if (expiresAt < 0) {
+            //兼容手动构建、仅设置了字符串属性的Cookie
+            String maxAge = attribute(cookie.getMaxAge());
+            String expires = attribute(cookie.getExpires());
+            if (maxAge != null) {
+                try {
+                    long seconds = Long.parseLong(maxAge.trim());
+                    expiresAt = seconds <= 0 ? 0 : now + seconds * 1000L;
+                } catch (NumberFormatException e) {
+                    expiresAt = -1;
+                }
+            } else if (expires != null) {
+                long parsed = HttpDateTool.parse(expires);
+                //无法解析时为会话Cookie，早于1970年的日期视为已过期
+                expiresAt = parsed == HttpDateTool.INVALID ? -1 : Math.max(parsed, 0);
+            }
+        }
+
+        Entry entry = new Entry(cookie.getName(), cookie.getValue(), domain, hostOnly, path,
+                expiresAt, cookie.isSecure(), cookie.isHttpOnly(), creationSequence.getAndIncrement());
+
+        String index = registrableDomain(domain);
+        if (entry.isExpired(now)) {
+            domainCookies.computeIfPresent(index, (key, bucket) -> {
+                bucket.remove(entry.key());
+                return bucket.isEmpty() ? null : bucket;
+            });
+            version.incrementAndGet();
+            return false;
+        }
+        Entry[] previous = new Entry[1];
+        domainCookies.compute(index, (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new ConcurrentHashMap<String, Entry>();
+            }
+            previous[0] = bucket.put(entry.key(), entry);
+            return bucket;
+        });
+        //仅在Cookie头的内容可能变化或有效期缩短时递增版本号，只延长有效期的Cookie不影响已序列化的Cookie头
+        if (previous[0] == null || !previous[0].value.equals(entry.value)
+                || previous[0].secure != entry.secure || previous[0].hostOnly != entry.hostOnly
+                || entry.expiresAt >= 0 && (previous[0].expiresAt < 0 || entry.expiresAt < previous[0].expiresAt)) {
+            version.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * 获得适用于请求URL的Cookie
+     * <p>
+     * 仅查找请求主机所属可注册域名下的Cookie，Path较长的Cookie排在前面，未指定域名的Cookie覆盖同名的Cookie
+     * <p>
+     * <font color="#666666">Get the cookies that apply to the request URL</font>
+     * <p>
+     * <font color="#666666">Only the cookies under the registrable domain of the request host are looked up, cookies with
+     * longer paths come first, and cookies without a domain override cookies with the same name.</font>
+     *
+     * @param requestUrl 请求URL <br/> <font color="#666666">Request URL</font>
+     * @return Cookie数据 <br/> <font color="#666666">Cookie data</font>
+     */
+    public Map<String, String> getCookies(URL requestUrl) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (Entry entry : match(requestUrl)) {
+            if (!result.containsKey(entry.name)) {
+                result.put(entry.name, entry.value);
+            }
+        }
+        result.putAll(globalCookies);
+        return result;
+    }
+
+    /**
+     * 获得适用于请求URL的Cookie头字符串
+     * <p>
+     * <font color="#666666">Get the Cookie header string that applies to the request URL</font>
+     *
+     * @param requestUrl 请求URL <br/> <font color="#666666">Request URL</font>
+     * @return Cookie头字符串，没有Cookie时为空字符串 <br/> <font color="#666666">Cookie header string, empty when there is no cookie</font>
+     */
+    public String getCookieHeader(URL requestUrl) {
+        String path = requestUrl.getPath();
+        String key = requestUrl.getProtocol() + "://" + requestUrl.getHost().toLowerCase(Locale.ROOT)
+                + (path == null || path.isEmpty() ? "/" : path);
+        long now = System.currentTimeMillis();
+
+        //Cookie没有变化时直接使用已序列化的Cookie头
+        long current = version.get();
+        CookieHeader cached = headerCache.get(key);
+        if (cached != null && cached.version == current && (cached.expiresAt < 0 || now < cached.expiresAt)) {
+            return cached.value;
+        }
+
+        //重新序列化，版本号须在查找之前读取，避免并发修改后缓存旧数据
+        long expiresAt = -1;
+        Map<String, String> cookies = new LinkedHashMap<String, String>();
+        for (Entry entry : match(requestUrl)) {
+            if (!cookies.containsKey(entry.name)) {
+                cookies.put(entry.name, entry.value);
+                if (entry.expiresAt >= 0 && (expiresAt < 0 || entry.expiresAt < expiresAt)) {
+                    expiresAt = entry.expiresAt;
+                }
+            }
+        }
+        cookies.putAll(globalCookies);
+        String value = serialize(cookies);
+
+        headerCache.put(key, new CookieHeader(current, value, expiresAt));
+        return value;
+    }
+
+    /**
+     * 获得Cookie的版本号，每次Cookie发生变化时递增
+     * <p>
+     * <font color="#666666">Get the version of the cookies, which is incremented on every cookie change</font>
+     *
+     * @return 版本号 <br/> <font color="#666666">Version</font>
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * 淘汰所有已过期的Cookie
+     * <p>
+     * <font color="#666666">Evict all expired cookies</font>
+     *
+     * @return 淘汰的数量 <br/> <font color="#666666">Count of evicted cookies</font>
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int[] count = {0};
+        for (String index : domainCookies.keySet()) {
+            //与add在同一个桶上串行执行，避免删除正在写入的桶
+            domainCookies.computeIfPresent(index, (key, bucket) -> {
+                for (Iterator<Entry> entries = bucket.values().iterator(); entries.hasNext(); ) {
+                    if (entries.next().isExpired(now)) {
+                        entries.remove();
+                        count[0]++;
+                    }
+                }
+                return bucket.isEmpty() ? null : bucket;
+            });
+        }
+        if (count[0] > 0) {
+            version.incrementAndGet();
+        }
+        return count[0];
+    }
+
+    /**
+     * 清空所有Cookie
+     * <p>
+     * <font color="#666666">Clear all cookies</font>
+     */
+    public void clear() {
+        domainCookies.clear();
+        headerCache.clear();
+        synchronized (globalLock) {
+            globalCookies = Collections.emptyMap();
+        }
+        version.incrementAndGet();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置未指定域名的Cookie，对所有主机生效
+     * <p>
+     * <font color="#666666">Set a cookie without a domain, which applies to all hosts</font>
+     *
+     * @param name  Cookie键 <br/> <font color="#666666">Cookie Key</font>
+     * @param value Cookie值 <br/> <font color="#666666">Cookie Value</font>
+     */
+    public void setCookie(String name, String value) {
+        synchronized (globalLock) {
+            Map<String, String> cookies = new LinkedHashMap<String, String>(globalCookies);
+            cookies.put(name, value);
+            globalCookies = Collections.unmodifiableMap(cookies);
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 一次性设置多个未指定域名的Cookie，读取方不会看到部分写入的数据
+     * <p>
+     * <font color="#666666">Set several cookies without a domain at once, readers never see a partial write</font>
+     *
+     * @param cookies Map类型的Cookie数据 <br/> <font color="#666666">Map type Cookie data</font>
+     */
+    public void setCookies(Map<String, String> cookies) {
+        synchronized (globalLock) {
+            Map<String, String> copy = new LinkedHashMap<String, String>(globalCookies);
+            copy.putAll(cookies);
+            globalCookies = Collections.unmodifiableMap(copy);
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 添加未指定域名的Cookie，当数据已经存在，则不再添加
+     * <p>
+     * <font color="#666666">Add a cookie without a domain, when the data already exists, it will not be added</font>
+     *
+     * @param name  Cookie键 <br/> <font color="#666666">Cookie Key</font>
+     * @param value Cookie值 <br/> <font color="#666666">Cookie Value</font>
+     */
+    public void addCookie(String name, String value) {
+        synchronized (globalLock) {
+            if (!globalCookies.containsKey(name)) {
+                setCookie(name, value);
+            }
+        }
+    }
+
+    /**
+     * 根据Cookie键获得对应值，未指定域名的Cookie优先
+     * <p>
+     * <font color="#666666">Get the corresponding value according to the Cookie key, cookies without a domain take precedence</font>
+     *
+     * @param name Cookie键 <br/> <font color="#666666">Cookie Key</font>
+     * @return Cookie值 <br/> <font color="#666666">Cookie Value</font>
+     */
+    public String getCookieData(String name) {
+        String value = globalCookies.get(name);
+        if (value != null) {
+            return value;
+        }
+        long now = System.currentTimeMillis();
+        for (Map<String, Entry> bucket : domainCookies.values()) {
+            for (Entry entry : bucket.values()) {
+                if (entry.name.equals(name) && !entry.isExpired(now)) {
+                    return entry.value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获得所有Cookie键
+     * <p>
+     * <font color="#666666">Get all Cookie keys</font>
+     *
+     * @return 所有Cookie键 <br/> <font color="#666666">All Cookie keys</font>
+     */
+    public Set<String> getCookieNames() {
+        Set<String> names = new LinkedHashSet<String>(globalCookies.keySet());
+        long now = System.currentTimeMillis();
+        for (Map<String, Entry> bucket : domainCookies.values()) {
+            for (Entry entry : bucket.values()) {
+                if (!entry.isExpired(now)) {
+                    names.add(entry.name);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * 获得Cookie数量
+     * <p>
+     * <font color="#666666">Get the count of Cookies</font>
+     *
+     * @return Cookie数量 <br/> <font color="#666666">Cookies count</font>
+     */
+    public int getCookieSize() {
+        return getCookieNames().size();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 获得所有未过期的Cookie条目，用于持久化
+     */
+    List<Entry> getEntries() {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<Entry>();
+        for (Map<String, Entry> bucket : domainCookies.values()) {
+            for (Entry entry : bucket.values()) {
+                if (!entry.isExpired(now)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 【内部方法】 恢复持久化的Cookie条目
+     */
+    void restoreEntry(String name, String value, String domain, boolean hostOnly, String path,
+                      long expiresAt, boolean secure, boolean httpOnly) {
+        Entry entry = new Entry(name, value, domain, hostOnly, path, expiresAt, secure, httpOnly,
+                creationSequence.getAndIncrement());
+        if (entry.isExpired(System.currentTimeMillis())) {
+            return;
+        }
+        domainCookies.compute(registrableDomain(domain), (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new ConcurrentHashMap<String, Entry>();
+            }
+            bucket.put(entry.key(), entry);
+            return bucket;
+        });
+        version.incrementAndGet();
+    }
+
+    protected Map<String, String> getGlobalCookies() {
+        return globalCookies;
+    }
+
+    protected void setGlobalCookies(Map<String, String> globalCookies) {
+        synchronized (globalLock) {
+            this.globalCookies = Collections.unmodifiableMap(new LinkedHashMap<String, String>(globalCookies));
+            version.incrementAndGet();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 查找与请求URL匹配的Cookie
+     *
+     * @param requestUrl 请求URL
+     * @return 已排序的Cookie条目
+     */
+    private List<Entry> match(URL requestUrl) {
+        String host = requestUrl.getHost().toLowerCase(Locale.ROOT);
+        Map<String, Entry> bucket = domainCookies.get(registrableDomain(host));
+        if (bucket == null || bucket.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        String path = requestUrl.getPath();
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
+        boolean secure = "https".equalsIgnoreCase(requestUrl.getProtocol());
+        long now = System.currentTimeMillis();
+
+        List<Entry> matched = new ArrayList<Entry>();
+        for (Entry entry : bucket.values()) {
+            //淘汰过期的Cookie
+            if (entry.isExpired(now)) {
+                if (bucket.remove(entry.key(), entry)) {
+                    version.incrementAndGet();
+                }
+                continue;
+            }
+            if (entry.hostOnly ? !host.equals(entry.domain) : !domainMatch(host, entry.domain)) {
+                continue;
+            }
+            if (!pathMatch(path, entry.path)) {
+                continue;
+            }
+            if (entry.secure && !secure) {
+                continue;
+            }
+            matched.add(entry);
+        }
+
+        //RFC 6265 5.4：Path较长的优先，其次按创建顺序
+        Collections.sort(matched, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                if (a.path.length() != b.path.length()) {
+                    return b.path.length() - a.path.length();
+                }
+                return Long.compare(a.creation, b.creation);
+            }
+        });
+        return matched;
+    }
+
+    /**
+     * 【内部方法】 序列化Cookie头
+     */
+    static String serialize(Map<String, String> cookies) {
+        if (cookies.isEmpty()) {
+            return "";
+        }
+        StringBuilder builder = new StringBuilder(cookies.size() * 32);
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            if (builder.length() > 0) {
+                builder.append("; ");
+            }
+            builder.append(cookie.getKey()).append('=').append(cookie.getValue());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 【内部方法】 获得主机的可注册域名（近似实现，仅识别常见的二级公共后缀）
+     *
+     * @param host 主机
+     * @return 可注册域名
+     */
+    static String registrableDomain(String host) {
+        if (isIpAddress(host)) {
+            return host;
+        }
+        int last = host.lastIndexOf('.');
+        if (last <= 0) {
+            return host;
+        }
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) {
+            return host;
+        }
+        String secondLabel = host.substring(second + 1, last);
+        if (host.length() - last - 1 == 2 && SECOND_LEVEL_SUFFIXES.contains(secondLabel)) {
+            int third = host.lastIndexOf('.', second - 1);
+            return third < 0 ? host : host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    /**
+     * 【内部方法】 是否为公共后缀（近似实现）
+     */
+    static boolean isPublicSuffix(String domain) {
+        int dot = domain.indexOf('.');
+        if (dot < 0) {
+            return true;
+        }
+        return domain.indexOf('.', dot + 1) < 0
+                && domain.length() - dot - 1 == 2
+                && SECOND_LEVEL_SUFFIXES.contains(domain.substring(0, dot));
+    }
+
+    /**
+     * 【内部方法】 RFC 6265 5.1.3 域名匹配
+     */
+    static boolean domainMatch(String host, String domain) {
+        if (host.equals(domain)) {
+            return true;
+        }
+        return host.endsWith(domain)
+                && host.length() > domain.length()
+                && host.charAt(host.length() - domain.length() - 1) == '.'
+                && !isIpAddress(host);
+    }
+
+    /**
+     * 【内部方法】 RFC 6265 5.1.4 路径匹配
+     */
+    static boolean pathMatch(String requestPath, String cookiePath) {
+        if (requestPath.equals(cookiePath)) {
+            return true;
+        }
+        if (requestPath.startsWith(cookiePath)) {
+            return cookiePath.endsWith("/") || requestPath.charAt(cookiePath.length()) == '/';
+        }
+        return false;
+    }
+
+    /**
+     * 【内部方法】 RFC 6265 5.1.4 默认路径
+     */
+    static String defaultPath(String requestPath) {
+        if (requestPath == null || !requestPath.startsWith("/")) {
+            return "/";
+        }
+        int index = requestPath.lastIndexOf('/');
+        return index <= 0 ? "/" : requestPath.substring(0, index);
+    }
+
+    private static boolean isIpAddress(String host) {
+        if (host.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 【内部方法】 ImResponseCookie对未设置的属性返回"null"字符串，此处统一转换为null
+     */
+    private static String attribute(String value) {
+        return value == null || "null".equals(value) ? null : value;
+    }
+}
@@ -0,0 +1,694 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * <b>HTTP响应磁盘缓存类</b>
+ * <p>
+ * 该类为ImResponseCache的磁盘层，用于保存较大或较冷的响应，服务重启后缓存仍然有效。
+ * 响应保存在仅追加的分段文件中，内存映射的开放寻址索引文件提供O(1)查找；每条记录带有CRC校验，崩溃后不完整的记录视为未命中。
+ * 超出容量时淘汰最旧的分段，其中最近访问过的记录会被重新写入当前分段
+ * <br/><br/>
+ * <b>HTTP response disk cache class</b>
+ * <p>
+ * This class is the disk tier of ImResponseCache, for large or cold responses, and keeps the cache warm across restarts.
+ * Responses live in append-only segment files, and a memory-mapped open-addressing index file gives O(1) lookups. Every
+ * record carries a CRC, so a record torn by a crash is treated as a miss. When over capacity the oldest segment is dropped,
+ * and the records in it that were accessed recently are rewritten into the current segment.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description HTTP响应磁盘缓存类
+ * @create 2019-11-18 10:20
+ * @see ImResponseCache#setDiskCache(ImDiskResponseCache)
+ * @since 1.5.0
+ */
+public class ImDiskResponseCache implements Closeable {
+
+    private final static int INDEX_MAGIC = 0x494D4449;     // "IMDI"
+    private final static int RECORD_MAGIC = 0x494D4452;    // "IMDR"
+    private final static int VERSION = 1;
+
+    private final static int INDEX_HEADER_SIZE = 16;
+    private final static int SLOT_SIZE = 32;
+    private final static int RECORD_HEADER_SIZE = 16;
+
+    private final static int SLOT_EMPTY = 0;
+    private final static int SLOT_LIVE = 1;
+    private final static int SLOT_DELETED = 2;
+
+    private final static String INDEX_FILE = "index.dat";
+    private final static String SEGMENT_PREFIX = "segment-";
+    private final static String SEGMENT_SUFFIX = ".dat";
+
+    private final File directory;
+    private final long maxBytes;
+    private long segmentSize = 16 * 1024 * 1024;
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private int deleted;
+
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<Integer, FileChannel>();
+    private int activeSegment;
+    private long totalBytes;
+
+    private boolean closed = false;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 打开或创建HTTP响应磁盘缓存
+     * <p>
+     * <font color="#666666">Open or create an HTTP response disk cache</font>
+     *
+     * @param directory 缓存目录 <br/> <font color="#666666">Cache directory</font>
+     * @param maxBytes  缓存容量上限（字节） <br/> <font color="#666666">Cache capacity (bytes)</font>
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    public ImDiskResponseCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create cache directory: " + directory);
+        }
+        openSegments();
+        openIndex();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置分段文件大小，超出时开始新的分段；实际分段大小不超过容量上限的1/4
+     * <p>
+     * <font color="#666666">Set the segment file size, a new segment is started beyond it; the actual segment size never exceeds 1/4 of the capacity</font>
+     *
+     * @param segmentSize 分段文件大小（字节） <br/> <font color="#666666">Segment file size (bytes)</font>
+     * @return ImDiskResponseCache对象实体 <br/> <font color="#666666">ImDiskResponseCache object entity</font>
+     */
+    public synchronized ImDiskResponseCache setSegmentSize(long segmentSize) {
+        this.segmentSize = Math.max(segmentSize, 64 * 1024);
+        return this;
+    }
+
+    /**
+     * 获得缓存容量上限
+     * <p>
+     * <font color="#666666">Get the cache capacity</font>
+     *
+     * @return 缓存容量上限（字节） <br/> <font color="#666666">Cache capacity (bytes)</font>
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 获得分段文件占用的字节数
+     * <p>
+     * <font color="#666666">Get the bytes used by segment files</font>
+     *
+     * @return 字节数 <br/> <font color="#666666">Bytes count</font>
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    }
+
+    /**
+     * 获得缓存的响应数量
+     * <p>
+     * <font color="#666666">Get the number of cached responses</font>
+     *
+     * @return 缓存的响应数量 <br/> <font color="#666666">Number of cached responses</font>
+     */
+    public synchronized int getEntryCount() {
+        return count;
+    }
+
+    /**
+     * 清空缓存
+     * <p>
+     * <font color="#666666">Clear the cache</font>
+     *
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    public synchronized void clear() throws IOException {
+        checkOpen();
+        clearSegments();
+        index = null;
+        rebuildIndex(64);
+    }
+
+    /**
+     * 将缓存数据写入磁盘并关闭缓存
+     * <p>
+     * <font color="#666666">Write the cache data to disk and close the cache</font>
+     *
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        index.force();
+        indexChannel.close();
+        for (FileChannel channel : segments.values()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 获得缓存记录，不存在或记录已损坏时返回null
+     */
+    synchronized ImResponseCache.Entry get(String key) {
+        if (closed) {
+            return null;
+        }
+        long hash = hash(key);
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0, slot = slotOf(hash); i < capacity; i++, slot = (slot + 1) & (capacity - 1)) {
+            int state = slotState(slot);
+            if (state == SLOT_EMPTY) {
+                return null;
+            }
+            if (state != SLOT_LIVE || slotHash(slot) != hash) {
+                continue;
+            }
+            ByteBuffer record = readRecord(slot);
+            if (record == null) {
+                //记录损坏或分段已不存在，同一哈希的其他键可能位于后续槽位
+                deleteSlot(slot);
+                continue;
+            }
+            if (!keyEquals(record, keyBytes)) {
+                continue;
+            }
+            index.putInt(slotPosition(slot) + 24, (int) (System.currentTimeMillis() / 1000));
+            record.position(4 + keyBytes.length);
+            return decodeEntry(record);
+        }
+        return null;
+    }
+
+    /**
+     * 【内部方法】 保存缓存记录
+     */
+    synchronized void put(String key, ImResponseCache.Entry entry) throws IOException {
+        if (closed) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] body = encodeEntry(entry);
+        append(key, hash(key), keyBytes, body, 0);
+        evict();
+    }
+
+    /**
+     * 【内部方法】 删除缓存记录
+     */
+    synchronized void remove(String key) {
+        if (closed) {
+            return;
+        }
+        int slot = findSlot(key, hash(key));
+        if (slot >= 0) {
+            deleteSlot(slot);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 将记录追加到当前分段，并更新索引
+     */
+    private void append(String key, long hash, byte[] keyBytes, byte[] body, int lastAccess) throws IOException {
+        int length = 4 + keyBytes.length + body.length;
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        payload.putInt(keyBytes.length).put(keyBytes).put(body).flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+        record.putInt(RECORD_MAGIC).putInt(length).putInt((int) crc.getValue()).putInt(0).put(payload).flip();
+
+        FileChannel channel = segments.get(activeSegment);
+        if (channel.size() > 0 && channel.size() + record.remaining() > segmentLimit()) {
+            channel = startSegment();
+        }
+        long offset = channel.size();
+        if (offset + record.remaining() > Integer.MAX_VALUE) {
+            throw new IOException("Cache segment is too large.");
+        }
+        int written = 0;
+        while (record.hasRemaining()) {
+            written += channel.write(record, offset + written);
+        }
+        totalBytes += written;
+
+        //先写入记录再更新索引，崩溃时索引最多指向一条校验失败的记录
+        int existing = findSlot(key, hash);
+        if (existing >= 0) {
+            deleteSlot(existing);
+        }
+        if ((count + deleted + 1) * 10L > capacity * 7L) {
+            rebuildIndex(Math.max(64, Integer.highestOneBit(Math.max(count + 1, 16) * 4)));
+        }
+        int slot = slotOf(hash);
+        while (slotState(slot) == SLOT_LIVE) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        if (slotState(slot) == SLOT_DELETED) {
+            deleted--;
+        }
+        writeSlot(slot, hash, activeSegment, (int) offset, RECORD_HEADER_SIZE + length, lastAccess);
+        count++;
+    }
+
+    /**
+     * 【内部方法】 超出容量时淘汰最旧的分段，最近访问过的记录重新写入当前分段
+     */
+    private void evict() throws IOException {
+        while (totalBytes > maxBytes) {
+            if (segments.size() == 1) {
+                //只剩当前分段时先开始新的分段，使当前分段也可以被淘汰
+                startSegment();
+            }
+            int oldest = segments.firstKey();
+            File oldestFile = segmentFile(oldest);
+            long lastWrite = oldestFile.lastModified() / 1000;
+            long rewriteBudget = segmentLimit() / 2;
+
+            //收集该分段中的记录
+            List<int[]> slots = new ArrayList<int[]>();
+            for (int slot = 0; slot < capacity; slot++) {
+                if (slotState(slot) == SLOT_LIVE && index.getInt(slotPosition(slot) + 12) == oldest) {
+                    slots.add(new int[]{slot, index.getInt(slotPosition(slot) + 24)});
+                }
+            }
+            //最近访问的优先保留
+            slots.sort((a, b) -> Integer.compare(b[1], a[1]));
+            List<Object[]> rewrites = new ArrayList<Object[]>();
+            for (int[] item : slots) {
+                int slot = item[0];
+                ByteBuffer record = item[1] > lastWrite && rewriteBudget > 0 ? readRecord(slot) : null;
+                if (record != null) {
+                    int keyLength = record.getInt(0);
+                    byte[] keyBytes = new byte[keyLength];
+                    record.position(4);
+                    record.get(keyBytes);
+                    byte[] body = new byte[record.remaining()];
+                    record.get(body);
+                    rewrites.add(new Object[]{keyBytes, body, slotHash(slot), item[1]});
+                    rewriteBudget -= body.length;
+                }
+                deleteSlot(slot);
+            }
+
+            FileChannel channel = segments.remove(oldest);
+            totalBytes -= channel.size();
+            channel.close();
+            Files.deleteIfExists(oldestFile.toPath());
+
+            for (Object[] rewrite : rewrites) {
+                byte[] keyBytes = (byte[]) rewrite[0];
+                append(new String(keyBytes, StandardCharsets.UTF_8), (Long) rewrite[2], keyBytes, (byte[]) rewrite[1],
+                        (Integer) rewrite[3]);
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 开始新的分段并设为当前分段
+     */
+    private FileChannel startSegment() throws IOException {
+        activeSegment++;
+        FileChannel channel = openSegment(activeSegment);
+        segments.put(activeSegment, channel);
+        return channel;
+    }
+
+    /**
+     * 【内部方法】 实际使用的分段大小，不超过容量上限的1/4，
+     * 使被覆盖或删除的记录所占空间能随旧分段的淘汰及时回收
+     */
+    private long segmentLimit() {
+        return Math.max(Math.min(segmentSize, maxBytes / 4), 1);
+    }
+
+    /**
+     * 【内部方法】 读取并校验索引槽位指向的记录，返回从键长度开始的记录内容
+     */
+    private ByteBuffer readRecord(int slot) {
+        int position = slotPosition(slot);
+        FileChannel channel = segments.get(index.getInt(position + 12));
+        int offset = index.getInt(position + 16);
+        int length = index.getInt(position + 20);
+        if (channel == null || length < RECORD_HEADER_SIZE + 4) {
+            return null;
+        }
+        try {
+            if (offset + (long) length > channel.size()) {
+                return null;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            while (record.hasRemaining()) {
+                if (channel.read(record, offset + record.position()) < 0) {
+                    return null;
+                }
+            }
+            record.flip();
+            if (record.getInt(0) != RECORD_MAGIC || record.getInt(4) != length - RECORD_HEADER_SIZE) {
+                return null;
+            }
+            record.position(RECORD_HEADER_SIZE);
+            ByteBuffer payload = record.slice();
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != record.getInt(8)) {
+                return null;
+            }
+            return payload;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean keyEquals(ByteBuffer record, byte[] keyBytes) {
+        if (record.getInt(0) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (record.get(4 + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findSlot(String key, long hash) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0, slot = slotOf(hash); i < capacity; i++, slot = (slot + 1) & (capacity - 1)) {
+            int state = slotState(slot);
+            if (state == SLOT_EMPTY) {
+                return -1;
+            }
+            if (state == SLOT_LIVE && slotHash(slot) == hash) {
+                ByteBuffer record = readRecord(slot);
+                if (record == null) {
+                    deleteSlot(slot);
+                } else if (keyEquals(record, keyBytes)) {
+                    return slot;
+                }
+            }
+        }
+        return -1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    //索引槽位：[hash 8][state 4][segment 4][offset 4][length 4][lastAccess 4][reserved 4]
+
+    private int slotPosition(int slot) {
+        return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private int slotOf(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & (capacity - 1);
+    }
+
+    private int slotState(int slot) {
+        return index.getInt(slotPosition(slot) + 8);
+    }
+
+    private long slotHash(int slot) {
+        return index.getLong(slotPosition(slot));
+    }
+
+    private void writeSlot(int slot, long hash, int segment, int offset, int length, int lastAccess) {
+        int position = slotPosition(slot);
+        index.putLong(position, hash);
+        index.putInt(position + 12, segment);
+        index.putInt(position + 16, offset);
+        index.putInt(position + 20, length);
+        index.putInt(position + 24, lastAccess);
+        //最后写入状态
+        index.putInt(position + 8, SLOT_LIVE);
+    }
+
+    private void deleteSlot(int slot) {
+        index.putInt(slotPosition(slot) + 8, SLOT_DELETED);
+        count--;
+        deleted++;
+    }
+
+    /**
+     * 【内部方法】 以新的容量重建索引文件，并原子替换
+     */
+    private void rebuildIndex(int newCapacity) throws IOException {
+        File file = new File(directory, INDEX_FILE);
+        File temp = new File(directory, INDEX_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer rebuilt = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+            rebuilt.putInt(0, INDEX_MAGIC).putInt(4, VERSION).putInt(8, newCapacity);
+            if (index != null) {
+                for (int slot = 0; slot < capacity; slot++) {
+                    if (slotState(slot) != SLOT_LIVE || !segments.containsKey(index.getInt(slotPosition(slot) + 12))) {
+                        continue;
+                    }
+                    long hash = slotHash(slot);
+                    int target = (int) (hash ^ (hash >>> 32)) & (newCapacity - 1);
+                    while (rebuilt.getInt(INDEX_HEADER_SIZE + target * SLOT_SIZE + 8) != SLOT_EMPTY) {
+                        target = (target + 1) & (newCapacity - 1);
+                    }
+                    for (int i = 0; i < SLOT_SIZE; i += 4) {
+                        rebuilt.putInt(INDEX_HEADER_SIZE + target * SLOT_SIZE + i, index.getInt(slotPosition(slot) + i));
+                    }
+                }
+            }
+            rebuilt.force();
+        }
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapIndex(file);
+    }
+
+    private void openIndex() throws IOException {
+        File file = new File(directory, INDEX_FILE);
+        if (!file.isFile() || file.length() < INDEX_HEADER_SIZE) {
+            rebuildIndex(64);
+            return;
+        }
+        mapIndex(file);
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION
+                || Integer.bitCount(capacity) != 1
+                || file.length() < INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            //索引无效时丢弃全部缓存
+            index = null;
+            clearSegments();
+            rebuildIndex(64);
+        }
+    }
+
+    private void mapIndex(File file) throws IOException {
+        indexChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        capacity = indexChannel.size() >= INDEX_HEADER_SIZE ? index.getInt(8) : 0;
+        count = 0;
+        deleted = 0;
+        if (Integer.bitCount(capacity) != 1 || indexChannel.size() < INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE) {
+            return;
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            int state = slotState(slot);
+            if (state == SLOT_LIVE) {
+                count++;
+            } else if (state == SLOT_DELETED) {
+                deleted++;
+            }
+        }
+    }
+
+    private void openSegments() throws IOException {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                        FileChannel channel = openSegment(id);
+                        segments.put(id, channel);
+                        totalBytes += channel.size();
+                    } catch (NumberFormatException e) {
+                        //忽略无关文件
+                    }
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0, openSegment(0));
+        }
+        activeSegment = segments.lastKey();
+    }
+
+    private void clearSegments() throws IOException {
+        for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+            segment.getValue().close();
+            Files.deleteIfExists(segmentFile(segment.getKey()).toPath());
+        }
+        segments.clear();
+        totalBytes = 0;
+        activeSegment = 0;
+        segments.put(activeSegment, openSegment(activeSegment));
+    }
+
+    private FileChannel openSegment(int id) throws IOException {
+        return FileChannel.open(segmentFile(id).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private File segmentFile(int id) {
+        return new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The disk cache is closed.");
+        }
+    }
+
+    /**
+     * 【内部方法】 64位FNV-1a哈希
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 编码缓存记录
+     */
+    private static byte[] encodeEntry(ImResponseCache.Entry entry) {
+        ImSessionCodec.Writer writer = new ImSessionCodec.Writer(entry.body.length + 256);
+        writer.writeVarLong(entry.responseCode);
+        writeNullable(writer, entry.responseMessage);
+        writer.writeVarLong(entry.headers.size());
+        for (Map.Entry<String, List<String>> header : entry.headers.entrySet()) {
+            writeNullable(writer, header.getKey());
+            writer.writeVarLong(header.getValue().size());
+            for (String value : header.getValue()) {
+                writeNullable(writer, value);
+            }
+        }
+        writer.writeVarLong(entry.varyNames.length);
+        for (int i = 0; i < entry.varyNames.length; i++) {
+            writeNullable(writer, entry.varyNames[i]);
+            writeNullable(writer, entry.varyValues[i]);
+        }
+        writer.writeVarLong(entry.responseTime);
+        writer.writeVarLong(entry.initialAge);
+        writer.writeVarLong(entry.lifetime);
+        writer.writeVarLong(entry.staleWhileRevalidate);
+        writer.writeVarLong(entry.staleIfError);
+        writer.writeVarLong(entry.body.length);
+        writer.writeBytes(entry.body, 0, entry.body.length);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 【内部方法】 解码缓存记录
+     */
+    private static ImResponseCache.Entry decodeEntry(ByteBuffer buffer) {
+        int responseCode = (int) ImSessionCodec.readVarLong(buffer);
+        String responseMessage = readNullable(buffer);
+        int size = (int) ImSessionCodec.readVarLong(buffer);
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>(size * 2);
+        for (int i = 0; i < size; i++) {
+            String name = readNullable(buffer);
+            int valueSize = (int) ImSessionCodec.readVarLong(buffer);
+            List<String> values = new ArrayList<String>(valueSize);
+            for (int j = 0; j < valueSize; j++) {
+                values.add(readNullable(buffer));
+            }
+            headers.put(name, Collections.unmodifiableList(values));
+        }
+        size = (int) ImSessionCodec.readVarLong(buffer);
+        String[] varyNames = new String[size];
+        String[] varyValues = new String[size];
+        for (int i = 0; i < size; i++) {
+            varyNames[i] = readNullable(buffer);
+            varyValues[i] = readNullable(buffer);
+        }
+        long responseTime = ImSessionCodec.readVarLong(buffer);
+        long initialAge = ImSessionCodec.readVarLong(buffer);
+        long lifetime = ImSessionCodec.readVarLong(buffer);
+        long staleWhileRevalidate = ImSessionCodec.readVarLong(buffer);
+        long staleIfError = ImSessionCodec.readVarLong(buffer);
+        byte[] body = new byte[(int) ImSessionCodec.readVarLong(buffer)];
+        buffer.get(body);
+        return new ImResponseCache.Entry(responseCode, responseMessage, Collections.unmodifiableMap(headers), body,
+                varyNames, varyValues, responseTime, initialAge, lifetime, staleWhileRevalidate, staleIfError);
+    }
+
+    private static void writeNullable(ImSessionCodec.Writer writer, String value) {
+        if (value == null) {
+            writer.writeVarLong(0);
+            return;
+        }
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        writer.writeVarLong(data.length + 1L);
+        writer.writeBytes(data, 0, data.length);
+    }
+
+    private static String readNullable(ByteBuffer buffer) {
+        int length = (int) ImSessionCodec.readVarLong(buffer);
+        if (length == 0) {
+            return null;
+        }
+        byte[] data = new byte[length - 1];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
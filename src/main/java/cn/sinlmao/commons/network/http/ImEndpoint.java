@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <b>端点类</b>
+ * <p>
+ * 该类为ImEndpointGroup中的一个端点（基础URL），记录正在执行的请求数、峰值加权延迟及连续失败次数，
+ * 连续失败达到阈值时被暂时剔除。端点由ImEndpointGroup创建并按其配置运行
+ * <br/><br/>
+ * <b>Endpoint class</b>
+ * <p>
+ * This class is one endpoint (base URL) of an ImEndpointGroup. It tracks the requests in flight, a peak EWMA of the
+ * latency and consecutive failures, and is ejected for a while when the failures reach a threshold. Endpoints are
+ * created by ImEndpointGroup and follow its settings.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 端点类
+ * @create 2019-11-20 10:05
+ * @see ImEndpointGroup
+ * @since 1.5.0
+ */
+public class ImEndpoint {
+
+    private final String url;
+    private final URL base;
+    private final String basePath;
+    private final ImEndpointGroup group;
+    private final long hash;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    //峰值加权延迟（纳秒）及其更新时间
+    private double latency;
+    private long latencyTime = System.nanoTime();
+
+    //剔除截止时间（纳秒）及剔除次数，由ImEndpointGroup同步修改
+    private volatile long ejectedUntil;
+    private volatile int ejectionCount;
+
+    /**
+     * 【内部方法】 构建端点
+     *
+     * @param url   基础URL，如http://10.0.0.1:8080或http://10.0.0.1:8080/api
+     * @param group 端点组
+     */
+    ImEndpoint(String url, ImEndpointGroup group) {
+        try {
+            this.base = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+        this.url = url;
+        String path = base.getPath();
+        this.basePath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        this.group = group;
+        this.hash = ImEndpointGroup.hash(url);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得端点的基础URL
+     * <p>
+     * <font color="#666666">Get the base URL of the endpoint</font>
+     *
+     * @return 基础URL <br/> <font color="#666666">Base URL</font>
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * 获得端点正在执行的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests in flight to the endpoint</font>
+     *
+     * @return 正在执行的请求数 <br/> <font color="#666666">Requests in flight</font>
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * 获得端点当前的峰值加权延迟（毫秒），没有样本时为0
+     * <p>
+     * <font color="#666666">Get the current peak EWMA latency of the endpoint (milliseconds), 0 without samples</font>
+     *
+     * @return 峰值加权延迟 <br/> <font color="#666666">Peak EWMA latency</font>
+     */
+    public double getLatency() {
+        return decayedLatency(System.nanoTime()) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * 端点当前是否已被剔除
+     * <p>
+     * <font color="#666666">Whether the endpoint is currently ejected</font>
+     *
+     * @return 是否已被剔除 <br/> <font color="#666666">Whether ejected</font>
+     */
+    public boolean isEjected() {
+        return ejectedUntil - System.nanoTime() > 0;
+    }
+
+    /**
+     * 获得端点被剔除的次数，端点恢复后请求成功时清零
+     * <p>
+     * <font color="#666666">Get how many times the endpoint has been ejected, reset by a success after it returns</font>
+     *
+     * @return 被剔除的次数 <br/> <font color="#666666">Ejection count</font>
+     */
+    public int getEjectionCount() {
+        return ejectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 将逻辑URL改写为该端点的URL，保留路径及查询参数
+     *
+     * @param logical 逻辑URL
+     * @return 端点的URL
+     * @throws MalformedURLException URL无效
+     */
+    URL resolve(URL logical) throws MalformedURLException {
+        return new URL(base.getProtocol(), base.getHost(), base.getPort(), basePath + logical.getFile());
+    }
+
+    /**
+     * 【内部方法】 按负载均衡策略计算端点的代价，代价较小的端点优先
+     *
+     * @param loadBalancing 负载均衡策略
+     * @param now           当前时间（纳秒）
+     * @return 代价
+     */
+    double cost(ImLoadBalancing loadBalancing, long now) {
+        if (loadBalancing == ImLoadBalancing.PEAK_EWMA) {
+            return (decayedLatency(now) + 1) * (outstanding.get() + 1);
+        }
+        return outstanding.get();
+    }
+
+    /**
+     * 【内部方法】 计算键在该端点上的随机权重（最高随机权重哈希），权重最高的端点负责该键
+     *
+     * @param keyHash 键的哈希值
+     * @return 随机权重
+     */
+    long score(long keyHash) {
+        return ImEndpointGroup.mix(keyHash ^ hash);
+    }
+
+    /**
+     * 【内部方法】 端点是否可用（未被剔除）
+     *
+     * @param now 当前时间（纳秒）
+     * @return 是否可用
+     */
+    boolean isAvailable(long now) {
+        return ejectedUntil - now <= 0;
+    }
+
+    /**
+     * 【内部方法】 选中端点时增加正在执行的请求数
+     */
+    void acquire() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * 【内部方法】 请求结束时减少正在执行的请求数，并记录延迟或失败
+     *
+     * @param sample        是否计入样本（被取消的请求不计入）
+     * @param failed        是否失败（网络异常、超时、5xx响应；4xx响应为客户端错误，不是失败，并重置连续失败次数）
+     * @param durationNanos 请求耗时（纳秒）
+     */
+    void release(boolean sample, boolean failed, long durationNanos) {
+        outstanding.decrementAndGet();
+        if (!sample) {
+            return;
+        }
+        if (failed) {
+            if (consecutiveFailures.incrementAndGet() >= group.getConsecutiveFailures()) {
+                group.eject(this);
+            }
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (ejectionCount > 0 && isAvailable(System.nanoTime())) {
+            ejectionCount = 0;
+        }
+        observe(durationNanos);
+    }
+
+    /**
+     * 【内部方法】 剔除端点，由ImEndpointGroup在同步块内调用
+     *
+     * @param now 当前时间（纳秒）
+     */
+    void eject(long now) {
+        ejectionCount++;
+        long time = Math.min(group.getBaseEjectionTime() * ejectionCount, group.getMaxEjectionTime());
+        ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(time);
+        consecutiveFailures.set(0);
+    }
+
+    /**
+     * 【内部方法】 记录一次延迟：高于当前值时立即取该值（峰值敏感），否则按距上次更新的时间指数衰减
+     */
+    private synchronized void observe(long rtt) {
+        long now = System.nanoTime();
+        if (rtt > latency) {
+            latency = rtt;
+        } else {
+            double weight = Math.exp(-(double) (now - latencyTime) / TimeUnit.MILLISECONDS.toNanos(group.getDecayTime()));
+            latency = latency * weight + rtt * (1 - weight);
+        }
+        latencyTime = now;
+    }
+
+    /**
+     * 【内部方法】 获得按距上次更新的时间衰减后的延迟，长时间没有请求的端点逐渐恢复被选中的机会
+     */
+    private synchronized double decayedLatency(long now) {
+        long elapsed = Math.max(now - latencyTime, 0);
+        return latency * Math.exp(-(double) elapsed / TimeUnit.MILLISECONDS.toNanos(group.getDecayTime()));
+    }
+}
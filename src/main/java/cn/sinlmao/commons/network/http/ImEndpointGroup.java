@@ -0,0 +1,477 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <b>端点组类</b>
+ * <p>
+ * 该类将一个逻辑名称对应到多个端点（如一个服务的多个副本），实现客户端负载均衡。通过ImHttpClient.addEndpointGroup注册后，
+ * 主机名为该逻辑名称的请求（如http://user-service/api/users）在每次网络请求（包括重试及对冲请求）时选择一个端点，
+ * 并将URL的协议、主机及端口替换为该端点的基础URL。默认使用峰值加权延迟（PEAK_EWMA）的两次随机选择，
+ * 慢或繁忙的副本自动分到较少的请求，缓存类上游可以使用有界负载的一致性哈希（CONSISTENT_HASH）使相同键的请求发往同一端点；
+ * 同时被动跟踪端点的健康状态，连续失败的端点被暂时剔除，剔除时间随剔除次数递增，被剔除的端点不超过一定比例，
+ * 全部被剔除时仍使用所有端点
+ * <br/><br/>
+ * <b>Endpoint group class</b>
+ * <p>
+ * This class maps a logical name to several endpoints, such as the replicas of one service, for client-side load
+ * balancing. Once registered with ImHttpClient.addEndpointGroup, each attempt (retries and hedges included) of a request
+ * whose host is that name, such as http://user-service/api/users, picks an endpoint and has the scheme, host and port of
+ * its URL replaced with the base URL of that endpoint. By default it uses power of two choices over peak EWMA latency, so
+ * slow or busy replicas get fewer requests; cache-tier upstreams can use consistent hashing with bounded loads
+ * (CONSISTENT_HASH) so that requests with the same key go to the same endpoint. It also tracks endpoint health
+ * passively: an endpoint with consecutive failures is ejected for a while, the ejection time grows with each ejection,
+ * only a share of the endpoints may be ejected, and all endpoints are used again when every one of them is ejected.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 端点组类
+ * @create 2019-11-20 10:30
+ * @see ImHttpClient#addEndpointGroup(ImEndpointGroup)
+ * @see ImEndpoint
+ * @see ImLoadBalancing
+ * @since 1.5.0
+ */
+public class ImEndpointGroup {
+
+    private final String name;
+    private volatile ImEndpoint[] endpoints = new ImEndpoint[0];
+
+    private volatile ImLoadBalancing loadBalancing = ImLoadBalancing.PEAK_EWMA;
+    private volatile long decayTime = 10000;
+    private volatile int consecutiveFailures = 5;
+    private volatile long baseEjectionTime = 30000;
+    private volatile long maxEjectionTime = 300000;
+    private volatile int maxEjectionPercent = 50;
+    private volatile double hashLoadFactor = 1.25;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建端点组
+     * <p>
+     * <font color="#666666">Build an endpoint group</font>
+     *
+     * @param name      逻辑名称，即请求URL中的主机名 <br/> <font color="#666666">Logical name, the host name used in request URLs</font>
+     * @param endpoints 端点的基础URL，如http://10.0.0.1:8080 <br/> <font color="#666666">Base URLs of the endpoints, such as http://10.0.0.1:8080</font>
+     */
+    public ImEndpointGroup(String name, String... endpoints) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name.toLowerCase();
+        if (endpoints != null) {
+            for (String endpoint : endpoints) {
+                addEndpoint(endpoint);
+            }
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得逻辑名称
+     * <p>
+     * <font color="#666666">Get the logical name</font>
+     *
+     * @return 逻辑名称 <br/> <font color="#666666">Logical name</font>
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 添加端点，已存在时忽略
+     * <p>
+     * <font color="#666666">Add an endpoint, ignored when it already exists</font>
+     *
+     * @param url 端点的基础URL <br/> <font color="#666666">Base URL of the endpoint</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public synchronized ImEndpointGroup addEndpoint(String url) {
+        if (url == null) {
+            throw new NullPointerException();
+        }
+        if (indexOf(url) < 0) {
+            ImEndpoint[] current = endpoints;
+            ImEndpoint[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = new ImEndpoint(url, this);
+            endpoints = updated;
+        }
+        return this;
+    }
+
+    /**
+     * 移除端点，正在执行的请求不受影响
+     * <p>
+     * <font color="#666666">Remove an endpoint, requests in flight are not affected</font>
+     *
+     * @param url 端点的基础URL <br/> <font color="#666666">Base URL of the endpoint</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public synchronized ImEndpointGroup removeEndpoint(String url) {
+        int index = indexOf(url);
+        if (index >= 0) {
+            ImEndpoint[] current = endpoints;
+            ImEndpoint[] updated = new ImEndpoint[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            endpoints = updated;
+        }
+        return this;
+    }
+
+    /**
+     * 获得所有端点
+     * <p>
+     * <font color="#666666">Get all endpoints</font>
+     *
+     * @return 端点列表 <br/> <font color="#666666">Endpoint list</font>
+     */
+    public List<ImEndpoint> getEndpoints() {
+        return Collections.unmodifiableList(new ArrayList<ImEndpoint>(Arrays.asList(endpoints)));
+    }
+
+    /**
+     * 设置负载均衡策略，默认为PEAK_EWMA
+     * <p>
+     * <font color="#666666">Set the load balancing strategy, default is PEAK_EWMA</font>
+     *
+     * @param loadBalancing 负载均衡策略 <br/> <font color="#666666">Load balancing strategy</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public ImEndpointGroup setLoadBalancing(ImLoadBalancing loadBalancing) {
+        if (loadBalancing == null) {
+            throw new NullPointerException();
+        }
+        this.loadBalancing = loadBalancing;
+        return this;
+    }
+
+    /**
+     * 获得负载均衡策略
+     * <p>
+     * <font color="#666666">Get the load balancing strategy</font>
+     *
+     * @return 负载均衡策略 <br/> <font color="#666666">Load balancing strategy</font>
+     */
+    public ImLoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    /**
+     * 设置峰值加权延迟的衰减时间（毫秒），默认为10000，越小越快忘记旧的延迟
+     * <p>
+     * <font color="#666666">Set the decay time of the peak EWMA latency (milliseconds), default is 10000, smaller values forget old latency faster</font>
+     *
+     * @param decayTime 衰减时间 <br/> <font color="#666666">Decay time</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public ImEndpointGroup setDecayTime(long decayTime) {
+        this.decayTime = Math.max(decayTime, 1);
+        return this;
+    }
+
+    /**
+     * 获得峰值加权延迟的衰减时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the decay time of the peak EWMA latency (milliseconds)</font>
+     *
+     * @return 衰减时间 <br/> <font color="#666666">Decay time</font>
+     */
+    public long getDecayTime() {
+        return decayTime;
+    }
+
+    /**
+     * 设置异常端点剔除：连续失败次数、基础剔除时间（毫秒，每次剔除按次数递增）及最多剔除的端点比例（百分比），默认为5、30000、50；
+     * 只有网络异常、超时及5xx响应是失败，4xx响应是客户端错误，视为端点正常
+     * <p>
+     * <font color="#666666">Set outlier ejection: consecutive failures, base ejection time (milliseconds, multiplied by the
+     * number of ejections) and the largest share of endpoints that may be ejected (percent), default is 5, 30000 and 50.
+     * Only network errors, timeouts and 5xx responses are failures; 4xx responses are client errors and count as a healthy
+     * endpoint.</font>
+     *
+     * @param consecutiveFailures 连续失败次数 <br/> <font color="#666666">Consecutive failures</font>
+     * @param baseEjectionTime    基础剔除时间 <br/> <font color="#666666">Base ejection time</font>
+     * @param maxEjectionPercent  最多剔除的端点比例 <br/> <font color="#666666">Largest share of endpoints ejected</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public ImEndpointGroup setOutlierEjection(int consecutiveFailures, long baseEjectionTime, int maxEjectionPercent) {
+        if (consecutiveFailures < 1 || baseEjectionTime < 0 || maxEjectionPercent < 0 || maxEjectionPercent > 100) {
+            throw new IllegalArgumentException();
+        }
+        this.consecutiveFailures = consecutiveFailures;
+        this.baseEjectionTime = baseEjectionTime;
+        this.maxEjectionTime = Math.max(maxEjectionTime, baseEjectionTime);
+        this.maxEjectionPercent = maxEjectionPercent;
+        return this;
+    }
+
+    /**
+     * 设置最长剔除时间（毫秒），默认为300000
+     * <p>
+     * <font color="#666666">Set the longest ejection time (milliseconds), default is 300000</font>
+     *
+     * @param maxEjectionTime 最长剔除时间 <br/> <font color="#666666">Longest ejection time</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public ImEndpointGroup setMaxEjectionTime(long maxEjectionTime) {
+        this.maxEjectionTime = Math.max(maxEjectionTime, 0);
+        return this;
+    }
+
+    /**
+     * 获得剔除端点的连续失败次数
+     * <p>
+     * <font color="#666666">Get the consecutive failures that eject an endpoint</font>
+     *
+     * @return 连续失败次数 <br/> <font color="#666666">Consecutive failures</font>
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * 获得基础剔除时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the base ejection time (milliseconds)</font>
+     *
+     * @return 基础剔除时间 <br/> <font color="#666666">Base ejection time</font>
+     */
+    public long getBaseEjectionTime() {
+        return baseEjectionTime;
+    }
+
+    /**
+     * 获得最长剔除时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the longest ejection time (milliseconds)</font>
+     *
+     * @return 最长剔除时间 <br/> <font color="#666666">Longest ejection time</font>
+     */
+    public long getMaxEjectionTime() {
+        return maxEjectionTime;
+    }
+
+    /**
+     * 获得最多剔除的端点比例（百分比）
+     * <p>
+     * <font color="#666666">Get the largest share of endpoints that may be ejected (percent)</font>
+     *
+     * @return 最多剔除的端点比例 <br/> <font color="#666666">Largest share of endpoints ejected</font>
+     */
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    /**
+     * 设置一致性哈希的负载上限倍数，端点的请求数超过平均值的该倍数时顺延到下一个端点，默认为1.25
+     * <p>
+     * <font color="#666666">Set the load bound of consistent hashing, a key moves on to the next endpoint while its endpoint
+     * has more than this multiple of the average load, default is 1.25</font>
+     *
+     * @param hashLoadFactor 负载上限倍数（不小于1） <br/> <font color="#666666">Load bound (not less than 1)</font>
+     * @return ImEndpointGroup对象实体 <br/> <font color="#666666">ImEndpointGroup object entity</font>
+     */
+    public ImEndpointGroup setHashLoadFactor(double hashLoadFactor) {
+        if (hashLoadFactor < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.hashLoadFactor = hashLoadFactor;
+        return this;
+    }
+
+    /**
+     * 获得一致性哈希的负载上限倍数
+     * <p>
+     * <font color="#666666">Get the load bound of consistent hashing</font>
+     *
+     * @return 负载上限倍数 <br/> <font color="#666666">Load bound</font>
+     */
+    public double getHashLoadFactor() {
+        return hashLoadFactor;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 按负载均衡策略选择一个未被剔除的端点，并增加其正在执行的请求数
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param url       逻辑URL
+     * @return 选中的端点
+     * @throws UnknownHostException 端点组中没有端点
+     */
+    ImEndpoint select(ImRequest imRequest, URL url) throws UnknownHostException {
+        ImEndpoint[] all = endpoints;
+        if (all.length == 0) {
+            throw new UnknownHostException("No endpoints in group: " + name);
+        }
+        long now = System.nanoTime();
+        ImEndpoint[] candidates = available(all, now);
+        ImEndpoint selected;
+        if (candidates.length == 1) {
+            selected = candidates[0];
+        } else if (loadBalancing == ImLoadBalancing.CONSISTENT_HASH) {
+            String key = imRequest.getHashKey() != null ? imRequest.getHashKey() : url.getPath();
+            selected = selectByHash(candidates, hash(key));
+        } else if (loadBalancing == ImLoadBalancing.ROUND_ROBIN) {
+            selected = candidates[Math.floorMod(next.getAndIncrement(), candidates.length)];
+        } else {
+            //两次随机选择，取代价较小的端点
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int first = random.nextInt(candidates.length);
+            int second = random.nextInt(candidates.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            ImEndpoint a = candidates[first];
+            ImEndpoint b = candidates[second];
+            selected = a.cost(loadBalancing, now) <= b.cost(loadBalancing, now) ? a : b;
+        }
+        selected.acquire();
+        return selected;
+    }
+
+    /**
+     * 【内部方法】 剔除连续失败的端点，被剔除的端点不超过最多剔除比例
+     *
+     * @param endpoint 端点
+     */
+    synchronized void eject(ImEndpoint endpoint) {
+        long now = System.nanoTime();
+        if (!endpoint.isAvailable(now)) {
+            return;
+        }
+        ImEndpoint[] all = endpoints;
+        int ejected = 1;
+        for (ImEndpoint other : all) {
+            if (!other.isAvailable(now)) {
+                ejected++;
+            }
+        }
+        if (ejected * 100 > all.length * maxEjectionPercent) {
+            return;
+        }
+        endpoint.eject(now);
+    }
+
+    /**
+     * 【内部方法】 有界负载的最高随机权重哈希：按权重从高到低选择第一个请求数未超过上限的端点，
+     * 上限为ceil(hashLoadFactor * (总请求数 + 1) / 端点数)
+     */
+    private ImEndpoint selectByHash(ImEndpoint[] candidates, long keyHash) {
+        int n = candidates.length;
+        long[] scores = new long[n];
+        boolean[] skipped = new boolean[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            scores[i] = candidates[i].score(keyHash);
+            total += candidates[i].getOutstanding();
+        }
+        int bound = (int) Math.ceil(hashLoadFactor * (total + 1) / n);
+        ImEndpoint best = null;
+        for (int round = 0; round < n; round++) {
+            int top = -1;
+            for (int i = 0; i < n; i++) {
+                if (!skipped[i] && (top < 0 || Long.compareUnsigned(scores[i], scores[top]) > 0)) {
+                    top = i;
+                }
+            }
+            if (best == null) {
+                best = candidates[top];
+            }
+            if (candidates[top].getOutstanding() < bound) {
+                return candidates[top];
+            }
+            skipped[top] = true;
+        }
+        return best;
+    }
+
+    private ImEndpoint[] available(ImEndpoint[] all, long now) {
+        int count = 0;
+        for (ImEndpoint endpoint : all) {
+            if (endpoint.isAvailable(now)) {
+                count++;
+            }
+        }
+        //没有被剔除的端点，或全部被剔除时使用所有端点
+        if (count == all.length || count == 0) {
+            return all;
+        }
+        ImEndpoint[] candidates = new ImEndpoint[count];
+        int index = 0;
+        for (ImEndpoint endpoint : all) {
+            if (endpoint.isAvailable(now)) {
+                candidates[index++] = endpoint;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * 【内部方法】 计算字符串的64位哈希值（FNV-1a后再混合）
+     *
+     * @param value 字符串
+     * @return 哈希值
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * 【内部方法】 64位哈希混合函数（MurmurHash3 fmix64）
+     *
+     * @param value 输入值
+     * @return 混合后的值
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private int indexOf(String url) {
+        ImEndpoint[] current = endpoints;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].getUrl().equals(url)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * <b>并行请求组合类</b>
+ * <p>
+ * 该类基于ImHttpClient.sendAsync同时向多个后端发起请求并组合结果：allOf在截止时间内收集全部结果（超时的请求返回部分结果），
+ * anyOf返回首个2xx响应（如多个副本），quorum在指定数量的请求返回2xx响应时返回。
+ * 不再需要的请求被立即取消，其连接随即被中止，不会继续占用连接及隔离舱、并发许可
+ * <br/><br/>
+ * <b>Fan-out request combinator class</b>
+ * <p>
+ * This class sends requests to several backends at once with ImHttpClient.sendAsync and combines the results. allOf
+ * collects all results within a deadline (returning partial results when some time out), anyOf returns the first 2xx
+ * response (for example among replicas), and quorum returns once a given number of requests answer with 2xx. Requests
+ * that are no longer needed are cancelled at once and their connections aborted, so they hold no connections, bulkhead
+ * or concurrency permits.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 并行请求组合类
+ * @create 2019-11-21 16:40
+ * @see ImHttpClient#sendAsync(ImRequest)
+ * @since 1.5.0
+ */
+public final class ImFanOut {
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 同时发起全部请求，等待全部请求完成或到达截止时间，按输入的顺序返回每个请求的结果；
+     * 截止时间内未完成的请求被取消，其结果为SocketTimeoutException
+     * <p>
+     * <font color="#666666">Send all requests at once, wait until all of them complete or the deadline passes, and return the
+     * result of every request in input order. Requests not complete by the deadline are cancelled and their result is a
+     * SocketTimeoutException.</font>
+     *
+     * @param imRequests ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param timeout    截止时间（毫秒） <br/> <font color="#666666">Deadline (milliseconds)</font>
+     * @return 请求结果，顺序与输入相同 <br/> <font color="#666666">Request results in input order</font>
+     * @throws InterruptedIOException 等待时被中断，全部请求被取消 <br/> <font color="#666666">Interrupted while waiting, all requests are cancelled</font>
+     */
+    public static List<ImBatchResult> allOf(Collection<ImRequest> imRequests, long timeout) throws InterruptedIOException {
+        Gather gather = gather(toArray(imRequests), 0, timeout);
+        return Arrays.asList(gather.results);
+    }
+
+    /**
+     * 同时发起全部请求，返回首个2xx响应的结果，其余请求被取消
+     * <p>
+     * <font color="#666666">Send all requests at once and return the result of the first 2xx response; the other requests
+     * are cancelled</font>
+     *
+     * @param imRequests ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param timeout    截止时间（毫秒） <br/> <font color="#666666">Deadline (milliseconds)</font>
+     * @return 首个2xx响应的结果 <br/> <font color="#666666">Result of the first 2xx response</font>
+     * @throws SocketTimeoutException 截止时间内没有2xx响应 <br/> <font color="#666666">No 2xx response within the deadline</font>
+     * @throws IOException            全部请求均失败或没有返回2xx响应，各请求的异常为其suppressed异常 <br/> <font color="#666666">All requests failed or did not answer with 2xx, with their exceptions suppressed</font>
+     */
+    public static ImBatchResult anyOf(Collection<ImRequest> imRequests, long timeout) throws IOException {
+        ImRequest[] requests = toArray(imRequests);
+        if (requests.length == 0) {
+            throw new IllegalArgumentException();
+        }
+        Gather gather = gather(requests, 1, timeout);
+        if (gather.successes.isEmpty()) {
+            throw gather.failure("No successful response");
+        }
+        return gather.successes.get(0);
+    }
+
+    /**
+     * 同时发起全部请求，在quorum个请求返回2xx响应时按完成的顺序返回这些结果，其余请求被取消
+     * <p>
+     * <font color="#666666">Send all requests at once and, once quorum requests answer with 2xx, return those results in
+     * completion order; the other requests are cancelled</font>
+     *
+     * @param imRequests ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param quorum     需要的2xx响应数 <br/> <font color="#666666">Number of 2xx responses needed</font>
+     * @param timeout    截止时间（毫秒） <br/> <font color="#666666">Deadline (milliseconds)</font>
+     * @return quorum个2xx响应的结果 <br/> <font color="#666666">Results of the quorum 2xx responses</font>
+     * @throws SocketTimeoutException 截止时间内2xx响应不足 <br/> <font color="#666666">Too few 2xx responses within the deadline</font>
+     * @throws IOException            失败的请求过多，已无法达到quorum，各请求的异常为其suppressed异常 <br/> <font color="#666666">Too many requests failed to reach the quorum, with their exceptions suppressed</font>
+     */
+    public static List<ImBatchResult> quorum(Collection<ImRequest> imRequests, int quorum, long timeout) throws IOException {
+        ImRequest[] requests = toArray(imRequests);
+        if (quorum < 1 || quorum > requests.length) {
+            throw new IllegalArgumentException();
+        }
+        Gather gather = gather(requests, quorum, timeout);
+        if (gather.successes.size() < quorum) {
+            throw gather.failure("Quorum of " + quorum + " not reached");
+        }
+        return gather.successes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 同时发起全部请求并收集结果，needed个请求返回2xx响应、已无法达到needed或到达截止时间时取消其余请求
+     *
+     * @param requests 请求
+     * @param needed   需要的2xx响应数，0表示等待全部请求完成
+     * @param timeout  截止时间（毫秒）
+     * @return 收集的结果
+     * @throws InterruptedIOException 等待时被中断
+     */
+    private static Gather gather(ImRequest[] requests, int needed, long timeout) throws InterruptedIOException {
+        int count = requests.length;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(timeout, 0));
+
+        //完成的请求按完成顺序放入队列
+        BlockingQueue<Integer> completed = new LinkedBlockingQueue<Integer>();
+        List<CompletableFuture<ImResponse>> futures = new ArrayList<CompletableFuture<ImResponse>>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            CompletableFuture<ImResponse> future = ImHttpClient.sendAsync(requests[i]);
+            future.whenComplete((response, e) -> completed.add(index));
+            futures.add(future);
+        }
+
+        Gather gather = new Gather(count);
+        int failures = 0;
+        try {
+            while (gather.done < count) {
+                if (needed > 0 && (gather.successes.size() >= needed || count - failures < needed)) {
+                    break;
+                }
+                long remaining = deadline - System.nanoTime();
+                Integer index = remaining > 0 ? completed.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (index == null) {
+                    gather.timedOut = true;
+                    break;
+                }
+                ImBatchResult result = toResult(index, requests[index], futures.get(index));
+                gather.add(result);
+                if (!isSuccessful(result)) {
+                    failures++;
+                }
+            }
+        } catch (InterruptedException e) {
+            for (CompletableFuture<ImResponse> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the fan-out.");
+        }
+
+        //取消不再需要的请求，取消前已完成的请求保留其结果
+        for (int i = 0; i < count; i++) {
+            if (gather.results[i] == null) {
+                CompletableFuture<ImResponse> future = futures.get(i);
+                if (future.cancel(true)) {
+                    IOException e = gather.timedOut ? new SocketTimeoutException("Fan-out timed out")
+                            : new InterruptedIOException("Canceled");
+                    gather.results[i] = new ImBatchResult(i, requests[i], null, e);
+                } else {
+                    gather.results[i] = toResult(i, requests[i], future);
+                }
+            }
+        }
+        return gather;
+    }
+
+    /**
+     * 【内部方法】 获得已完成请求的结果
+     */
+    private static ImBatchResult toResult(int index, ImRequest imRequest, CompletableFuture<ImResponse> future) {
+        try {
+            return new ImBatchResult(index, imRequest, future.getNow(null), null);
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            Exception error = cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+            return new ImBatchResult(index, imRequest, null, error);
+        } catch (CancellationException e) {
+            return new ImBatchResult(index, imRequest, null, new InterruptedIOException("Canceled"));
+        }
+    }
+
+    /**
+     * 【内部方法】 是否为2xx响应
+     */
+    private static boolean isSuccessful(ImBatchResult result) {
+        return result.isSuccess() && result.getResponse().getResponseCode() / 100 == 2;
+    }
+
+    private static ImRequest[] toArray(Collection<ImRequest> imRequests) {
+        if (imRequests == null) {
+            throw new NullPointerException();
+        }
+        ImRequest[] requests = imRequests.toArray(new ImRequest[0]);
+        for (ImRequest imRequest : requests) {
+            if (imRequest == null) {
+                throw new NullPointerException();
+            }
+        }
+        return requests;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 收集的结果
+     */
+    private static final class Gather {
+
+        private final ImBatchResult[] results;
+        private final List<ImBatchResult> successes = new ArrayList<ImBatchResult>();
+        private int done;
+        private boolean timedOut;
+
+        private Gather(int count) {
+            this.results = new ImBatchResult[count];
+        }
+
+        private void add(ImBatchResult result) {
+            results[result.getIndex()] = result;
+            done++;
+            if (isSuccessful(result)) {
+                successes.add(result);
+            }
+        }
+
+        /**
+         * 未达到需要的2xx响应数时的异常，各请求的异常为其suppressed异常
+         */
+        private IOException failure(String message) {
+            IOException failure = timedOut ? new SocketTimeoutException(message + ": fan-out timed out")
+                    : new IOException(message);
+            for (ImBatchResult result : results) {
+                if (result.getError() != null) {
+                    failure.addSuppressed(result.getError());
+                } else if (!isSuccessful(result)) {
+                    failure.addSuppressed(new IOException("Response code " + result.getResponse().getResponseCode()
+                            + " from " + result.getRequest().getUrl()));
+                }
+            }
+            return failure;
+        }
+    }
+
+    /**
+     * 禁止被实例化
+     */
+    private ImFanOut() {
+    }
+}
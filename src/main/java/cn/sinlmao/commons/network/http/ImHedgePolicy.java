@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <b>对冲请求策略类</b>
+ * <p>
+ * 该类用于降低GET、HEAD请求的尾部延迟：请求在按主机统计的近期延迟分位数（默认p95）内仍未返回时，再发出一个相同的请求，
+ * 先返回的响应被采用，另一个请求被取消。对冲请求受对冲预算限制（默认不超过请求数的10%），避免负载翻倍；
+ * 主机的延迟样本不足时不发出对冲请求。适用于后端有多个副本的幂等请求
+ * <br/><br/>
+ * <b>Hedged request policy class</b>
+ * <p>
+ * This class cuts the tail latency of GET and HEAD requests. When a request has not answered within a percentile of the
+ * recent latency of its host (p95 by default), a second identical request is sent; the first response wins and the other
+ * request is cancelled. Hedges are limited by a hedge budget (10% of requests by default) so load is not doubled, and
+ * no hedge is sent while the host has too few latency samples. It is meant for idempotent requests to replicated backends.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 对冲请求策略类
+ * @create 2019-11-18 16:40
+ * @see ImRequest#setHedgePolicy(ImHedgePolicy)
+ * @see ImHttpClient#setHedgePolicy(ImHedgePolicy)
+ * @since 1.5.0
+ */
+public class ImHedgePolicy {
+
+    private volatile double percentile = 0.95;
+    private volatile long minDelay = 1;
+    private volatile int minSamples = 20;
+    private volatile ImRetryBudget hedgeBudget = new ImRetryBudget(0.1, 1, 10);
+
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<String, LatencyHistogram>();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置发出对冲请求的延迟分位数，默认为0.95
+     * <p>
+     * <font color="#666666">Set the latency percentile after which a hedge is sent, default is 0.95</font>
+     *
+     * @param percentile 延迟分位数（0到1之间） <br/> <font color="#666666">Latency percentile (between 0 and 1)</font>
+     * @return ImHedgePolicy对象实体 <br/> <font color="#666666">ImHedgePolicy object entity</font>
+     */
+    public ImHedgePolicy setPercentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException();
+        }
+        this.percentile = percentile;
+        return this;
+    }
+
+    /**
+     * 获得发出对冲请求的延迟分位数
+     * <p>
+     * <font color="#666666">Get the latency percentile after which a hedge is sent</font>
+     *
+     * @return 延迟分位数 <br/> <font color="#666666">Latency percentile</font>
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * 设置发出对冲请求的最小延迟（毫秒），默认为1
+     * <p>
+     * <font color="#666666">Set the minimum delay before a hedge is sent (milliseconds), default is 1</font>
+     *
+     * @param minDelay 最小延迟 <br/> <font color="#666666">Minimum delay</font>
+     * @return ImHedgePolicy对象实体 <br/> <font color="#666666">ImHedgePolicy object entity</font>
+     */
+    public ImHedgePolicy setMinDelay(long minDelay) {
+        this.minDelay = Math.max(minDelay, 1);
+        return this;
+    }
+
+    /**
+     * 获得发出对冲请求的最小延迟（毫秒）
+     * <p>
+     * <font color="#666666">Get the minimum delay before a hedge is sent (milliseconds)</font>
+     *
+     * @return 最小延迟 <br/> <font color="#666666">Minimum delay</font>
+     */
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * 设置发出对冲请求前主机至少需要的延迟样本数，默认为20
+     * <p>
+     * <font color="#666666">Set the number of latency samples a host needs before hedges are sent, default is 20</font>
+     *
+     * @param minSamples 延迟样本数 <br/> <font color="#666666">Latency samples</font>
+     * @return ImHedgePolicy对象实体 <br/> <font color="#666666">ImHedgePolicy object entity</font>
+     */
+    public ImHedgePolicy setMinSamples(int minSamples) {
+        this.minSamples = Math.max(minSamples, 1);
+        return this;
+    }
+
+    /**
+     * 获得发出对冲请求前主机至少需要的延迟样本数
+     * <p>
+     * <font color="#666666">Get the number of latency samples a host needs before hedges are sent</font>
+     *
+     * @return 延迟样本数 <br/> <font color="#666666">Latency samples</font>
+     */
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * 设置对冲预算，每个请求按比例存入令牌，每个对冲请求取出一个令牌
+     * <p>
+     * <font color="#666666">Set the hedge budget, every request deposits a share of a token and every hedge withdraws one</font>
+     *
+     * @param hedgeBudget 对冲预算 <br/> <font color="#666666">Hedge budget</font>
+     * @return ImHedgePolicy对象实体 <br/> <font color="#666666">ImHedgePolicy object entity</font>
+     */
+    public ImHedgePolicy setHedgeBudget(ImRetryBudget hedgeBudget) {
+        if (hedgeBudget == null) {
+            throw new NullPointerException();
+        }
+        this.hedgeBudget = hedgeBudget;
+        return this;
+    }
+
+    /**
+     * 获得对冲预算
+     * <p>
+     * <font color="#666666">Get the hedge budget</font>
+     *
+     * @return 对冲预算 <br/> <font color="#666666">Hedge budget</font>
+     */
+    public ImRetryBudget getHedgeBudget() {
+        return hedgeBudget;
+    }
+
+    /**
+     * 获得主机当前的对冲延迟（毫秒），即近期延迟的分位数
+     * <p>
+     * <font color="#666666">Get the current hedge delay of a host (milliseconds), that is the percentile of its recent latency</font>
+     *
+     * @param host 主机（host:port） <br/> <font color="#666666">Host (host:port)</font>
+     * @return 对冲延迟，样本不足时为-1 <br/> <font color="#666666">Hedge delay, -1 when there are too few samples</font>
+     */
+    public long getHedgeDelay(String host) {
+        LatencyHistogram histogram = latencies.get(host);
+        if (histogram == null || histogram.getCount() < minSamples) {
+            return -1;
+        }
+        return Math.max(histogram.getPercentile(percentile), minDelay);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 记录主机的请求延迟
+     *
+     * @param host    主机（host:port）
+     * @param latency 请求延迟（毫秒）
+     */
+    void record(String host, long latency) {
+        LatencyHistogram histogram = latencies.get(host);
+        if (histogram == null) {
+            histogram = latencies.computeIfAbsent(host, key -> new LatencyHistogram(1000));
+        }
+        histogram.record(latency);
+    }
+
+    /**
+     * 【内部方法】 每个请求存入对冲令牌
+     */
+    void deposit() {
+        hedgeBudget.deposit();
+    }
+
+    /**
+     * 【内部方法】 发出对冲请求前取出一个令牌
+     *
+     * @return 是否可以发出对冲请求
+     */
+    boolean tryHedge() {
+        return hedgeBudget.tryWithdraw();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 近期延迟直方图，按2的幂分段，每段8个格子（相对误差约12%），样本数超过窗口时减半以保留近期数据
+     */
+    static final class LatencyHistogram {
+
+        private final static int LINEAR = 16;
+        private final static int BUCKETS = LINEAR + (40 - 4) * 8;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final long window;
+
+        LatencyHistogram(long window) {
+            this.window = window;
+        }
+
+        void record(long latency) {
+            counts.incrementAndGet(index(Math.max(latency, 0)));
+            if (count.incrementAndGet() > window) {
+                decay();
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getPercentile(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            long target = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= target && seen > 0) {
+                    return upperBound(i);
+                }
+            }
+            return upperBound(BUCKETS - 1);
+        }
+
+        private synchronized void decay() {
+            if (count.get() <= window) {
+                return;
+            }
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long current;
+                do {
+                    current = counts.get(i);
+                } while (!counts.compareAndSet(i, current, current >> 1));
+                total += current >> 1;
+            }
+            count.set(total);
+        }
+
+        private static int index(long value) {
+            if (value < LINEAR) {
+                return (int) value;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(value);
+            int index = LINEAR + (exp - 4) * 8 + (int) ((value >> (exp - 3)) & 7);
+            return Math.min(index, BUCKETS - 1);
+        }
+
+        private static long upperBound(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int exp = (index - LINEAR) / 8 + 4;
+            int sub = (index - LINEAR) % 8;
+            return ((8L + sub + 1) << (exp - 3)) - 1;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 package cn.sinlmao.commons.network.http;
 
 import cn.sinlmao.commons.network.bean.*;
+import cn.sinlmao.commons.network.callback.ImBatchCallback;
 import cn.sinlmao.commons.network.callback.ImHttpClientCallback;
 import cn.sinlmao.commons.network.callback.ImSessionCallback;
 import cn.sinlmao.commons.network.exception.*;
@@ -25,12 +26,14 @@ import com.alibaba.fastjson.JSONObject;
 
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <b>HTTP Client实现类</b>
@@ -61,6 +64,310 @@ public final class ImHttpClient {
 
     private static ThreadFactory THREAD_FACTORY = Executors.defaultThreadFactory();
 
+    private static volatile ImResponseCache RESPONSE_CACHE;
+
+    private static volatile ImRetryPolicy RETRY_POLICY;
+    private static volatile ImRetryBudget RETRY_BUDGET;
+    private static volatile ImHedgePolicy HEDGE_POLICY;
+    private static volatile ImCircuitBreakerRegistry CIRCUIT_BREAKERS;
+    private static volatile ImConcurrencyLimiter CONCURRENCY_LIMITER;
+    private static volatile ImRateLimiter RATE_LIMITER;
+    private static volatile long PRIORITY_AGING_TIME = 1000;
+
+    //按逻辑名称注册的端点组
+    private final static ConcurrentHashMap<String, ImEndpointGroup> ENDPOINT_GROUPS = new ConcurrentHashMap<String, ImEndpointGroup>();
+
+    //按主机设置的速率限制
+    private final static ConcurrentHashMap<String, ImRateLimiter> HOST_RATE_LIMITERS = new ConcurrentHashMap<String, ImRateLimiter>();
+
+    //正在执行的可合并请求
+    private final static ConcurrentHashMap<String, CompletableFuture<ImResponse>> IN_FLIGHT = new ConcurrentHashMap<String, CompletableFuture<ImResponse>>();
+
+    /**
+     * 设置HTTP响应缓存，仅对设置了useCache的GET、HEAD请求生效，设置为null时关闭缓存
+     * <p>
+     * <font color="#666666">Set the HTTP response cache, which only applies to GET and HEAD requests with useCache set.
+     * Set to null to disable caching.</font>
+     *
+     * @param responseCache HTTP响应缓存 <br/> <font color="#666666">HTTP response cache</font>
+     * @see ImRequest#setUseCache(boolean)
+     * @since 1.5.0
+     */
+    public static void setResponseCache(ImResponseCache responseCache) {
+        RESPONSE_CACHE = responseCache;
+    }
+
+    /**
+     * 获得HTTP响应缓存
+     * <p>
+     * <font color="#666666">Get the HTTP response cache</font>
+     *
+     * @return HTTP响应缓存，未设置时为null <br/> <font color="#666666">HTTP response cache, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImResponseCache getResponseCache() {
+        return RESPONSE_CACHE;
+    }
+
+    /**
+     * 设置默认的请求重试策略，对未设置重试策略的请求生效，设置为null时不重试
+     * <p>
+     * <font color="#666666">Set the default request retry policy, which applies to requests without their own retry policy.
+     * Set to null to disable retries.</font>
+     *
+     * @param retryPolicy 请求重试策略 <br/> <font color="#666666">Request retry policy</font>
+     * @see ImRequest#setRetryPolicy(ImRetryPolicy)
+     * @since 1.5.0
+     */
+    public static void setRetryPolicy(ImRetryPolicy retryPolicy) {
+        RETRY_POLICY = retryPolicy;
+    }
+
+    /**
+     * 获得默认的请求重试策略
+     * <p>
+     * <font color="#666666">Get the default request retry policy</font>
+     *
+     * @return 请求重试策略，未设置时为null <br/> <font color="#666666">Request retry policy, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImRetryPolicy getRetryPolicy() {
+        return RETRY_POLICY;
+    }
+
+    /**
+     * 设置全局重试预算，所有请求按比例存入令牌，所有重试共用，设置为null时不限制
+     * <p>
+     * <font color="#666666">Set the global retry budget, every request deposits into it and every retry draws from it.
+     * Set to null for no limit.</font>
+     *
+     * @param retryBudget 重试预算 <br/> <font color="#666666">Retry budget</font>
+     * @since 1.5.0
+     */
+    public static void setRetryBudget(ImRetryBudget retryBudget) {
+        RETRY_BUDGET = retryBudget;
+    }
+
+    /**
+     * 获得全局重试预算
+     * <p>
+     * <font color="#666666">Get the global retry budget</font>
+     *
+     * @return 重试预算，未设置时为null <br/> <font color="#666666">Retry budget, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImRetryBudget getRetryBudget() {
+        return RETRY_BUDGET;
+    }
+
+    /**
+     * 设置默认的对冲请求策略，对未设置对冲请求策略的GET、HEAD请求生效，设置为null时不发出对冲请求
+     * <p>
+     * <font color="#666666">Set the default hedged request policy, which applies to GET and HEAD requests without their own
+     * hedged request policy. Set to null to disable hedging.</font>
+     *
+     * @param hedgePolicy 对冲请求策略 <br/> <font color="#666666">Hedged request policy</font>
+     * @see ImRequest#setHedgePolicy(ImHedgePolicy)
+     * @since 1.5.0
+     */
+    public static void setHedgePolicy(ImHedgePolicy hedgePolicy) {
+        HEDGE_POLICY = hedgePolicy;
+    }
+
+    /**
+     * 获得默认的对冲请求策略
+     * <p>
+     * <font color="#666666">Get the default hedged request policy</font>
+     *
+     * @return 对冲请求策略，未设置时为null <br/> <font color="#666666">Hedged request policy, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImHedgePolicy getHedgePolicy() {
+        return HEDGE_POLICY;
+    }
+
+    /**
+     * 设置熔断器注册表，按主机（或路由）熔断，熔断器打开时请求立即抛出CircuitBreakerOpenException，设置为null时关闭熔断
+     * <p>
+     * <font color="#666666">Set the circuit breaker registry, which trips per host (or route). While a circuit is open requests
+     * throw CircuitBreakerOpenException at once. Set to null to disable circuit breaking.</font>
+     *
+     * @param circuitBreakerRegistry 熔断器注册表 <br/> <font color="#666666">Circuit breaker registry</font>
+     * @see CircuitBreakerOpenException
+     * @since 1.5.0
+     */
+    public static void setCircuitBreakerRegistry(ImCircuitBreakerRegistry circuitBreakerRegistry) {
+        CIRCUIT_BREAKERS = circuitBreakerRegistry;
+    }
+
+    /**
+     * 获得熔断器注册表
+     * <p>
+     * <font color="#666666">Get the circuit breaker registry</font>
+     *
+     * @return 熔断器注册表，未设置时为null <br/> <font color="#666666">Circuit breaker registry, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImCircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return CIRCUIT_BREAKERS;
+    }
+
+    /**
+     * 设置自适应并发限制，按主机限制同时执行的请求数，超过上限的请求短暂等待或抛出ConcurrencyLimitException，设置为null时不限制
+     * <p>
+     * <font color="#666666">Set the adaptive concurrency limiter, which limits the requests in flight per host. Requests over the
+     * limit wait briefly or throw ConcurrencyLimitException. Set to null for no limit.</font>
+     *
+     * @param concurrencyLimiter 自适应并发限制 <br/> <font color="#666666">Adaptive concurrency limiter</font>
+     * @see ConcurrencyLimitException
+     * @since 1.5.0
+     */
+    public static void setConcurrencyLimiter(ImConcurrencyLimiter concurrencyLimiter) {
+        CONCURRENCY_LIMITER = concurrencyLimiter;
+    }
+
+    /**
+     * 获得自适应并发限制
+     * <p>
+     * <font color="#666666">Get the adaptive concurrency limiter</font>
+     *
+     * @return 自适应并发限制，未设置时为null <br/> <font color="#666666">Adaptive concurrency limiter, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImConcurrencyLimiter getConcurrencyLimiter() {
+        return CONCURRENCY_LIMITER;
+    }
+
+    /**
+     * 设置全局速率限制，所有请求共用，需要等待过长时间的请求抛出RateLimitException，设置为null时不限制
+     * <p>
+     * <font color="#666666">Set the global rate limiter shared by all requests. Requests that would wait too long throw
+     * RateLimitException. Set to null for no limit.</font>
+     *
+     * @param rateLimiter 速率限制 <br/> <font color="#666666">Rate limiter</font>
+     * @see RateLimitException
+     * @since 1.5.0
+     */
+    public static void setRateLimiter(ImRateLimiter rateLimiter) {
+        RATE_LIMITER = rateLimiter;
+    }
+
+    /**
+     * 获得全局速率限制
+     * <p>
+     * <font color="#666666">Get the global rate limiter</font>
+     *
+     * @return 速率限制，未设置时为null <br/> <font color="#666666">Rate limiter, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImRateLimiter getRateLimiter() {
+        return RATE_LIMITER;
+    }
+
+    /**
+     * 设置主机的速率限制，主机可以为host:port或host（匹配所有端口），设置为null时移除
+     * <p>
+     * <font color="#666666">Set the rate limiter of a host, given as host:port or host (any port). Set to null to remove it.</font>
+     *
+     * @param host        主机 <br/> <font color="#666666">Host</font>
+     * @param rateLimiter 速率限制 <br/> <font color="#666666">Rate limiter</font>
+     * @see RateLimitException
+     * @since 1.5.0
+     */
+    public static void setRateLimiter(String host, ImRateLimiter rateLimiter) {
+        if (host == null) {
+            throw new NullPointerException();
+        }
+        if (rateLimiter == null) {
+            HOST_RATE_LIMITERS.remove(host.toLowerCase());
+        } else {
+            HOST_RATE_LIMITERS.put(host.toLowerCase(), rateLimiter);
+        }
+    }
+
+    /**
+     * 获得主机的速率限制
+     * <p>
+     * <font color="#666666">Get the rate limiter of a host</font>
+     *
+     * @param host 主机（host:port或host） <br/> <font color="#666666">Host (host:port or host)</font>
+     * @return 速率限制，未设置时为null <br/> <font color="#666666">Rate limiter, null when not set</font>
+     * @since 1.5.0
+     */
+    public static ImRateLimiter getRateLimiter(String host) {
+        return host == null ? null : HOST_RATE_LIMITERS.get(host.toLowerCase());
+    }
+
+    /**
+     * 注册端点组，主机名为端点组逻辑名称的请求由客户端负载均衡到端点组中的端点，同名的端点组被替换
+     * <p>
+     * <font color="#666666">Register an endpoint group. Requests whose host is the logical name of the group are load balanced
+     * across its endpoints on the client. A group with the same name is replaced.</font>
+     *
+     * @param endpointGroup 端点组 <br/> <font color="#666666">Endpoint group</font>
+     * @see ImEndpointGroup
+     * @since 1.5.0
+     */
+    public static void addEndpointGroup(ImEndpointGroup endpointGroup) {
+        if (endpointGroup == null) {
+            throw new NullPointerException();
+        }
+        ENDPOINT_GROUPS.put(endpointGroup.getName(), endpointGroup);
+    }
+
+    /**
+     * 移除端点组
+     * <p>
+     * <font color="#666666">Remove an endpoint group</font>
+     *
+     * @param name 逻辑名称 <br/> <font color="#666666">Logical name</font>
+     * @since 1.5.0
+     */
+    public static void removeEndpointGroup(String name) {
+        if (name != null) {
+            ENDPOINT_GROUPS.remove(name.toLowerCase());
+        }
+    }
+
+    /**
+     * 获得端点组
+     * <p>
+     * <font color="#666666">Get an endpoint group</font>
+     *
+     * @param name 逻辑名称 <br/> <font color="#666666">Logical name</font>
+     * @return 端点组，未注册时为null <br/> <font color="#666666">Endpoint group, null when not registered</font>
+     * @since 1.5.0
+     */
+    public static ImEndpointGroup getEndpointGroup(String name) {
+        return name == null ? null : ENDPOINT_GROUPS.get(name.toLowerCase());
+    }
+
+    /**
+     * 设置优先级的老化时间（毫秒），默认为1000：排队的请求每等待该时间，相当于优先级提高一级，低优先级的请求不会被饿死
+     * <p>
+     * <font color="#666666">Set the priority aging time (milliseconds), default is 1000. Every time a queued request has waited
+     * this long it counts as one priority level higher, so low priority requests are not starved.</font>
+     *
+     * @param agingTime 老化时间 <br/> <font color="#666666">Aging time</font>
+     * @see ImRequest#setPriority(int)
+     * @since 1.5.0
+     */
+    public static void setPriorityAgingTime(long agingTime) {
+        PRIORITY_AGING_TIME = Math.max(agingTime, 1);
+    }
+
+    /**
+     * 获得优先级的老化时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the priority aging time (milliseconds)</font>
+     *
+     * @return 老化时间 <br/> <font color="#666666">Aging time</font>
+     * @since 1.5.0
+     */
+    public static long getPriorityAgingTime() {
+        return PRIORITY_AGING_TIME;
+    }
+
     /**
      * 发起一个带会话状态的请求
      * <p>
@@ -86,105 +393,881 @@ public final class ImHttpClient {
      * @see ImSession
      * @since 1.4.1
      */
-    public static ImResponse send(ImRequest imRequest, ImSession imSession)
-            throws SessionException, ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, AuthenticationException, IOException {
+    public static ImResponse send(ImRequest imRequest, ImSession imSession)
+            throws SessionException, ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, AuthenticationException, IOException {
+
+        //非空判断
+        if (imRequest == null || imSession == null) {
+            throw new NullPointerException();
+        }
+
+        //如果是异步执行
+        if (imRequest.isAsync()) {
+            //预留速率限制的放行时间
+            IOException rejected = null;
+            long delay = 0;
+            try {
+                delay = reserveRate(imRequest, imSession.getRateLimiter());
+            } catch (IOException e) {
+                rejected = e;
+            }
+            //在隔离舱的队列中预留位置
+            ImBulkhead bulkhead = imRequest.getBulkhead();
+            if (rejected == null && bulkhead != null && !bulkhead.admit()) {
+                rejected = new BulkheadFullException(bulkhead.getName(), "max queue " + bulkhead.getMaxQueue());
+            }
+            IOException failure = rejected;
+            //异步执行
+            startAsync(failure == null ? bulkhead : null, imRequest.getPriority(), () -> {
+                //获得回调接口
+                ImHttpClientCallback httpClientCallback = imRequest.getCallback();
+                ImSessionCallback sessionCallback = imSession.getCallback();
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    //具体执行
+                    ImResponse imResponse = execute(imRequest, imSession, true, null);
+                    //如果已经设置回调接口，执行回调
+                    if (httpClientCallback != null) {
+                        httpClientCallback.onSuccess(imRequest, imResponse);
+                        httpClientCallback.onComplete(imRequest, imResponse);
+                    }
+                } catch (ContentTypeException | DataTypeException | MethodException | IgnoreSSLException | QueryParamsException | IOException e) {
+                    //如果已经设置回调接口，执行回调
+                    if (httpClientCallback != null) {
+                        httpClientCallback.onError(imRequest, e);
+                        httpClientCallback.onComplete(imRequest, null);
+                    }
+                } catch (AuthenticationException e) {
+                    if (sessionCallback != null) {
+                        sessionCallback.onError(imSession, imRequest, e);
+                    }
+                }
+            }, delay);
+            return null;
+        } else {    //如果不是异步执行（同步执行）
+            return execute(imRequest, imSession, false, null);
+        }
+    }
+
+    /**
+     * 发起请求
+     * <p>
+     * <font color="#666666">Send Request</font>
+     * <p>
+     * 请注意，如果在ImRequest中指示为异步请求，那么此时返回的ImResponse将会是空值，需要在ImRequest中另行实现ImHttpCallback接口才能获得返回值
+     * <p>
+     * <font color="#666666">Note that if the asynchronous request is indicated in the ImRequest, then the ImResponse returned at this time will be null,
+     * and the ImHttpCallback interface needs to be implemented separately in the ImRequest to get the return value.</font>
+     *
+     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
+     * @throws ContentTypeException 内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
+     * @throws DataTypeException    数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
+     * @throws MethodException      方法（Method）使用相关异常/警告 <br/> <font color="#666666">Method uses related exceptions/warnings</font>
+     * @throws IgnoreSSLException   忽略SSL相关异常/警告 <br/> <font color="#666666">Ignore SSL related exceptions/warnings</font>
+     * @throws QueryParamsException 查询参数（QueryParams）相关异常/警告类 <br/> <font color="#666666">Query parameters (QueryParams) related exception/warning</font>
+     * @throws IOException          IO异常 <br/> <font color="#666666">IO exception</font>
+     * @see ImRequest
+     */
+    public static ImResponse send(ImRequest imRequest)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+
+        //非空判断
+        if (imRequest == null) {
+            throw new NullPointerException();
+        }
+
+        //如果是异步执行
+        if (imRequest.isAsync()) {
+            //预留速率限制的放行时间
+            IOException rejected = null;
+            long delay = 0;
+            try {
+                delay = reserveRate(imRequest, null);
+            } catch (IOException e) {
+                rejected = e;
+            }
+            //在隔离舱的队列中预留位置
+            ImBulkhead bulkhead = imRequest.getBulkhead();
+            if (rejected == null && bulkhead != null && !bulkhead.admit()) {
+                rejected = new BulkheadFullException(bulkhead.getName(), "max queue " + bulkhead.getMaxQueue());
+            }
+            IOException failure = rejected;
+            //异步执行
+            startAsync(failure == null ? bulkhead : null, imRequest.getPriority(), () -> {
+                ImHttpClientCallback callback = imRequest.getCallback();
+                try {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    //具体执行
+                    ImResponse imResponse = execute(imRequest, true, null);
+                    //如果已经设置回调接口，执行回调
+                    if (callback != null) {
+                        callback.onSuccess(imRequest, imResponse);
+                        callback.onComplete(imRequest, imResponse);
+                    }
+                } catch (ContentTypeException | DataTypeException | MethodException | IgnoreSSLException | QueryParamsException | IOException e) {
+                    if (callback != null) {
+                        callback.onError(imRequest, e);
+                        callback.onComplete(imRequest, null);
+                    }
+                }
+            }, delay);
+            return null;
+        } else {    //如果不是异步执行（同步执行）
+            return execute(imRequest, false, null);
+        }
+    }
+
+    /**
+     * 异步发起一个带会话状态的请求，返回请求结果
+     * <p>
+     * <font color="#666666">Send a request with a session state asynchronously and return the request result</font>
+     * <p>
+     * 请求总是异步执行（忽略ImRequest的异步设置及回调接口），结果在请求完成时完成；取消返回的结果时一同取消请求，
+     * 请求使用的连接随即被中止。注意由其派生的CompletableFuture取消时不会取消请求
+     * <p>
+     * <font color="#666666">The request always runs asynchronously (the asynchronous setting and callback of ImRequest are
+     * ignored) and the result completes when the request does. Cancelling the returned result cancels the request and
+     * aborts its connection at once. Note that cancelling a CompletableFuture derived from it does not cancel the request.</font>
+     *
+     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param imSession ImSession会话状态数据 <br/> <font color="#666666">ImSession session state data</font>
+     * @return 请求结果 <br/> <font color="#666666">Request result</font>
+     * @see ImFanOut
+     * @since 1.5.0
+     */
+    public static CompletableFuture<ImResponse> sendAsync(ImRequest imRequest, ImSession imSession) {
+
+        //非空判断
+        if (imRequest == null || imSession == null) {
+            throw new NullPointerException();
+        }
+
+        ImCallFuture future = new ImCallFuture();
+        //预留速率限制的放行时间
+        IOException rejected = null;
+        long delay = 0;
+        try {
+            delay = reserveRate(imRequest, imSession.getRateLimiter());
+        } catch (IOException e) {
+            rejected = e;
+        }
+        //在隔离舱的队列中预留位置
+        ImBulkhead bulkhead = imRequest.getBulkhead();
+        if (rejected == null && bulkhead != null && !bulkhead.admit()) {
+            rejected = new BulkheadFullException(bulkhead.getName(), "max queue " + bulkhead.getMaxQueue());
+        }
+        if (rejected != null) {
+            future.completeExceptionally(rejected);
+            return future;
+        }
+        //异步执行，已被取消的请求不再执行
+        startAsync(bulkhead, imRequest.getPriority(), () -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            try {
+                future.complete(execute(imRequest, imSession, true, future));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, delay);
+        return future;
+    }
+
+    /**
+     * 异步发起请求，返回请求结果
+     * <p>
+     * <font color="#666666">Send a request asynchronously and return the request result</font>
+     * <p>
+     * 请求总是异步执行（忽略ImRequest的异步设置及回调接口），结果在请求完成时完成；取消返回的结果时一同取消请求，
+     * 请求使用的连接随即被中止。注意由其派生的CompletableFuture取消时不会取消请求
+     * <p>
+     * <font color="#666666">The request always runs asynchronously (the asynchronous setting and callback of ImRequest are
+     * ignored) and the result completes when the request does. Cancelling the returned result cancels the request and
+     * aborts its connection at once. Note that cancelling a CompletableFuture derived from it does not cancel the request.</font>
+     *
+     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @return 请求结果 <br/> <font color="#666666">Request result</font>
+     * @see ImFanOut
+     * @since 1.5.0
+     */
+    public static CompletableFuture<ImResponse> sendAsync(ImRequest imRequest) {
+
+        //非空判断
+        if (imRequest == null) {
+            throw new NullPointerException();
+        }
+
+        ImCallFuture future = new ImCallFuture();
+        //预留速率限制的放行时间
+        IOException rejected = null;
+        long delay = 0;
+        try {
+            delay = reserveRate(imRequest, null);
+        } catch (IOException e) {
+            rejected = e;
+        }
+        //在隔离舱的队列中预留位置
+        ImBulkhead bulkhead = imRequest.getBulkhead();
+        if (rejected == null && bulkhead != null && !bulkhead.admit()) {
+            rejected = new BulkheadFullException(bulkhead.getName(), "max queue " + bulkhead.getMaxQueue());
+        }
+        if (rejected != null) {
+            future.completeExceptionally(rejected);
+            return future;
+        }
+        //异步执行，已被取消的请求不再执行
+        startAsync(bulkhead, imRequest.getPriority(), () -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            try {
+                future.complete(execute(imRequest, true, future));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        }, delay);
+        return future;
+    }
+
+    /**
+     * 批量发起请求，最多同时执行parallelism个请求，按输入的顺序返回每个请求的结果
+     * <p>
+     * <font color="#666666">Send a batch of requests with at most parallelism requests in flight, and return the result of
+     * every request in input order</font>
+     * <p>
+     * 请求由调用线程及最多parallelism-1个线程依次同步执行（忽略ImRequest的异步设置），单个请求的异常记录在其结果中，
+     * 不影响其它请求。已读完的连接由JVM保持复用，每个主机最多保留http.maxConnections（默认为5）个空闲连接，
+     * parallelism不超过该值时连接可以全部复用
+     * <p>
+     * <font color="#666666">The requests run synchronously on the calling thread and at most parallelism-1 other threads (the
+     * asynchronous setting of ImRequest is ignored). The exception of a request is kept in its result and does not affect
+     * the others. Connections that were read to the end are kept alive by the JVM, which keeps at most http.maxConnections
+     * (5 by default) idle connections per host, so all connections are reused while parallelism does not exceed it.</font>
+     *
+     * @param imRequests  ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param parallelism 最多同时执行的请求数 <br/> <font color="#666666">Maximum requests in flight</font>
+     * @return 请求结果，顺序与输入相同 <br/> <font color="#666666">Request results in input order</font>
+     * @throws InterruptedIOException 调用线程被中断，正在执行的请求完成后抛出 <br/> <font color="#666666">The calling thread was interrupted, thrown once the requests in flight complete</font>
+     * @see ImBatchResult
+     * @since 1.5.0
+     */
+    public static List<ImBatchResult> sendAll(Collection<ImRequest> imRequests, int parallelism) throws InterruptedIOException {
+        ImBatchResult[] results = new ImBatchResult[imRequests.size()];
+        sendAll(imRequests, parallelism, result -> results[result.getIndex()] = result);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * 批量发起请求，最多同时执行parallelism个请求，每个请求完成时回调其结果，所有请求完成后返回
+     * <p>
+     * <font color="#666666">Send a batch of requests with at most parallelism requests in flight, call back with the result
+     * of every request as it completes, and return when all requests are complete</font>
+     *
+     * @param imRequests  ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param parallelism 最多同时执行的请求数 <br/> <font color="#666666">Maximum requests in flight</font>
+     * @param callback    请求结果回调 <br/> <font color="#666666">Request result callback</font>
+     * @throws InterruptedIOException 调用线程被中断，正在执行的请求完成后抛出 <br/> <font color="#666666">The calling thread was interrupted, thrown once the requests in flight complete</font>
+     * @see #sendAll(Collection, int)
+     * @since 1.5.0
+     */
+    public static void sendAll(Collection<ImRequest> imRequests, int parallelism, ImBatchCallback callback) throws InterruptedIOException {
+
+        //非空判断
+        if (imRequests == null || callback == null) {
+            throw new NullPointerException();
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException();
+        }
+        ImRequest[] requests = imRequests.toArray(new ImRequest[0]);
+        for (ImRequest imRequest : requests) {
+            if (imRequest == null) {
+                throw new NullPointerException();
+            }
+        }
+
+        //调用线程也执行请求，另外最多启动parallelism-1个线程
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        int threads = Math.min(parallelism, requests.length) - 1;
+        CountDownLatch done = new CountDownLatch(Math.max(threads, 0));
+        for (int i = 0; i < threads; i++) {
+            THREAD_FACTORY.newThread(() -> {
+                try {
+                    executeBatch(requests, next, callback, failure);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        executeBatch(requests, next, callback, failure);
+
+        //等待其它线程正在执行的请求完成，调用线程被中断时不再发起新的请求
+        boolean interrupted = false;
+        while (true) {
+            if (Thread.interrupted()) {
+                interrupted = true;
+                next.set(requests.length);
+            }
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure.get() != null) {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            throw failure.get();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending the batch.");
+        }
+    }
+
+    /**
+     * 【内部方法】 依次取出批量请求中的下一个请求并同步执行，调用线程被中断或回调抛出异常时停止发起新的请求
+     *
+     * @param requests 批量请求
+     * @param next     下一个请求的位置
+     * @param callback 请求结果回调
+     * @param failure  回调抛出的第一个异常
+     */
+    private static void executeBatch(ImRequest[] requests, AtomicInteger next, ImBatchCallback callback,
+                                     AtomicReference<RuntimeException> failure) {
+        int index;
+        while (!Thread.currentThread().isInterrupted() && (index = next.getAndIncrement()) < requests.length) {
+            ImRequest imRequest = requests[index];
+            ImBatchResult result;
+            try {
+                result = new ImBatchResult(index, imRequest, execute(imRequest, false, null), null);
+            } catch (Exception e) {
+                result = new ImBatchResult(index, imRequest, null, e);
+            }
+            try {
+                callback.onResult(result);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                next.set(requests.length);
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 启动异步请求，设置了隔离舱时放入隔离舱的队列，否则在新线程中执行；
+     * 需要等待速率限制放行时由定时器延后启动，等待期间不占用线程
+     *
+     * @param bulkhead 已预留队列位置的隔离舱，可以为null
+     * @param priority 请求的优先级
+     * @param task     异步请求
+     * @param delay    需要等待的时间（毫秒）
+     */
+    private static void startAsync(ImBulkhead bulkhead, int priority, Runnable task, long delay) {
+        Runnable start = bulkhead != null ? () -> bulkhead.enqueue(task, priority) : THREAD_FACTORY.newThread(task)::start;
+        if (delay > 0) {
+            ImTimeoutWheel.SHARED.schedule(start, delay);
+        } else {
+            start.run();
+        }
+    }
+
+    /**
+     * 【内部方法】 发起会话请求
+     *
+     * @param imRequest    ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param rateReserved 首次网络请求的放行时间是否已预留 <br/> <font color="#666666">Whether the slot of the first attempt is already reserved</font>
+     * @param future       取消时一同取消请求的结果，可以为null <br/> <font color="#666666">Result whose cancellation cancels the request, may be null</font>
+     * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
+     * @throws ContentTypeException 内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
+     * @throws DataTypeException    数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
+     * @throws MethodException      方法（Method）使用相关异常/警告 <br/> <font color="#666666">Method uses related exceptions/warnings</font>
+     * @throws IgnoreSSLException   忽略SSL相关异常/警告 <br/> <font color="#666666">Ignore SSL related exceptions/warnings</font>
+     * @throws QueryParamsException 查询参数（QueryParams）相关异常/警告类 <br/> <font color="#666666">Query parameters (QueryParams) related exception/warning</font>
+     * @throws IOException          IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    private static ImResponse execute(ImRequest imRequest, boolean rateReserved, ImCallFuture future)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+        ImCall call = ImCall.begin(imRequest);
+        if (future != null) {
+            future.bind(call);
+        }
+        if (rateReserved) {
+            call.setRateReserved();
+        }
+        try {
+            acquireBulkhead(imRequest, call);
+            return execute(imRequest, null, call);
+        } catch (IOException e) {
+            throw call.translate(e);
+        } finally {
+            call.end();
+        }
+    }
+
+    /**
+     * 【内部方法】 发起会话请求，请求自身的Header和Cookie叠加在会话状态快照之上
+     *
+     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param snapshot  会话状态快照，可以为null <br/> <font color="#666666">Session state snapshot, may be null</font>
+     * @param call      请求执行状态 <br/> <font color="#666666">Request execution state</font>
+     * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
+     * @throws ContentTypeException 内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
+     * @throws DataTypeException    数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
+     * @throws MethodException      方法（Method）使用相关异常/警告 <br/> <font color="#666666">Method uses related exceptions/warnings</font>
+     * @throws IgnoreSSLException   忽略SSL相关异常/警告 <br/> <font color="#666666">Ignore SSL related exceptions/warnings</font>
+     * @throws QueryParamsException 查询参数（QueryParams）相关异常/警告类 <br/> <font color="#666666">Query parameters (QueryParams) related exception/warning</font>
+     * @throws IOException          IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    private static ImResponse execute(ImRequest imRequest, ImSessionSnapshot snapshot, ImCall call)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+
+        //不合并的请求直接执行
+        String coalesceKey = getCoalesceKey(imRequest, snapshot);
+        if (coalesceKey == null) {
+            return executeWithRetry(imRequest, snapshot, call);
+        }
+
+        while (true) {
+            //已有相同请求在执行时，等待其结果
+            CompletableFuture<ImResponse> flight = new CompletableFuture<ImResponse>();
+            CompletableFuture<ImResponse> leader = IN_FLIGHT.putIfAbsent(coalesceKey, flight);
+            if (leader != null) {
+                ImResponse imResponse = awaitResult(leader, call);
+                if (imResponse != null) {
+                    return imResponse;
+                }
+                //执行者因自身的取消或截止时间失败，重新选出执行者
+                call.check();
+                continue;
+            }
+
+            try {
+                ImResponse imResponse = executeWithRetry(imRequest, snapshot, call);
+                flight.complete(imResponse);
+                return imResponse;
+            } catch (Throwable e) {
+                //自身被取消或超时的失败不传递给等待者，等待者收到null后重新执行
+                if (call.isExpired()) {
+                    IN_FLIGHT.remove(coalesceKey, flight);
+                    flight.complete(null);
+                } else {
+                    flight.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                IN_FLIGHT.remove(coalesceKey, flight);
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 按重试策略执行请求，重试不超过整个请求的截止时间，并受重试预算限制
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param snapshot  会话状态快照，可以为null
+     * @param call      请求执行状态
+     * @return ImResponse会话响应对象
+     */
+    private static ImResponse executeWithRetry(ImRequest imRequest, ImSessionSnapshot snapshot, ImCall call)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+
+        //所有请求按比例存入重试令牌
+        ImRetryBudget retryBudget = RETRY_BUDGET;
+        if (retryBudget != null) {
+            retryBudget.deposit();
+        }
+
+        ImRetryPolicy retryPolicy = imRequest.getRetryPolicy() != null ? imRequest.getRetryPolicy() : RETRY_POLICY;
+        if (retryPolicy == null) {
+            return executeAttempt(imRequest, snapshot, call);
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            ImResponse imResponse = null;
+            IOException failure = null;
+            try {
+                imResponse = executeAttempt(imRequest, snapshot, call);
+            } catch (IOException e) {
+                failure = e;
+            }
+            int responseCode = imResponse != null ? imResponse.getResponseCode() : call.getResponseCode();
+
+            //判断是否重试，退避时间超过剩余时间或重试预算不足时不再重试
+            boolean retry = attempt < retryPolicy.getMaxAttempts() && !call.isCancelled()
+                    && retryPolicy.shouldRetry(imRequest.getMethod(), failure, responseCode);
+            long delay = retry ? retryPolicy.backoff(attempt) : 0;
+            if (retry && (delay >= call.remainingMillis() || (retryBudget != null && !retryBudget.tryWithdraw()))) {
+                retry = false;
+            }
+            if (!retry) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return imResponse;
+            }
+
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry.");
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 执行一次请求，设置了对冲请求策略的GET、HEAD请求在超过主机延迟分位数仍未返回时发出对冲请求，
+     * 先返回的响应被采用，另一个请求被取消
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param snapshot  会话状态快照，可以为null
+     * @param call      请求执行状态
+     * @return ImResponse会话响应对象
+     */
+    private static ImResponse executeAttempt(ImRequest imRequest, ImSessionSnapshot snapshot, ImCall call)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+
+        ImHedgePolicy hedgePolicy = imRequest.getHedgePolicy() != null ? imRequest.getHedgePolicy() : HEDGE_POLICY;
+        if (hedgePolicy == null || (imRequest.getMethod() != ImMethod.GET && imRequest.getMethod() != ImMethod.HEAD)) {
+            return executeGuarded(imRequest, snapshot, true, call);
+        }
+
+        URL url = new URL(imRequest.getUrl());
+        String host = getHostKey(url);
+        hedgePolicy.deposit();
+        long hedgeDelay = hedgePolicy.getHedgeDelay(host);
+        long startTime = System.nanoTime();
+
+        //延迟样本不足时直接执行，只记录延迟
+        if (hedgeDelay < 0) {
+            ImResponse imResponse = executeGuarded(imRequest, snapshot, true, call);
+            recordLatency(hedgePolicy, host, imResponse, startTime);
+            return imResponse;
+        }
+
+        //对冲状态：0 未发出，1 已发出，2 不再发出
+        AtomicInteger hedgeState = new AtomicInteger();
+        CompletableFuture<ImResponse> winner = new CompletableFuture<ImResponse>();
+        CompletableFuture<ImResponse> hedgeResult = new CompletableFuture<ImResponse>();
+        ImCall primary = call.fork();
+        ImCall hedge = call.fork();
+
+        //超过对冲延迟仍未返回时，在新线程中发出相同的请求
+        ImTimeoutWheel.Timeout hedgeTimeout = ImTimeoutWheel.SHARED.schedule(() -> {
+            if (hedgeState.get() != 0 || !hedgePolicy.tryHedge() || !hedgeState.compareAndSet(0, 1)) {
+                hedgeState.compareAndSet(0, 2);
+                return;
+            }
+            THREAD_FACTORY.newThread(() -> {
+                long hedgeStartTime = System.nanoTime();
+                try {
+                    ImResponse imResponse = executeGuarded(imRequest, snapshot, true, hedge);
+                    recordLatency(hedgePolicy, host, imResponse, hedgeStartTime);
+                    hedgeResult.complete(imResponse);
+                    if (winner.complete(imResponse)) {
+                        primary.cancel();
+                    }
+                } catch (Throwable e) {
+                    hedgeResult.completeExceptionally(e instanceof IOException ? hedge.translate((IOException) e) : e);
+                } finally {
+                    call.release(hedge);
+                }
+            }).start();
+        }, hedgeDelay);
+
+        try {
+            ImResponse imResponse;
+            try {
+                imResponse = executeGuarded(imRequest, snapshot, true, primary);
+            } catch (IOException e) {
+                hedgeTimeout.cancel();
+                //对冲请求已发出时以对冲请求的结果为准
+                if (!hedgeState.compareAndSet(0, 2) && hedgeState.get() == 1) {
+                    try {
+                        return awaitResult(hedgeResult, call);
+                    } catch (IOException hedgeFailure) {
+                        //对冲请求同样失败时抛出首个请求的异常
+                    }
+                }
+                call.setResponseCode(primary.getResponseCode());
+                throw primary.translate(e);
+            }
+            hedgeTimeout.cancel();
+            if (hedgeState.compareAndSet(0, 2) || hedgeState.get() == 2 || winner.complete(imResponse)) {
+                hedge.cancel();
+                recordLatency(hedgePolicy, host, imResponse, startTime);
+                return imResponse;
+            }
+            //对冲请求先返回
+            return winner.join();
+        } finally {
+            call.release(primary);
+            if (hedgeState.get() != 1) {
+                call.release(hedge);
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 执行一次请求，释放端点、熔断器及并发许可并记录网络请求的结果（网络异常、5xx响应及stale-if-error返回的过期响应为失败）；
+     * 4xx响应时HttpURLConnection同样抛出异常，抛出异常时按已收到的响应状态码判断，未收到响应或5xx才是失败
+     *
+     * @param imRequest  ImRequest会话请求数据
+     * @param snapshot   会话状态快照，可以为null
+     * @param allowStale 是否允许返回过期的缓存响应
+     * @param call       请求执行状态
+     * @return ImResponse会话响应对象
+     */
+    private static ImResponse executeGuarded(ImRequest imRequest, ImSessionSnapshot snapshot, boolean allowStale, ImCall call)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+        boolean failed = true;
+        //每次尝试重新记录状态码，之前尝试的状态码不影响本次失败的判断及重试
+        call.setResponseCode(0);
+        try {
+            ImResponse imResponse = execute(imRequest, snapshot, allowStale, call);
+            failed = imResponse.getResponseCode() >= 500 || imResponse.getCacheStatus() == ImCacheStatus.STALE;
+            return imResponse;
+        } catch (IOException e) {
+            int responseCode = call.getResponseCode();
+            failed = responseCode == 0 || responseCode >= 500;
+            throw e;
+        } finally {
+            call.endAttempt(failed);
+        }
+    }
+
+    /**
+     * 【内部方法】 取得请求所属隔离舱的许可，整个请求结束时释放
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param call      请求执行状态
+     * @throws IOException 隔离舱已满、等待时被中断或已超过截止时间
+     */
+    private static void acquireBulkhead(ImRequest imRequest, ImCall call) throws IOException {
+        ImBulkhead bulkhead = imRequest.getBulkhead();
+        if (bulkhead != null) {
+            call.check();
+            call.holdBulkhead(bulkhead.acquire(call.remainingMillis(), imRequest.getPriority()));
+        }
+    }
+
+    /**
+     * 【内部方法】 等待全局、主机及会话的速率限制放行，异步请求已预留时首次网络请求不再等待；
+     * 端点组的异步请求只预留了全局及会话的放行时间，仍按选中的端点等待主机的速率限制
+     *
+     * @param url  请求URL
+     * @param call 请求执行状态
+     * @throws RateLimitException 需要等待的时间过长
+     * @throws IOException        等待时被中断、请求已被取消或已超过截止时间
+     */
+    private static void awaitRate(URL url, ImCall call) throws IOException {
+        String host = getHostKey(url);
+        ImRateLimiter[] rateLimiters = getRateLimiters(url, host, call.getSessionRateLimiter());
+        if (call.takeRateReserved()) {
+            //端点组的异步请求只预留了全局及会话的放行时间，主机的速率限制按选中的端点等待
+            if (!call.hasEndpoint()) {
+                return;
+            }
+            rateLimiters = new ImRateLimiter[]{rateLimiters[1]};
+        }
+        long delay = reserveRate(host, rateLimiters, call.remainingMillis());
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limit.");
+            }
+            call.check();
+        }
+    }
+
+    /**
+     * 【内部方法】 为异步请求预留速率限制的放行时间
+     *
+     * @param imRequest          ImRequest会话请求数据
+     * @param sessionRateLimiter 会话的速率限制，可以为null
+     * @return 需要等待的时间（毫秒）
+     * @throws IOException 需要等待的时间过长或URL无效
+     */
+    private static long reserveRate(ImRequest imRequest, ImRateLimiter sessionRateLimiter) throws IOException {
+        if (RATE_LIMITER == null && HOST_RATE_LIMITERS.isEmpty() && sessionRateLimiter == null) {
+            return 0;
+        }
+        long remaining = imRequest.getCallTimeout() > 0 ? imRequest.getCallTimeout() : Long.MAX_VALUE;
+        URL url = new URL(imRequest.getUrl());
+        String host = getHostKey(url);
+        ImRateLimiter[] rateLimiters = getRateLimiters(url, host, sessionRateLimiter);
+        //主机名为端点组的逻辑名称时尚未选择端点，主机的速率限制在选择端点后按实际端点等待
+        if (!ENDPOINT_GROUPS.isEmpty() && ENDPOINT_GROUPS.containsKey(url.getHost().toLowerCase())) {
+            rateLimiters[1] = null;
+        }
+        return reserveRate(host, rateLimiters, remaining);
+    }
+
+    /**
+     * 【内部方法】 在给定的速率限制上各预留一个放行时间，返回其中最长的等待时间
+     */
+    private static long reserveRate(String host, ImRateLimiter[] rateLimiters, long remainingMillis) throws RateLimitException {
+        long delay = 0;
+        for (ImRateLimiter rateLimiter : rateLimiters) {
+            if (rateLimiter != null) {
+                delay = Math.max(delay, rateLimiter.reserve(host, remainingMillis));
+            }
+        }
+        return delay;
+    }
 
-        //非空判断
-        if (imRequest == null || imSession == null) {
-            throw new NullPointerException();
+    /**
+     * 【内部方法】 收到429时降低全局、主机及会话的速率
+     */
+    private static void penalizeRate(URL url, ImCall call, String retryAfter) {
+        for (ImRateLimiter rateLimiter : getRateLimiters(url, getHostKey(url), call.getSessionRateLimiter())) {
+            if (rateLimiter != null) {
+                rateLimiter.penalize(retryAfter);
+            }
         }
+    }
 
-        //如果是异步执行
-        if (imRequest.isAsync()) {
-            //异步执行
-            THREAD_FACTORY.newThread(() -> {
-                //获得回调接口
-                ImHttpClientCallback httpClientCallback = imRequest.getCallback();
-                ImSessionCallback sessionCallback = imSession.getCallback();
-                try {
-                    //具体执行
-                    ImResponse imResponse = execute(imRequest, imSession);
-                    //如果已经设置回调接口，执行回调
-                    if (httpClientCallback != null) {
-                        httpClientCallback.onSuccess(imRequest, imResponse);
-                        httpClientCallback.onComplete(imRequest, imResponse);
-                    }
-                } catch (ContentTypeException | DataTypeException | MethodException | IgnoreSSLException | QueryParamsException | IOException e) {
-                    //如果已经设置回调接口，执行回调
-                    if (httpClientCallback != null) {
-                        httpClientCallback.onError(imRequest, e);
-                        httpClientCallback.onComplete(imRequest, null);
-                    }
-                } catch (AuthenticationException e) {
-                    if (sessionCallback != null) {
-                        sessionCallback.onError(imSession, imRequest, e);
-                    }
-                }
-            }).start();
-            return null;
-        } else {    //如果不是异步执行（同步执行）
-            return execute(imRequest, imSession);
+    /**
+     * 【内部方法】 获得请求适用的全局、主机及会话速率限制，未设置的为null
+     */
+    private static ImRateLimiter[] getRateLimiters(URL url, String host, ImRateLimiter sessionRateLimiter) {
+        ImRateLimiter hostRateLimiter = null;
+        if (!HOST_RATE_LIMITERS.isEmpty()) {
+            hostRateLimiter = HOST_RATE_LIMITERS.get(host.toLowerCase());
+            if (hostRateLimiter == null) {
+                hostRateLimiter = HOST_RATE_LIMITERS.get(url.getHost().toLowerCase());
+            }
         }
+        return new ImRateLimiter[]{RATE_LIMITER, hostRateLimiter, sessionRateLimiter};
     }
 
     /**
-     * 发起请求
-     * <p>
-     * <font color="#666666">Send Request</font>
-     * <p>
-     * 请注意，如果在ImRequest中指示为异步请求，那么此时返回的ImResponse将会是空值，需要在ImRequest中另行实现ImHttpCallback接口才能获得返回值
-     * <p>
-     * <font color="#666666">Note that if the asynchronous request is indicated in the ImRequest, then the ImResponse returned at this time will be null,
-     * and the ImHttpCallback interface needs to be implemented separately in the ImRequest to get the return value.</font>
-     *
-     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
-     * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
-     * @throws ContentTypeException 内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
-     * @throws DataTypeException    数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
-     * @throws MethodException      方法（Method）使用相关异常/警告 <br/> <font color="#666666">Method uses related exceptions/warnings</font>
-     * @throws IgnoreSSLException   忽略SSL相关异常/警告 <br/> <font color="#666666">Ignore SSL related exceptions/warnings</font>
-     * @throws QueryParamsException 查询参数（QueryParams）相关异常/警告类 <br/> <font color="#666666">Query parameters (QueryParams) related exception/warning</font>
-     * @throws IOException          IO异常 <br/> <font color="#666666">IO exception</font>
-     * @see ImRequest
+     * 【内部方法】 获得主机的键（host:port）
      */
-    public static ImResponse send(ImRequest imRequest)
-            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
+    private static String getHostKey(URL url) {
+        return url.getHost() + ":" + (url.getPort() != -1 ? url.getPort() : url.getDefaultPort());
+    }
 
-        //非空判断
-        if (imRequest == null) {
-            throw new NullPointerException();
+    /**
+     * 【内部方法】 记录主机的请求延迟，缓存返回的响应不计入
+     */
+    private static void recordLatency(ImHedgePolicy hedgePolicy, String host, ImResponse imResponse, long startTime) {
+        if (imResponse.getCacheStatus() != ImCacheStatus.HIT && imResponse.getCacheStatus() != ImCacheStatus.STALE) {
+            hedgePolicy.record(host, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
         }
+    }
 
-        //如果是异步执行
-        if (imRequest.isAsync()) {
-            //异步执行
-            THREAD_FACTORY.newThread(() -> {
-                ImHttpClientCallback callback = imRequest.getCallback();
-                try {
-                    //具体执行
-                    ImResponse imResponse = execute(imRequest);
-                    //如果已经设置回调接口，执行回调
-                    if (callback != null) {
-                        callback.onSuccess(imRequest, imResponse);
-                        callback.onComplete(imRequest, imResponse);
-                    }
-                } catch (ContentTypeException | DataTypeException | MethodException | IgnoreSSLException | QueryParamsException | IOException e) {
-                    if (callback != null) {
-                        callback.onError(imRequest, e);
-                        callback.onComplete(imRequest, null);
-                    }
-                }
-            }).start();
+    /**
+     * 【内部方法】 获得合并请求的键，不可合并时返回null
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param snapshot  会话状态快照，可以为null
+     * @return 合并请求的键
+     * @throws UnsupportedEncodingException 编码不支持
+     */
+    private static String getCoalesceKey(ImRequest imRequest, ImSessionSnapshot snapshot) throws UnsupportedEncodingException {
+        if (!imRequest.isCoalesce() || imRequest.getInputData() != null
+                || (imRequest.getMethod() != ImMethod.GET && imRequest.getMethod() != ImMethod.HEAD
+                && imRequest.getMethod() != ImMethod.OPTIONS)) {
             return null;
-        } else {    //如果不是异步执行（同步执行）
-            return execute(imRequest);
         }
+        StringBuilder key = new StringBuilder(128);
+        key.append(imRequest.getMethod()).append(' ').append(imRequest.getUrl());
+        if (imRequest.getQueryParams() != null) {
+            key.append('?').append(getQueryParamsToString(imRequest));
+        }
+        //会话、Authorization及Cookie始终参与区分，只合并同一身份的请求，
+        //不同会话之间也不会共用带Set-Cookie的响应
+        key.append('\n').append(snapshot != null ? snapshot.getSessionIdentity() : 0);
+        String authorization = getHeaderIgnoreCase(imRequest, snapshot, "Authorization");
+        key.append('\n').append(authorization != null ? authorization : "");
+        key.append('\n').append(snapshot != null ? snapshot.getCookieHeader() : "");
+        for (String cookieName : new TreeSet<String>(imRequest.getCookieNames())) {
+            key.append(';').append(cookieName).append('=').append(imRequest.getCookieData(cookieName));
+        }
+        for (String headerName : imRequest.getCoalesceHeaders()) {
+            String value = imRequest.getHeaderValue(headerName);
+            if (value == null && snapshot != null) {
+                value = snapshot.getHeaderValue(headerName);
+            }
+            key.append('\n').append(headerName).append(':').append(value);
+        }
+        return key.toString();
     }
 
     /**
-     * 【内部方法】 发起会话请求
+     * 【内部方法】 获得请求实际发送的Header值（键不区分大小写），请求自身的Header优先于会话的Header
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param snapshot  会话状态快照，可以为null
+     * @param name      Header键
+     * @return Header值，未设置时为null
+     */
+    private static String getHeaderIgnoreCase(ImRequest imRequest, ImSessionSnapshot snapshot, String name) {
+        for (String headerName : imRequest.getHeaderNames()) {
+            if (headerName.equalsIgnoreCase(name)) {
+                return imRequest.getHeaderValue(headerName);
+            }
+        }
+        if (snapshot != null) {
+            for (String headerName : snapshot.getHeaderNames()) {
+                if (headerName.equalsIgnoreCase(name)) {
+                    return snapshot.getHeaderValue(headerName);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 【内部方法】 等待其它线程执行的请求结果（合并请求、对冲请求），并抛出相同的异常；合并请求的执行者因自身取消或超时失败时返回null
+     */
+    private static ImResponse awaitResult(CompletableFuture<ImResponse> leader, ImCall call)
+            throws IgnoreSSLException, IOException {
+        try {
+            long remaining = call.remainingMillis();
+            return remaining == Long.MAX_VALUE ? leader.get() : leader.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SocketTimeoutException("Call timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a coalesced request.");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof IgnoreSSLException) {
+                throw (IgnoreSSLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 【内部方法】 发起会话请求，请求自身的Header和Cookie叠加在会话状态快照之上
      *
      * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param snapshot  会话状态快照，可以为null <br/> <font color="#666666">Session state snapshot, may be null</font>
+     * @param allowStale 是否允许返回过期的缓存响应（后台刷新缓存时为false） <br/> <font color="#666666">Whether stale cached responses may be returned (false when refreshing the cache in the background)</font>
+     * @param call      请求执行状态 <br/> <font color="#666666">Request execution state</font>
      * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
      * @throws ContentTypeException 内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
      * @throws DataTypeException    数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
@@ -193,7 +1276,7 @@ public final class ImHttpClient {
      * @throws QueryParamsException 查询参数（QueryParams）相关异常/警告类 <br/> <font color="#666666">Query parameters (QueryParams) related exception/warning</font>
      * @throws IOException          IO异常 <br/> <font color="#666666">IO exception</font>
      */
-    private static ImResponse execute(ImRequest imRequest)
+    private static ImResponse execute(ImRequest imRequest, ImSessionSnapshot snapshot, boolean allowStale, ImCall call)
             throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, IOException {
 
         //初始化分隔符（如果为文件上传(multipart/form-data)模式的时候）
@@ -312,6 +1395,70 @@ public final class ImHttpClient {
             }
         }
 
+        //开始处理Cookie，会话的Cookie头已预先序列化
+        String sessionCookieStr = snapshot != null ? snapshot.getCookieHeader() : "";
+        String requestCookieStr = sessionCookieStr;
+
+        //如果存在Cookie定义，则设置Cookie值，并覆盖会话中的同名Cookie
+        if (imRequest.getCookieSize() > 0 || imRequest.isTomcatLowVersionCompatible()) {
+            StringBuilder cookieStrs = new StringBuilder(sessionCookieStr.length() + 64);
+            if (!sessionCookieStr.isEmpty()) {
+                for (String pair : sessionCookieStr.split("; ")) {
+                    int index = pair.indexOf('=');
+                    if (imRequest.getCookieData(index < 0 ? pair : pair.substring(0, index)) == null) {
+                        cookieStrs.append(pair).append(";");
+                    }
+                }
+            }
+            Set<String> cookieNames = imRequest.getCookieNames();
+            for (String cookieName : cookieNames) {
+                cookieStrs.append(cookieName + "=" + imRequest.getCookieData(cookieName));
+                cookieStrs.append(";");
+            }
+
+            //如果需要Tomcat低版本兼容，则需要添加必须的Cookie
+            if (imRequest.isTomcatLowVersionCompatible()) {
+                String jsessionId = imRequest.getCookieData("JSESSIONID");
+                if (jsessionId == null && snapshot != null) {
+                    jsessionId = snapshot.getCookieData("JSESSIONID");
+                }
+                if (jsessionId == null || "".equals(jsessionId.trim())) {
+                    cookieStrs.append("JSESSIONID=" + UUID.randomUUID().toString().replace("-", "").toUpperCase());
+                    cookieStrs.append(";");
+                }
+            }
+
+            requestCookieStr = cookieStrs.length() > 1 ? cookieStrs.substring(0, cookieStrs.length() - 1) : "";
+        }
+
+        //如果可以使用响应缓存，新鲜的缓存响应直接返回
+        ImResponseCache responseCache = RESPONSE_CACHE;
+        boolean cacheable = responseCache != null && imRequest.isUseCache()
+                && (imRequest.getMethod() == ImMethod.GET || imRequest.getMethod() == ImMethod.HEAD);
+        Map<String, String> requestHeaders = null;
+        ImResponseCache.Entry cachedEntry = null;
+        if (cacheable) {
+            requestHeaders = getRequestHeaders(imRequest, snapshot, requestCookieStr);
+            cachedEntry = responseCache.lookup(imRequest.getMethod(), urlStr, requestHeaders);
+            ImResponse cachedResponse = responseCache.get(cachedEntry, requestHeaders, imRequest.getCharset());
+            //过期但仍在stale-while-revalidate窗口内时，直接返回过期响应，并由一个后台请求刷新缓存
+            if (cachedResponse == null && allowStale) {
+                cachedResponse = responseCache.getStaleWhileRevalidate(cachedEntry, requestHeaders, imRequest.getCharset());
+                if (cachedResponse != null) {
+                    refreshInBackground(responseCache, imRequest, snapshot, urlStr);
+                }
+            }
+            if (cachedResponse != null) {
+                //还原系统代理配置
+                System.setProperty("http.proxyHost", system_http_proxyHost);
+                System.setProperty("https.proxyHost", system_https_proxyHost);
+                System.setProperty("http.proxyPort", system_http_proxyPort);
+                System.setProperty("https.proxyPort", system_https_proxyPort);
+                return cachedResponse;
+            }
+        }
+        long requestTime = System.currentTimeMillis();
+
         //初始化对象
         ImResponse imResponse = new ImResponse();
 
@@ -320,8 +1467,63 @@ public final class ImHttpClient {
 
         //初始化JDK HTTP对象
         URL url = new URL(urlStr);
+
+        //主机名为端点组的逻辑名称时，选择一个端点并改写URL（缓存及合并仍使用逻辑URL）
+        if (!ENDPOINT_GROUPS.isEmpty()) {
+            ImEndpointGroup endpointGroup = ENDPOINT_GROUPS.get(url.getHost().toLowerCase());
+            if (endpointGroup != null) {
+                ImEndpoint endpoint = endpointGroup.select(imRequest, url);
+                call.holdEndpoint(endpoint);
+                url = endpoint.resolve(url);
+            }
+        }
+
+        //超过速率限制、熔断器打开或超过并发上限时不建立连接，立即失败，仍在stale-if-error窗口内时返回过期的缓存响应
+        IOException rejected = null;
+        try {
+            awaitRate(url, call);
+        } catch (RateLimitException e) {
+            rejected = e;
+        }
+        ImCircuitBreakerRegistry circuitBreakers = CIRCUIT_BREAKERS;
+        ImConcurrencyLimiter concurrencyLimiter = CONCURRENCY_LIMITER;
+        if (rejected != null || circuitBreakers != null || concurrencyLimiter != null) {
+            if (rejected == null && circuitBreakers != null) {
+                ImCircuitBreaker circuitBreaker = circuitBreakers.getCircuitBreaker(url, imRequest.getRoute());
+                if (circuitBreaker.tryAcquire()) {
+                    call.holdCircuitBreaker(circuitBreaker);
+                } else {
+                    rejected = new CircuitBreakerOpenException(circuitBreaker.getName());
+                }
+            }
+            if (rejected == null && concurrencyLimiter != null) {
+                try {
+                    call.holdConcurrencyLimit(concurrencyLimiter.acquire(url, call.remainingMillis(), imRequest.getPriority()));
+                } catch (IOException e) {
+                    rejected = e;
+                }
+            }
+            if (rejected != null) {
+                ImResponse staleResponse = cacheable && allowStale
+                        ? responseCache.getStaleIfError(cachedEntry, imRequest.getCharset()) : null;
+                //还原系统代理配置
+                System.setProperty("http.proxyHost", system_http_proxyHost);
+                System.setProperty("https.proxyHost", system_https_proxyHost);
+                System.setProperty("http.proxyPort", system_http_proxyPort);
+                System.setProperty("https.proxyPort", system_https_proxyPort);
+                if (staleResponse != null) {
+                    return staleResponse;
+                }
+                throw rejected;
+            }
+        }
         //获得HttpURLConnection
         HttpURLConnection httpConnection = (HttpURLConnection) url.openConnection();
+        //绑定连接，超过整个请求的超时时间时由定时器中止连接
+        call.attach(httpConnection);
+        //设置连接及读取超时，不超过整个请求的剩余时间
+        httpConnection.setConnectTimeout(call.timeout(imRequest.getConnectTimeout()));
+        httpConnection.setReadTimeout(call.timeout(imRequest.getReadTimeout()));
 
         //获得回调接口
         ImHttpClientCallback callback = imRequest.getCallback();
@@ -364,6 +1566,13 @@ public final class ImHttpClient {
             httpConnection.setRequestProperty("Content-Type", imRequest.getContentTypeStr());
         }
 
+        //如果存在会话Header定义，则先设置会话Header值，再由请求自身的Header覆盖
+        if (snapshot != null) {
+            for (Map.Entry<String, String> header : snapshot.getHeaders().entrySet()) {
+                httpConnection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
         //如果存在Header定义，则设置Header值
         if (imRequest.getHeaderSize() > 0) {
             Set<String> headerNames = imRequest.getHeaderNames();
@@ -372,29 +1581,22 @@ public final class ImHttpClient {
             }
         }
 
-        //开始处理Cookie
-        StringBuilder cookieStrs = new StringBuilder();
-
-        //如果存在Cookie定义，则设置Cookie值
-        if (imRequest.getCookieSize() > 0) {
-            Set<String> cookieNames = imRequest.getCookieNames();
-            for (String cookieName : cookieNames) {
-                cookieStrs.append(cookieName + "=" + imRequest.getCookieData(cookieName));
-                cookieStrs.append(";");
-            }
+        //设置Cookie
+        if (requestCookieStr.length() > 0) {
+            httpConnection.setRequestProperty("Cookie", requestCookieStr);
         }
 
-        //如果需要Tomcat低版本兼容，则需要添加必须的Cookie
-        if (imRequest.isTomcatLowVersionCompatible()) {
-            if (imRequest.getCookieData("JSESSIONID") == null || "".equals(imRequest.getCookieData("JSESSIONID").trim())) {
-                cookieStrs.append("JSESSIONID=" + UUID.randomUUID().toString().replace("-", "").toUpperCase());
-                cookieStrs.append(";");
+        //如果缓存的响应已过期但带有验证器，发送条件请求（请求自身已设置条件时不处理）
+        boolean conditional = false;
+        if (cachedEntry != null && cachedEntry.hasValidators()
+                && !requestHeaders.containsKey("If-None-Match") && !requestHeaders.containsKey("If-Modified-Since")) {
+            if (cachedEntry.etag != null) {
+                httpConnection.setRequestProperty("If-None-Match", cachedEntry.etag);
             }
-        }
-
-        //设置Cookie
-        if (cookieStrs.length() > 1) {
-            httpConnection.setRequestProperty("Cookie", cookieStrs.substring(0, cookieStrs.length() - 1));
+            if (cachedEntry.lastModified != null) {
+                httpConnection.setRequestProperty("If-Modified-Since", cachedEntry.lastModified);
+            }
+            conditional = true;
         }
 
         //如果存在InputData值，则设置InputData值
@@ -418,7 +1620,7 @@ public final class ImHttpClient {
                     //确认不在URL中传值
                     if (!imRequest.isForceInUrlSendData()) {
                         //获取写入流
-                        OutputStream outputStream = httpConnection.getOutputStream();
+                        OutputStream outputStream = call.guardWrite(httpConnection.getOutputStream(), imRequest.getWriteTimeout());
                         outputStream.write(inputData.getBytes(Charset.forName(imRequest.getCharset())));
                         //关闭写入流
                         outputStream.flush();
@@ -434,7 +1636,7 @@ public final class ImHttpClient {
                     //确认不在URL中传值
                     if (!imRequest.isForceInUrlSendData()) {
                         //获取写入流
-                        OutputStream outputStream = httpConnection.getOutputStream();
+                        OutputStream outputStream = call.guardWrite(httpConnection.getOutputStream(), imRequest.getWriteTimeout());
 
                         // 正文，正文内容其实跟get的URL中 '? '后的参数字符串一致
                         // String content = "字段名=" + URLEncoder.encode("字符串值", "编码");
@@ -453,7 +1655,7 @@ public final class ImHttpClient {
 
                 //获取数据写入流
                 //DataOutputStream.writeBytes将字符串中的16位的unicode字符以8位的字符形式写到流里面
-                DataOutputStream dataOutputStream = new DataOutputStream(httpConnection.getOutputStream());
+                DataOutputStream dataOutputStream = new DataOutputStream(call.guardWrite(httpConnection.getOutputStream(), imRequest.getWriteTimeout()));
 
                 //分隔符头部
                 String file_header = PREFIX + boundary + WRAP;
@@ -494,6 +1696,8 @@ public final class ImHttpClient {
 
                     //获得文件数据
                     ImMultipartFormData imMultipartFormData = imRequest.getInputData(ImMultipartFormData.class);
+                    //从第一个数据开始读取，重试时可以重新发送
+                    imMultipartFormData.reset();
 
                     //写入分隔符头部
                     dataOutputStream.writeBytes(file_header);
@@ -572,115 +1776,77 @@ public final class ImHttpClient {
             }
         }
 
-        //返回 Response Code
-        imResponse.setResponseCode(httpConnection.getResponseCode());
-        //返回 Response Message
-        imResponse.setResponseMessage(httpConnection.getResponseMessage());
-
         //获得返回的bytes
-        byte[] out_bytes = toByteArray(httpConnection.getInputStream(), imRequest.getBytesLength());
-
-        //创建输入流
-        BufferedReader responseBuffer = new BufferedReader(
-                new InputStreamReader(new ByteArrayInputStream(out_bytes), imRequest.getCharset()));
-
-        //初始化StringBuffer
-        StringBuffer output = new StringBuffer();
-        //初始化String
-        String output_line;
-
-        //从输入流获得数据
-        while ((output_line = responseBuffer.readLine()) != null) {
-            output.append(output_line);
-            output.append(System.getProperty("line.separator"));
+        byte[] out_bytes;
+        try {
+            //返回 Response Code
+            imResponse.setResponseCode(httpConnection.getResponseCode());
+            call.setResponseCode(imResponse.getResponseCode());
+            //服务器返回429（或带Retry-After的503）时降低速率
+            if (imResponse.getResponseCode() == 429
+                    || (imResponse.getResponseCode() == 503 && httpConnection.getHeaderField("Retry-After") != null)) {
+                penalizeRate(url, call, httpConnection.getHeaderField("Retry-After"));
+            }
+            //返回 Response Message
+            imResponse.setResponseMessage(httpConnection.getResponseMessage());
+
+            out_bytes = toByteArray(httpConnection.getInputStream(), imRequest.getBytesLength());
+        } catch (IOException e) {
+            //网络异常、超时或服务器返回5xx时，如果仍在stale-if-error窗口内，返回过期的缓存响应
+            ImResponse staleResponse = null;
+            if (cacheable && allowStale && (imResponse.getResponseCode() == 0 || imResponse.getResponseCode() >= 500)) {
+                staleResponse = responseCache.getStaleIfError(cachedEntry, imRequest.getCharset());
+            }
+            if (staleResponse == null) {
+                throw e;
+            }
+            httpConnection.disconnect();
+            //还原系统代理配置
+            System.setProperty("http.proxyHost", system_http_proxyHost);
+            System.setProperty("https.proxyHost", system_https_proxyHost);
+            System.setProperty("http.proxyPort", system_http_proxyPort);
+            System.setProperty("https.proxyPort", system_https_proxyPort);
+            return staleResponse;
         }
 
         //关闭HttpConnection
         httpConnection.disconnect();
 
         //设置返回Response的StringContent
-        imResponse.setStringContent(output.toString());
+        imResponse.setStringContent(toStringContent(out_bytes, imRequest.getCharset()));
         // imResponse.setBytesContent(output.toString().getBytes(Charset.forName(httpUtilRequest.getCharset())));
 
         //设置返回Response的BytesContent
         imResponse.setBytesContent(out_bytes);
 
-        //获取Cookie
-        String cookieStr = "";
-
         //获得Header和Cookie
         Map<String, List<String>> headers = httpConnection.getHeaderFields();
-        //获得Header键数据
-        Set<String> headerNames = headers.keySet();
-        //遍历Header
-        for (Iterator<String> iterator = headerNames.iterator(); iterator.hasNext(); ) {
-            //获得Header键值
-            String headerName = iterator.next();
-            //处理Cookie数据
-            if ("Set-Cookie".equals(headerName)) {
-                //获得Cookie数据
-                List<String> headerData = headers.get(headerName);
-                //初始化StringBuilder
-                StringBuilder builder = new StringBuilder();
-                //遍历Cookie数据
-                for (String data : headerData) {
-                    //拼接Cookie属性字符串
-                    builder.append(data).append(",");
-                    //分割数据
-                    String[] strs_arry = data.split("; ");
-                    //初始化Cookie属性对象
-                    ImResponseCookie imResponseCookie = new ImResponseCookie();
-                    for (String str : strs_arry) {
-                        //构建数组，以存放Cookie分割信息
-                        String[] str_arry = new String[2];
-                        //获得需要分割的索引
-                        int index = str.indexOf("=");
-                        //如果没有=号，说此为标记符，此时只需要获得键值
-                        if (index < 0) {
-                            index = str.length();
-                        }
-                        //设置Cookie分割后的信息
-                        str_arry[0] = str.substring(0, index);
-                        //判断是否有=号
-                        if (str.indexOf("=") > 0) {
-                            str_arry[1] = str.substring(index + 1);
-                        } else {
-                            //如果没有=号，说此为标记符
-                            str_arry[1] = "null";
-                        }
-                        //开始处理Cookie属性
-                        if ("domain".equalsIgnoreCase(str_arry[0])) {   //处理Cookie的domain属性
-                            imResponseCookie.setDomain(str_arry[1]);
-                        } else if ("path".equalsIgnoreCase(str_arry[0])) {  //处理Cookie的path属性
-                            imResponseCookie.setPath(str_arry[1]);
-                        } else if ("expires".equalsIgnoreCase(str_arry[0])) {   //处理Cookie的expires属性
-                            imResponseCookie.setExpires(str_arry[1]);
-                        } else if ("max-age".equalsIgnoreCase(str_arry[0])) {   //处理Cookie的max-age属性
-                            imResponseCookie.setMaxAge(str_arry[1]);
-                        } else if ("secure".equalsIgnoreCase(str_arry[0])) {    //处理Cookie的secure属性
-                            imResponseCookie.setSecure(true);
-                        } else if ("httponly".equalsIgnoreCase(str_arry[0])) {  //处理Cookie的httpOnly属性
-                            imResponseCookie.setHttpOnly(true);
-                        } else {
-                            //处理Cookie的Kay-Value属性
-                            if (imResponseCookie.getName() == null) {
-                                imResponseCookie.setName(str_arry[0]);
-                                imResponseCookie.setValue(str_arry.length > 2 ? "null" : str_arry[1]);
-                                imResponse.addCookie(str_arry[0], str_arry.length > 2 ? "null" : str_arry[1]);
-                            }
-                        }
-                    }
-                    //添加到Cookie属性数据
-                    imResponse.addCookieProperty(imResponseCookie);
-                }
-                //设置Cookie完整字符串数据
-                cookieStr = builder.substring(0, builder.length() - 1).toString();
+        //获得Set-Cookie数据，Cookie在首次读取时才解析
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if ("Set-Cookie".equalsIgnoreCase(header.getKey())) {
+                imResponse.setSetCookieHeaders(header.getValue());
             }
         }
 
         //返回Header和Cookie
         imResponse.setFullHeaders(headers);
-        imResponse.setFullCookie(cookieStr);
+        imResponse.setFullCookie("");
+
+        //保存可缓存的响应，非安全方法的成功响应使该URL的缓存失效
+        if (cacheable) {
+            if (conditional && imResponse.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                //304时使用缓存的响应内容
+                imResponse = responseCache.revalidate(imRequest.getMethod(), urlStr, requestHeaders, cachedEntry,
+                        imResponse, requestTime, System.currentTimeMillis(), imRequest.getCharset());
+            } else {
+                responseCache.put(imRequest.getMethod(), urlStr, requestHeaders, imResponse, requestTime, System.currentTimeMillis());
+                imResponse.setCacheStatus(ImCacheStatus.MISS);
+            }
+        } else if (responseCache != null && imResponse.getResponseCode() < 400
+                && imRequest.getMethod() != ImMethod.GET && imRequest.getMethod() != ImMethod.HEAD
+                && imRequest.getMethod() != ImMethod.OPTIONS) {
+            responseCache.invalidate(urlStr);
+        }
 
         //还原系统代理配置
         System.setProperty("http.proxyHost", system_http_proxyHost);
@@ -694,7 +1860,10 @@ public final class ImHttpClient {
     /**
      * 【内部方法】 发起一个带会话状态的请求
      *
-     * @param imRequest ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param imRequest    ImRequest会话请求数据 <br/> <font color="#666666">ImRequest Request data</font>
+     * @param imSession    ImSession会话状态数据 <br/> <font color="#666666">ImSession session state data</font>
+     * @param rateReserved 首次网络请求的放行时间是否已预留 <br/> <font color="#666666">Whether the slot of the first attempt is already reserved</font>
+     * @param future       取消时一同取消请求的结果，可以为null <br/> <font color="#666666">Result whose cancellation cancels the request, may be null</font>
      * @return ImResponse会话响应对象 <br/> <font color="#666666">ImResponse Response object</font>
      * @throws ContentTypeException    内容类型（ContentType）使用相关异常/警告 <br/> <font color="#666666">Content Type (ContentType) uses related exceptions/warnings</font>
      * @throws DataTypeException       数据类型使用相关异常/警告 <br/> <font color="#666666">Data type usage related exceptions/warnings</font>
@@ -704,89 +1873,149 @@ public final class ImHttpClient {
      * @throws AuthenticationException 身份认证相关异常/警告类 <br/> <font color="#666666">Authentication related exception/warning</font>
      * @throws IOException             IO异常 <br/> <font color="#666666">IO exception</font>
      */
-    private static ImResponse execute(ImRequest imRequest, ImSession imSession)
+    private static ImResponse execute(ImRequest imRequest, ImSession imSession, boolean rateReserved, ImCallFuture future)
             throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, AuthenticationException, IOException {
 
-        //处理Header数据和状态
-        if (imSession.getHeaders().size() > 0) {
-            imRequest.setHeader(imSession.getHeaders());
-        }
-        //处理Cookie数据和状态
-        if (imSession.getCookies().size() > 0) {
-            imRequest.setCookie(imSession.getCookies());
+        //获得Cookie匹配使用的URL
+        URL cookieUrl = new URL(imRequest.getUrl());
+
+        //请求结束前会话保持使用中，会话注册表不会将其压缩，响应中的Cookie不会丢失
+        imSession.pin();
+        try {
+            return execute(imRequest, imSession, cookieUrl, rateReserved, future);
+        } finally {
+            imSession.unpin();
         }
+    }
 
-        //获得回调接口
-        ImSessionCallback callback = imSession.getCallback();
+    /**
+     * 【内部方法】 使用会话执行请求，并保存响应中的Cookie
+     */
+    private static ImResponse execute(ImRequest imRequest, ImSession imSession, URL cookieUrl, boolean rateReserved, ImCallFuture future)
+            throws ContentTypeException, DataTypeException, MethodException, IgnoreSSLException, QueryParamsException, AuthenticationException, IOException {
 
-        //如果已经设置回调接口，执行回调
-        if (callback != null) {
-            //获得是否正在执行回调中
-            if (!imSession.ExecCallbackNow) {
-                //是否需要身份认证
-                if (imSession.isNeedAuthentication()) {
-                    //是否需要自动取得身份认证
-                    if (imSession.isAutoAuthentication()) {
-                        //获得最大尝试次数
-                        int count = imSession.getAutoAuthenticationTryCount();
-                        //设置为正在执行回调中
-                        imSession.ExecCallbackNow = true;
-                        //获得是否取得身份认证
-                        boolean isAuthentication = callback.isAuthentication(imSession, imRequest);
-                        //循环取得身份认证
-                        while (!isAuthentication && count > 0) {
-                            //设置为已结束执行回调
-                            imSession.ExecCallbackNow = false;
-                            //设置为正在执行回调中
-                            imSession.ExecCallbackNow = true;
-                            //开始执行取得身份认证
-                            callback.doAuthentication(imSession, imRequest);
-                            //设置为已结束执行回调
-                            imSession.ExecCallbackNow = false;
-                            //尝试次数减少
-                            count--;
-                            imSession.ExecCallbackNow = true;
-                            //获得是否取得身份认证
-                            isAuthentication = callback.isAuthentication(imSession, imRequest);
-                            //如果已经取得身份认证，则设置为已结束执行回调
-                            if (isAuthentication) {
-                                imSession.ExecCallbackNow = false;
-                            }
-                        }
-                        //是否取得身份认证，此时如果还未取得身份认证，则抛出异常
-                        if (!isAuthentication) {
-                            throw new AuthenticationException(AuthenticationException.NotHaveAuthentication);
-                        }
-                    } else {
-                        throw new AuthenticationException(AuthenticationException.NotHaveAuthentication);
-                    }
+        //整个请求的超时时间包括等待身份认证的时间
+        ImCall call = ImCall.begin(imRequest);
+        if (future != null) {
+            future.bind(call);
+        }
+        call.setSessionRateLimiter(imSession.getRateLimiter());
+        if (rateReserved) {
+            call.setRateReserved();
+        }
+        ImResponse imResponse;
+        try {
+            acquireBulkhead(imRequest, call);
+
+            //检查身份认证状态，多个请求同时需要身份认证时只执行一次，最多等待至整个请求的截止时间
+            long remaining = call.remainingMillis();
+            try {
+                imSession.checkAuthentication(imRequest, Math.min(imSession.getAuthenticationTimeout(), remaining));
+            } catch (AuthenticationException e) {
+                if (remaining < imSession.getAuthenticationTimeout()) {
+                    call.check();
                 }
+                throw e;
             }
-        }
 
-        //重新处理Header数据和状态
-        if (imSession.getHeaders().size() > 0) {
-            imRequest.setHeader(imSession.getHeaders());
-        }
-        //重新处理Cookie数据和状态
-        if (imSession.getCookies().size() > 0) {
-            imRequest.setCookie(imSession.getCookies());
-        }
+            //身份认证之后获得会话状态快照，请求自身的Header和Cookie在执行时叠加在快照之上，无需复制
+            ImSessionSnapshot snapshot = imSession.snapshot(cookieUrl);
 
-        //获得ImResponse
-        ImResponse imResponse = execute(imRequest);
+            //获得ImResponse
+            imResponse = execute(imRequest, snapshot, call);
+        } catch (IOException e) {
+            throw call.translate(e);
+        } finally {
+            call.end();
+        }
 
-        //处理Cookie数据并管理
+        //处理Cookie数据并管理（按Domain、Path及有效期保存）
         if (imResponse.getCookieSize() > 0) {
             Set<String> cookieNames = imResponse.getCookieNames();
             for (String cookieName : cookieNames) {
-                imSession.setCookie(cookieName, imResponse.getCookieData(cookieName));
+                imSession.getCookieStore().add(imResponse.getCookieProperty(cookieName), cookieUrl);
             }
         }
 
         return imResponse;
     }
 
+    /**
+     * 【内部方法】 在后台重新请求以刷新过期的缓存响应，同一缓存键同时只有一个刷新请求
+     *
+     * @param responseCache HTTP响应缓存
+     * @param imRequest     ImRequest会话请求数据
+     * @param snapshot      会话状态快照，可以为null
+     * @param urlStr        请求URL（含查询参数）
+     */
+    private static void refreshInBackground(ImResponseCache responseCache, ImRequest imRequest, ImSessionSnapshot snapshot, String urlStr) {
+        if (!responseCache.beginRefresh(imRequest.getMethod(), urlStr)) {
+            return;
+        }
+        THREAD_FACTORY.newThread(() -> {
+            ImCall call = ImCall.begin(imRequest);
+            try {
+                executeGuarded(imRequest, snapshot, false, call);
+            } catch (Exception e) {
+                //刷新失败时保留过期的缓存响应，由之后的请求再次刷新
+            } finally {
+                call.end();
+                responseCache.endRefresh(imRequest.getMethod(), urlStr);
+            }
+        }).start();
+    }
+
+    /**
+     * 【内部方法】 将响应字节数据按行转换为字符内容
+     *
+     * @param bytes   响应字节数据
+     * @param charset 字符编码
+     * @return 字符内容
+     * @throws IOException IO异常
+     */
+    static String toStringContent(byte[] bytes, String charset) throws IOException {
+        //创建输入流
+        BufferedReader responseBuffer = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(bytes), charset));
+
+        //初始化StringBuffer
+        StringBuffer output = new StringBuffer();
+        //初始化String
+        String output_line;
+
+        //从输入流获得数据
+        while ((output_line = responseBuffer.readLine()) != null) {
+            output.append(output_line);
+            output.append(System.getProperty("line.separator"));
+        }
+        return output.toString();
+    }
+
+    /**
+     * 【内部方法】 获得请求实际发送的Header（键不区分大小写），用于匹配缓存的Vary
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param snapshot  会话状态快照，可以为null
+     * @param cookieStr 实际发送的Cookie头
+     * @return 请求Header
+     */
+    private static Map<String, String> getRequestHeaders(ImRequest imRequest, ImSessionSnapshot snapshot, String cookieStr) {
+        Map<String, String> requestHeaders = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        requestHeaders.put("User-Agent", imRequest.getUserAgent());
+        requestHeaders.put("Accept-Charset", imRequest.getCharset());
+        requestHeaders.put("Accept", "*/*");
+        if (snapshot != null) {
+            requestHeaders.putAll(snapshot.getHeaders());
+        }
+        for (String headerName : imRequest.getHeaderNames()) {
+            requestHeaders.put(headerName, imRequest.getHeaderValue(headerName));
+        }
+        if (cookieStr.length() > 0) {
+            requestHeaders.put("Cookie", cookieStr);
+        }
+        return requestHeaders;
+    }
+
     /**
      * 获取InputData的String形式（含JSON字符、KeyValue字符）
      *
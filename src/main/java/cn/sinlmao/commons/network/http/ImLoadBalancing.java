@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+/**
+ * <b>负载均衡策略枚举类</b>
+ * <p>
+ * 该类表示ImEndpointGroup选择端点的策略
+ * <br/><br/>
+ * <b>Load balancing strategy enumeration class</b>
+ * <p>
+ * This class represents how an ImEndpointGroup picks an endpoint.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 负载均衡策略枚举类
+ * @create 2019-11-20 09:40
+ * @see ImEndpointGroup
+ * @since 1.5.0
+ */
+public enum ImLoadBalancing {
+
+    /**
+     * [ROUND_ROBIN] 轮询，依次选择每个端点
+     * <p>
+     * <font color="#666666">[ROUND_ROBIN] Round robin, each endpoint in turn</font>
+     */
+    ROUND_ROBIN,
+    /**
+     * [LEAST_OUTSTANDING] 最少未完成请求，随机选择两个端点，取正在执行的请求数较少的一个
+     * <p>
+     * <font color="#666666">[LEAST_OUTSTANDING] Least outstanding requests, picks two endpoints at random and takes the one with fewer requests in flight</font>
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * [PEAK_EWMA] 峰值加权延迟，随机选择两个端点，取延迟（峰值敏感的指数加权平均）与正在执行的请求数乘积较小的一个
+     * <p>
+     * <font color="#666666">[PEAK_EWMA] Peak EWMA, picks two endpoints at random and takes the one with the lower product of
+     * latency (a peak-sensitive exponentially weighted moving average) and requests in flight</font>
+     */
+    PEAK_EWMA,
+    /**
+     * [CONSISTENT_HASH] 有界负载的一致性哈希（最高随机权重），相同键（请求的哈希键或URL路径）的请求发往同一端点，
+     * 端点的请求数超过平均值的一定倍数时顺延到下一个端点；增删端点时只有该端点上的键重新分配
+     * <p>
+     * <font color="#666666">[CONSISTENT_HASH] Consistent hashing with bounded loads (rendezvous hashing). Requests with the same key
+     * (the hash key of the request or the URL path) go to the same endpoint, and move on to the next one while that
+     * endpoint has more than a set multiple of the average load. Adding or removing an endpoint only remaps the keys on it.</font>
+     */
+    CONSISTENT_HASH
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>带老化的优先级队列类</b>
+ * <p>
+ * 该类按虚拟时间排序：元素的虚拟时间为入队时间减去优先级乘以老化时间，即优先级每高一级相当于提前agingTime入队；
+ * 同一优先级先进先出，低优先级的元素等待agingTime后排在之后入队的高一级元素之前，不会被持续到达的高优先级元素饿死。
+ * 该类不是线程安全的，由调用者加锁
+ * <br/><br/>
+ * <b>Priority queue with aging class</b>
+ * <p>
+ * This class orders elements by virtual time: the enqueue time minus the priority times the aging time, so each
+ * priority level counts as having been enqueued agingTime earlier. Elements of the same priority are first in first
+ * out, and a low priority element that has waited agingTime goes ahead of elements one level higher that arrive after
+ * it, so a steady stream of high priority elements cannot starve it. The class is not thread-safe; callers lock.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 带老化的优先级队列类
+ * @create 2019-11-21 10:15
+ * @since 1.5.0
+ */
+final class ImPriorityQueue<E> {
+
+    //优先级的最大提前量，保证虚拟时间的差值不会溢出
+    private final static double MAX_ADVANCE = Long.MAX_VALUE >> 2;
+
+    private final PriorityQueue<Entry<E>> queue = new PriorityQueue<Entry<E>>();
+    private long sequence;
+
+    /**
+     * 添加元素
+     *
+     * @param element  元素
+     * @param priority 优先级，数值越大越优先
+     * @return 队列中的条目，可用于{@link #remove(Entry)}
+     */
+    Entry<E> offer(E element, int priority) {
+        double advance = (double) priority * TimeUnit.MILLISECONDS.toNanos(ImHttpClient.getPriorityAgingTime());
+        advance = Math.max(Math.min(advance, MAX_ADVANCE), -MAX_ADVANCE);
+        Entry<E> entry = new Entry<E>(element, System.nanoTime() - (long) advance, sequence++);
+        queue.add(entry);
+        return entry;
+    }
+
+    /**
+     * 获得排在最前的元素
+     *
+     * @return 元素，队列为空时为null
+     */
+    E peek() {
+        Entry<E> entry = queue.peek();
+        return entry != null ? entry.element : null;
+    }
+
+    /**
+     * 取出排在最前的元素
+     *
+     * @return 元素，队列为空时为null
+     */
+    E poll() {
+        Entry<E> entry = queue.poll();
+        return entry != null ? entry.element : null;
+    }
+
+    /**
+     * 移除条目（如等待超时）
+     *
+     * @param entry 条目
+     * @return 条目是否仍在队列中
+     */
+    boolean remove(Entry<E> entry) {
+        return queue.remove(entry);
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    int size() {
+        return queue.size();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 队列中的条目，按虚拟时间及入队顺序排序
+     */
+    static final class Entry<E> implements Comparable<Entry<E>> {
+
+        private final E element;
+        private final long virtualTime;
+        private final long sequence;
+
+        private Entry(E element, long virtualTime, long sequence) {
+            this.element = element;
+            this.virtualTime = virtualTime;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry<E> other) {
+            //虚拟时间基于nanoTime，比较差值以避免溢出
+            long diff = virtualTime - other.virtualTime;
+            if (diff != 0) {
+                return diff < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
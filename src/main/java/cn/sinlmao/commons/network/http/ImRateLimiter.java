@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.exception.RateLimitException;
+import cn.sinlmao.commons.network.tools.HttpDateTool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>速率限制类</b>
+ * <p>
+ * 该类以令牌桶（GCRA算法，无锁实现）限制请求速率，可以设置为全局、按主机或按ImSession生效：每个请求在理论到达时间上预留一个间隔，
+ * 超出突发容量的请求等待至放行时间，等待时间超过maxWait或请求的剩余时间时抛出RateLimitException。
+ * 异步请求由定时器在放行时间启动，等待期间不占用线程。服务器返回429（或带Retry-After的503）时，
+ * 在Retry-After指定的时间内暂停放行，并将速率按比例降低，之后在恢复时间内线性恢复到设置的速率，从而稳定运行在配额附近，
+ * 而不是在突发与大量429之间反复
+ * <br/><br/>
+ * <b>Rate limiter class</b>
+ * <p>
+ * This class limits the request rate with a token bucket (the GCRA algorithm, lock-free) and can be set globally, per host
+ * or per ImSession. Every request reserves one interval on the theoretical arrival time; a request beyond the burst
+ * waits until its slot, and throws RateLimitException when that wait is longer than maxWait or the remaining time of
+ * the request. Asynchronous requests are started by a timer when their slot comes, so no thread is blocked while they
+ * wait. When the server answers 429 (or 503 with Retry-After), nothing is let through for the Retry-After period and
+ * the rate is cut by a ratio, then recovers linearly to the configured rate over the recovery time. The client thus
+ * runs steadily near the quota instead of swinging between bursts and storms of 429.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 速率限制类
+ * @create 2019-11-19 17:20
+ * @see ImHttpClient#setRateLimiter(ImRateLimiter)
+ * @see ImHttpClient#setRateLimiter(String, ImRateLimiter)
+ * @see ImSession#setRateLimiter(ImRateLimiter)
+ * @since 1.5.0
+ */
+public class ImRateLimiter {
+
+    //速率降低的下限比例
+    private final static double MIN_FACTOR = 0.05;
+    //同一时间段内的多个429只降低一次速率
+    private final static long PENALTY_HOLD = TimeUnit.SECONDS.toNanos(1);
+
+    private final double rate;
+    private final int burst;
+    private final double interval;
+
+    private volatile long maxWait = 10000;
+    private volatile double penaltyRatio = 0.5;
+    private volatile long recoveryTime = 30000;
+
+    //理论到达时间（纳秒），即下一个请求按速率应当放行的时间
+    private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+    private volatile double penaltyFactor = 1;
+    private volatile long penaltyTime;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建速率限制，不允许突发
+     * <p>
+     * <font color="#666666">Build a rate limiter without bursts</font>
+     *
+     * @param permitsPerSecond 每秒放行的请求数 <br/> <font color="#666666">Requests let through per second</font>
+     */
+    public ImRateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, 1);
+    }
+
+    /**
+     * 构建速率限制
+     * <p>
+     * <font color="#666666">Build a rate limiter</font>
+     *
+     * @param permitsPerSecond 每秒放行的请求数 <br/> <font color="#666666">Requests let through per second</font>
+     * @param burst            可以连续放行的请求数 <br/> <font color="#666666">Requests that may be let through back to back</font>
+     */
+    public ImRateLimiter(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.rate = permitsPerSecond;
+        this.burst = burst;
+        this.interval = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置请求等待放行的最长时间（毫秒），默认为10000，0表示不等待
+     * <p>
+     * <font color="#666666">Set the longest time a request waits for its slot (milliseconds), default is 10000, 0 means no wait</font>
+     *
+     * @param maxWait 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     * @return ImRateLimiter对象实体 <br/> <font color="#666666">ImRateLimiter object entity</font>
+     */
+    public ImRateLimiter setMaxWait(long maxWait) {
+        this.maxWait = Math.max(maxWait, 0);
+        return this;
+    }
+
+    /**
+     * 获得请求等待放行的最长时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the longest time a request waits for its slot (milliseconds)</font>
+     *
+     * @return 最长等待时间 <br/> <font color="#666666">Longest wait</font>
+     */
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * 设置收到429时速率降低的比例及恢复时间（毫秒），默认为0.5及30000
+     * <p>
+     * <font color="#666666">Set the ratio the rate is cut by on 429 and the time it takes to recover (milliseconds), default is 0.5 and 30000</font>
+     *
+     * @param penaltyRatio 速率降低的比例（0到1之间） <br/> <font color="#666666">Ratio the rate is cut by (between 0 and 1)</font>
+     * @param recoveryTime 恢复时间 <br/> <font color="#666666">Recovery time</font>
+     * @return ImRateLimiter对象实体 <br/> <font color="#666666">ImRateLimiter object entity</font>
+     */
+    public ImRateLimiter setPenalty(double penaltyRatio, long recoveryTime) {
+        if (penaltyRatio <= 0 || penaltyRatio > 1) {
+            throw new IllegalArgumentException();
+        }
+        this.penaltyRatio = penaltyRatio;
+        this.recoveryTime = Math.max(recoveryTime, 1);
+        return this;
+    }
+
+    /**
+     * 获得收到429时速率降低的比例
+     * <p>
+     * <font color="#666666">Get the ratio the rate is cut by on 429</font>
+     *
+     * @return 速率降低的比例 <br/> <font color="#666666">Ratio the rate is cut by</font>
+     */
+    public double getPenaltyRatio() {
+        return penaltyRatio;
+    }
+
+    /**
+     * 获得速率降低后的恢复时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the time the rate takes to recover after a cut (milliseconds)</font>
+     *
+     * @return 恢复时间 <br/> <font color="#666666">Recovery time</font>
+     */
+    public long getRecoveryTime() {
+        return recoveryTime;
+    }
+
+    /**
+     * 获得设置的速率（每秒请求数）
+     * <p>
+     * <font color="#666666">Get the configured rate (requests per second)</font>
+     *
+     * @return 设置的速率 <br/> <font color="#666666">Configured rate</font>
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * 获得当前的速率（每秒请求数），收到429后低于设置的速率
+     * <p>
+     * <font color="#666666">Get the current rate (requests per second), lower than the configured rate after a 429</font>
+     *
+     * @return 当前的速率 <br/> <font color="#666666">Current rate</font>
+     */
+    public double getCurrentRate() {
+        return rate * factor(System.nanoTime());
+    }
+
+    /**
+     * 获得可以连续放行的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests that may be let through back to back</font>
+     *
+     * @return 可以连续放行的请求数 <br/> <font color="#666666">Burst size</font>
+     */
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * 获得因等待时间过长而被拒绝的请求数
+     * <p>
+     * <font color="#666666">Get the number of requests rejected because the wait was too long</font>
+     *
+     * @return 被拒绝的请求数 <br/> <font color="#666666">Rejected requests</font>
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 预留一个请求的放行时间
+     *
+     * @param host            主机（host:port），用于异常说明
+     * @param remainingMillis 请求的剩余时间（毫秒）
+     * @return 需要等待的时间（毫秒），0表示立即放行
+     * @throws RateLimitException 需要等待的时间超过最长等待时间或请求的剩余时间
+     */
+    long reserve(String host, long remainingMillis) throws RateLimitException {
+        long now = System.nanoTime();
+        long step = (long) (interval / factor(now));
+        long tolerance = step * burst;
+        long limit = TimeUnit.MILLISECONDS.toNanos(Math.min(maxWait, remainingMillis));
+        long current;
+        long next;
+        long wait;
+        do {
+            current = arrival.get();
+            next = Math.max(current, now) + step;
+            wait = next - tolerance - now;
+            if (wait > limit) {
+                rejectedCount.incrementAndGet();
+                throw new RateLimitException(host, TimeUnit.NANOSECONDS.toMillis(wait));
+            }
+        } while (!arrival.compareAndSet(current, next));
+        return wait <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(wait + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+
+    /**
+     * 【内部方法】 收到429（或带Retry-After的503）时降低速率，并在Retry-After指定的时间内暂停放行
+     *
+     * @param retryAfter Retry-After响应头，可以为null
+     */
+    void penalize(String retryAfter) {
+        long now = System.nanoTime();
+        if (penaltyFactor >= 1 || now - penaltyTime >= PENALTY_HOLD) {
+            double factor = Math.max(factor(now) * penaltyRatio, MIN_FACTOR);
+            penaltyTime = now;
+            penaltyFactor = factor;
+        }
+        long pause = parseRetryAfter(retryAfter);
+        if (pause > 0) {
+            long step = (long) (interval / factor(now));
+            long resume = now + TimeUnit.MILLISECONDS.toNanos(pause) + step * (burst - 1);
+            arrival.accumulateAndGet(resume, Math::max);
+        }
+    }
+
+    private double factor(long now) {
+        double factor = penaltyFactor;
+        if (factor >= 1) {
+            return 1;
+        }
+        long elapsed = now - penaltyTime;
+        long recovery = TimeUnit.MILLISECONDS.toNanos(recoveryTime);
+        if (elapsed >= recovery) {
+            return 1;
+        }
+        return factor + (1 - factor) * elapsed / recovery;
+    }
+
+    /**
+     * 【内部方法】 解析Retry-After响应头（秒数或HTTP日期）
+     *
+     * @param retryAfter Retry-After响应头
+     * @return 需要暂停的时间（毫秒），无法解析时为0
+     */
+    static long parseRetryAfter(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(TimeUnit.SECONDS.toMillis(Long.parseLong(value)), 0);
+        } catch (NumberFormatException e) {
+            long date = HttpDateTool.parse(value);
+            return date == HttpDateTool.INVALID ? 0 : Math.max(date - System.currentTimeMillis(), 0);
+        }
+    }
+}
@@ -61,6 +61,18 @@ public class ImRequest {
     private String userAgent;
     private boolean async = false;
     private ImHttpClientCallback callback;
+    private boolean coalesce = false;
+    private String[] coalesceHeaders = new String[0];
+    private int connectTimeout = 0;
+    private int readTimeout = 0;
+    private int writeTimeout = 0;
+    private long callTimeout = 0;
+    private ImRetryPolicy retryPolicy;
+    private ImHedgePolicy hedgePolicy;
+    private String hashKey;
+    private String route;
+    private ImBulkhead bulkhead;
+    private int priority;
 
     private Map<String, String> headers = new HashMap<String, String>();
     private Map<String, String> cookies = new HashMap<String, String>();
@@ -339,7 +351,11 @@ public class ImRequest {
     /**
      * 设置是否使用缓存
      * <p>
+     * 通过ImHttpClient.setResponseCache设置响应缓存后，GET、HEAD请求将使用该缓存
+     * <p>
      * <font color="#666666">Set whether to use cache</font>
+     * <p>
+     * <font color="#666666">Once a response cache is set with ImHttpClient.setResponseCache, GET and HEAD requests use it.</font>
      *
      * @param useCache 是否使用缓存 <br /> <font color="#666666">Whether to use cache</font>
      * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
@@ -533,6 +549,215 @@ public class ImRequest {
         return this;
     }
 
+    /**
+     * 设置是否合并并发的相同请求
+     * <p>
+     * 开启后，同时发起的相同GET、HEAD、OPTIONS请求（同一会话，URL、方法、Authorization、Cookie及指定的Header相同，且没有InputData）
+     * 只执行一次网络请求，所有调用方获得同一个ImResponse或同一个异常；不同会话的请求不会被合并
+     * <p>
+     * <font color="#666666">Set whether to coalesce concurrent identical requests</font>
+     * <p>
+     * <font color="#666666">When enabled, identical GET, HEAD and OPTIONS requests in flight at the same time (same session, URL,
+     * method, Authorization, cookies and the given headers, and no InputData) share one network call, and all callers get the
+     * same ImResponse or the same exception. Requests of different sessions are never coalesced.</font>
+     *
+     * @param coalesce 是否合并并发的相同请求 <br /> <font color="#666666">Whether to coalesce concurrent identical requests</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see #setCoalesceHeaders(String...)
+     * @since 1.5.0
+     */
+    public ImRequest setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    /**
+     * 设置合并请求时需要区分的Header，这些Header（含会话Header）的值不同的请求不会被合并
+     * <p>
+     * <font color="#666666">Set the headers that distinguish coalesced requests, requests with different values of these
+     * headers (including session headers) are not coalesced</font>
+     *
+     * @param names Header键 <br /> <font color="#666666">Header keys</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @since 1.5.0
+     */
+    public ImRequest setCoalesceHeaders(String... names) {
+        this.coalesceHeaders = names == null ? new String[0] : names.clone();
+        return this;
+    }
+
+    /**
+     * 设置建立连接的超时时间（毫秒）
+     * <p>
+     * 默认为0，表示不限制
+     * <p>
+     * <font color="#666666">Set the timeout for establishing the connection (milliseconds)</font>
+     * <p>
+     * <font color="#666666">Default is 0, which means no limit</font>
+     *
+     * @param connectTimeout 建立连接的超时时间 <br/> <font color="#666666">Timeout for establishing the connection</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @since 1.5.0
+     */
+    public ImRequest setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout < 0 ? 0 : connectTimeout;
+        return this;
+    }
+
+    /**
+     * 设置读取响应的超时时间（毫秒），即两次读取到数据之间的最长间隔
+     * <p>
+     * 默认为0，表示不限制
+     * <p>
+     * <font color="#666666">Set the timeout for reading the response (milliseconds), that is the longest gap between two reads that return data</font>
+     * <p>
+     * <font color="#666666">Default is 0, which means no limit</font>
+     *
+     * @param readTimeout 读取响应的超时时间 <br/> <font color="#666666">Timeout for reading the response</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @since 1.5.0
+     */
+    public ImRequest setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout < 0 ? 0 : readTimeout;
+        return this;
+    }
+
+    /**
+     * 设置写入请求数据的超时时间（毫秒），即每次写入请求数据的最长时间
+     * <p>
+     * 默认为0，表示不限制
+     * <p>
+     * <font color="#666666">Set the timeout for writing the request data (milliseconds), that is the longest time a single write of the request data may take</font>
+     * <p>
+     * <font color="#666666">Default is 0, which means no limit</font>
+     *
+     * @param writeTimeout 写入请求数据的超时时间 <br/> <font color="#666666">Timeout for writing the request data</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @since 1.5.0
+     */
+    public ImRequest setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout < 0 ? 0 : writeTimeout;
+        return this;
+    }
+
+    /**
+     * 设置整个请求的超时时间（毫秒）
+     * <p>
+     * 包括等待会话身份认证、建立连接、写入请求数据及读取响应的全部时间，超时后中止连接并抛出SocketTimeoutException；
+     * 在身份认证回调中发起的请求同样受该时间限制。默认为0，表示不限制
+     * <p>
+     * <font color="#666666">Set the timeout of the whole request (milliseconds)</font>
+     * <p>
+     * <font color="#666666">It covers waiting for session authentication, connecting, writing the request data and reading the response.
+     * When it expires the connection is aborted and SocketTimeoutException is thrown; requests sent from the authentication
+     * callback are bound by it as well. Default is 0, which means no limit.</font>
+     *
+     * @param callTimeout 整个请求的超时时间 <br/> <font color="#666666">Timeout of the whole request</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @since 1.5.0
+     */
+    public ImRequest setCallTimeout(long callTimeout) {
+        this.callTimeout = callTimeout < 0 ? 0 : callTimeout;
+        return this;
+    }
+
+    /**
+     * 设置请求重试策略，未设置时使用ImHttpClient的默认重试策略
+     * <p>
+     * <font color="#666666">Set the request retry policy, the default retry policy of ImHttpClient is used when not set</font>
+     *
+     * @param retryPolicy 请求重试策略 <br/> <font color="#666666">Request retry policy</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImHttpClient#setRetryPolicy(ImRetryPolicy)
+     * @since 1.5.0
+     */
+    public ImRequest setRetryPolicy(ImRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * 设置对冲请求策略，仅对GET、HEAD请求生效，未设置时使用ImHttpClient的默认对冲请求策略
+     * <p>
+     * <font color="#666666">Set the hedged request policy, which only applies to GET and HEAD requests.
+     * The default hedged request policy of ImHttpClient is used when not set.</font>
+     *
+     * @param hedgePolicy 对冲请求策略 <br/> <font color="#666666">Hedged request policy</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImHttpClient#setHedgePolicy(ImHedgePolicy)
+     * @since 1.5.0
+     */
+    public ImRequest setHedgePolicy(ImHedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        return this;
+    }
+
+    /**
+     * 设置一致性哈希的键，端点组使用CONSISTENT_HASH策略时，相同键的请求发往同一端点，未设置时使用URL路径
+     * <p>
+     * <font color="#666666">Set the consistent hashing key. When the endpoint group uses CONSISTENT_HASH, requests with the
+     * same key go to the same endpoint. The URL path is used when not set.</font>
+     *
+     * @param hashKey 一致性哈希的键 <br/> <font color="#666666">Consistent hashing key</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImLoadBalancing#CONSISTENT_HASH
+     * @since 1.5.0
+     */
+    public ImRequest setHashKey(String hashKey) {
+        this.hashKey = hashKey;
+        return this;
+    }
+
+    /**
+     * 设置请求的路由名称（如/users/{id}），熔断器按路由区分时以此代替URL路径，使同一接口的不同资源共用一个熔断器
+     * <p>
+     * <font color="#666666">Set the route name of the request (such as /users/{id}). When circuit breakers are kept per
+     * route, it replaces the URL path, so different resources of the same endpoint share one circuit breaker.</font>
+     *
+     * @param route 路由名称 <br/> <font color="#666666">Route name</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImCircuitBreakerRegistry#setPerRoute(boolean)
+     * @since 1.5.0
+     */
+    public ImRequest setRoute(String route) {
+        this.route = route;
+        return this;
+    }
+
+    /**
+     * 设置请求所属的隔离舱，请求只占用该隔离舱的并发数，异步请求由该隔离舱的线程执行
+     * <p>
+     * <font color="#666666">Set the bulkhead of the request. The request only uses the concurrency of that bulkhead, and
+     * asynchronous requests run on its threads.</font>
+     *
+     * @param bulkhead 隔离舱 <br/> <font color="#666666">Bulkhead</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImBulkhead
+     * @since 1.5.0
+     */
+    public ImRequest setBulkhead(ImBulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+        return this;
+    }
+
+    /**
+     * 设置请求的优先级，数值越大越优先，默认为0。在隔离舱队列中排队及等待隔离舱、并发限制的许可时，
+     * 高优先级的请求排在前面；等待时间较长的请求按老化时间逐步提高优先级
+     * <p>
+     * <font color="#666666">Set the priority of the request, larger values go first, default is 0. Requests with higher priority
+     * go first in the bulkhead queue and when waiting for bulkhead or concurrency limit permits; requests that have waited
+     * long gain priority over time by the aging time.</font>
+     *
+     * @param priority 优先级 <br/> <font color="#666666">Priority</font>
+     * @return ImRequest对象实体 <br/> <font color="#666666">ImRequest object entity</font>
+     * @see ImHttpClient#setPriorityAgingTime(long)
+     * @since 1.5.0
+     */
+    public ImRequest setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -863,6 +1088,150 @@ public class ImRequest {
         return async;
     }
 
+    /**
+     * 获取是否合并并发的相同请求
+     * <p>
+     * <font color="#666666">Get whether to coalesce concurrent identical requests</font>
+     *
+     * @return 是否合并并发的相同请求 <br/> <font color="#666666">Whether to coalesce concurrent identical requests</font>
+     * @since 1.5.0
+     */
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    /**
+     * 获取合并请求时需要区分的Header
+     * <p>
+     * <font color="#666666">Get the headers that distinguish coalesced requests</font>
+     *
+     * @return Header键 <br/> <font color="#666666">Header keys</font>
+     * @since 1.5.0
+     */
+    public String[] getCoalesceHeaders() {
+        return coalesceHeaders.clone();
+    }
+
+    /**
+     * 获取建立连接的超时时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the timeout for establishing the connection (milliseconds)</font>
+     *
+     * @return 建立连接的超时时间 <br/> <font color="#666666">Timeout for establishing the connection</font>
+     * @since 1.5.0
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * 获取读取响应的超时时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the timeout for reading the response (milliseconds)</font>
+     *
+     * @return 读取响应的超时时间 <br/> <font color="#666666">Timeout for reading the response</font>
+     * @since 1.5.0
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * 获取写入请求数据的超时时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the timeout for writing the request data (milliseconds)</font>
+     *
+     * @return 写入请求数据的超时时间 <br/> <font color="#666666">Timeout for writing the request data</font>
+     * @since 1.5.0
+     */
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * 获取整个请求的超时时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the timeout of the whole request (milliseconds)</font>
+     *
+     * @return 整个请求的超时时间 <br/> <font color="#666666">Timeout of the whole request</font>
+     * @since 1.5.0
+     */
+    public long getCallTimeout() {
+        return callTimeout;
+    }
+
+    /**
+     * 获取请求重试策略
+     * <p>
+     * <font color="#666666">Get the request retry policy</font>
+     *
+     * @return 请求重试策略，未设置时为null <br/> <font color="#666666">Request retry policy, null when not set</font>
+     * @since 1.5.0
+     */
+    public ImRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * 获取对冲请求策略
+     * <p>
+     * <font color="#666666">Get the hedged request policy</font>
+     *
+     * @return 对冲请求策略，未设置时为null <br/> <font color="#666666">Hedged request policy, null when not set</font>
+     * @since 1.5.0
+     */
+    public ImHedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * 获取一致性哈希的键
+     * <p>
+     * <font color="#666666">Get the consistent hashing key</font>
+     *
+     * @return 一致性哈希的键，未设置时为null <br/> <font color="#666666">Consistent hashing key, null when not set</font>
+     * @since 1.5.0
+     */
+    public String getHashKey() {
+        return hashKey;
+    }
+
+    /**
+     * 获取请求的路由名称
+     * <p>
+     * <font color="#666666">Get the route name of the request</font>
+     *
+     * @return 路由名称，未设置时为null <br/> <font color="#666666">Route name, null when not set</font>
+     * @since 1.5.0
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * 获取请求所属的隔离舱
+     * <p>
+     * <font color="#666666">Get the bulkhead of the request</font>
+     *
+     * @return 隔离舱，未设置时为null <br/> <font color="#666666">Bulkhead, null when not set</font>
+     * @since 1.5.0
+     */
+    public ImBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * 获取请求的优先级
+     * <p>
+     * <font color="#666666">Get the priority of the request</font>
+     *
+     * @return 优先级 <br/> <font color="#666666">Priority</font>
+     * @since 1.5.0
+     */
+    public int getPriority() {
+        return priority;
+    }
+
     ///////////////////////////////////////////////////////////////////////
 
     /**
@@ -16,6 +16,7 @@
 package cn.sinlmao.commons.network.http;
 
 import cn.sinlmao.commons.network.bean.ImResponseCookie;
+import cn.sinlmao.commons.network.tools.SetCookieTool;
 
 import java.util.HashMap;
 import java.util.List;
@@ -48,6 +49,12 @@ public final class ImResponse {
     private Map<String, String> cookies = new HashMap<String, String>();
     private Map<String, ImResponseCookie> cookiePropertys = new HashMap<String, ImResponseCookie>();
 
+    //原始的Set-Cookie响应头，仅在首次读取Cookie时解析
+    private List<String> setCookieHeaders;
+    private volatile boolean cookiesParsed = true;
+
+    private ImCacheStatus cacheStatus = ImCacheStatus.NONE;
+
     ///////////////////////////////////////////////////////////////////////
 
     /**
@@ -143,6 +150,19 @@ public final class ImResponse {
         return this;
     }
 
+    /**
+     * [内部] 设置原始的Set-Cookie响应头，Cookie将在首次读取时解析
+     *
+     * @param setCookieHeaders Set-Cookie响应头 <br/> <font color="#666666">Set-Cookie response headers</font>
+     * @return ImResponse ImResponse响应实体对象 <br/> <font color="#666666">ImResponse response entity object</font>
+     * @since 1.5.0
+     */
+    protected ImResponse setSetCookieHeaders(List<String> setCookieHeaders) {
+        this.setCookieHeaders = setCookieHeaders;
+        this.cookiesParsed = setCookieHeaders == null || setCookieHeaders.isEmpty();
+        return this;
+    }
+
     /**
      * [内部] 添加Header完整数据
      * <p>
@@ -156,6 +176,18 @@ public final class ImResponse {
         return this;
     }
 
+    /**
+     * [内部] 设置响应缓存状态
+     *
+     * @param cacheStatus 响应缓存状态 <br/> <font color="#666666">Response cache status</font>
+     * @return ImResponse ImResponse响应实体对象 <br/> <font color="#666666">ImResponse response entity object</font>
+     * @since 1.5.0
+     */
+    protected ImResponse setCacheStatus(ImCacheStatus cacheStatus) {
+        this.cacheStatus = cacheStatus;
+        return this;
+    }
+
     ///////////////////////////////////////////////////////////////////////
 
     /**
@@ -229,6 +261,7 @@ public final class ImResponse {
      * @return Cookie数据完整字符 <br/> <font color="#666666">Full character of the cookie data</font>
      */
     public String getCookieStr() {
+        parseCookies();
         return this.cookieStr;
     }
 
@@ -241,6 +274,7 @@ public final class ImResponse {
      * @return Cookie值 <br/> <font color="#666666">Cookie value</font>
      */
     public String getCookieData(String name) {
+        parseCookies();
         return cookies.get(name);
     }
 
@@ -253,6 +287,7 @@ public final class ImResponse {
      * @return Cookie值 <br/> <font color="#666666">Cookie property</font>
      */
     public ImResponseCookie getCookieProperty(String name) {
+        parseCookies();
         return cookiePropertys.get(name);
     }
 
@@ -264,6 +299,7 @@ public final class ImResponse {
      * @return Cookie的所有键 <br/> <font color="#666666">All the keys of the cookie</font>
      */
     public Set<String> getCookieNames() {
+        parseCookies();
         return cookies.keySet();
     }
 
@@ -275,9 +311,42 @@ public final class ImResponse {
      * @return Cookie长度 <br/> <font color="#666666">Cookie size</font>
      */
     public int getCookieSize() {
+        parseCookies();
         return cookies.size();
     }
 
+    /**
+     * [内部] 首次读取Cookie时解析Set-Cookie响应头
+     */
+    private void parseCookies() {
+        if (cookiesParsed) {
+            return;
+        }
+        synchronized (this) {
+            if (cookiesParsed) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            StringBuilder builder = new StringBuilder();
+            for (String data : setCookieHeaders) {
+                //拼接Cookie属性字符串
+                if (builder.length() > 0) {
+                    builder.append(",");
+                }
+                builder.append(data);
+                //解析Cookie属性
+                ImResponseCookie imResponseCookie = SetCookieTool.parse(data, now);
+                if (imResponseCookie != null) {
+                    addCookie(imResponseCookie.getName(), imResponseCookie.getValue());
+                    addCookieProperty(imResponseCookie);
+                }
+            }
+            //设置Cookie完整字符串数据
+            cookieStr = builder.toString();
+            cookiesParsed = true;
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////
 
     /**
@@ -316,6 +385,32 @@ public final class ImResponse {
 
     ///////////////////////////////////////////////////////////////////////
 
+    /**
+     * 获得响应缓存状态
+     * <p>
+     * <font color="#666666">Get the response cache status</font>
+     *
+     * @return 响应缓存状态 <br/> <font color="#666666">Response cache status</font>
+     * @since 1.5.0
+     */
+    public ImCacheStatus getCacheStatus() {
+        return cacheStatus;
+    }
+
+    /**
+     * 是否为条件请求返回304后由缓存还原的响应
+     * <p>
+     * <font color="#666666">Whether the response was restored from the cache after a conditional request returned 304</font>
+     *
+     * @return 是否已重新验证 <br/> <font color="#666666">Whether it was revalidated</font>
+     * @since 1.5.0
+     */
+    public boolean isRevalidated() {
+        return cacheStatus == ImCacheStatus.REVALIDATED;
+    }
+
+    ///////////////////////////////////////////////////////////////////////
+
     /**
      * 禁止外部实例化
      */
@@ -0,0 +1,799 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.tools.HttpDateTool;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>HTTP响应缓存类</b>
+ * <p>
+ * 该类为客户端HTTP响应缓存，按照RFC 7234处理Cache-Control（max-age、s-maxage、no-store、no-cache、private）、
+ * Expires、Date、Age及Vary响应头，只缓存带有明确有效期的GET、HEAD响应。缓存按字节大小限制容量，超出时按LRU顺序淘汰；
+ * 新鲜的缓存响应直接返回，不访问网络。缓存的响应不含Set-Cookie响应头。
+ * <p>
+ * 带有ETag或Last-Modified的响应即使没有明确有效期也会保存，过期后自动发送If-None-Match、If-Modified-Since条件请求，
+ * 服务器返回304时使用缓存的响应内容并合并新的响应头。
+ * <p>
+ * 过期不久的响应可以在stale-while-revalidate窗口内直接返回，同时由一个后台请求刷新（同一缓存键只有一个刷新请求）；
+ * 网络异常、超时或服务器返回5xx时，可以在stale-if-error窗口内返回过期的响应（RFC 5861）。
+ * <p>
+ * 设置磁盘缓存后，所有缓存的响应同时写入磁盘，超过内存单条上限的响应只保存在磁盘，内存未命中时从磁盘读取
+ * <p>
+ * 通过ImHttpClient.setResponseCache启用，仅对设置了useCache的请求生效
+ * <br/><br/>
+ * <b>HTTP response cache class</b>
+ * <p>
+ * This class is a client-side HTTP response cache. It follows RFC 7234 for the Cache-Control (max-age, s-maxage,
+ * no-store, no-cache, private), Expires, Date, Age and Vary response headers, and only caches GET and HEAD responses with
+ * an explicit lifetime. The cache is bounded by bytes and evicts in LRU order. Fresh responses are returned directly
+ * without touching the network. Cached responses do not carry Set-Cookie headers.
+ * <p>
+ * Responses with an ETag or Last-Modified are stored even without an explicit lifetime. Once stale, If-None-Match and
+ * If-Modified-Since are sent automatically, and a 304 is answered with the cached body merged with the new headers.
+ * <p>
+ * A recently expired response can be returned at once within the stale-while-revalidate window while a single background
+ * request per cache key refreshes it. On network errors, timeouts or 5xx responses a stale response can be returned within
+ * the stale-if-error window (RFC 5861).
+ * <p>
+ * With a disk cache set, every cached response is also written to disk, responses over the per-entry memory limit are
+ * kept on disk only, and memory misses are looked up on disk.
+ * <p>
+ * Enabled with ImHttpClient.setResponseCache, it only applies to requests with useCache set.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description HTTP响应缓存类
+ * @create 2019-11-17 09:30
+ * @see ImHttpClient#setResponseCache(ImResponseCache)
+ * @see ImRequest#setUseCache(boolean)
+ * @since 1.5.0
+ */
+public class ImResponseCache {
+
+    //可缓存的响应状态码（RFC 7231 6.1）
+    private final static Set<Integer> CACHEABLE_CODES = new HashSet<Integer>(
+            Arrays.asList(200, 203, 204, 300, 301, 404, 405, 410, 414, 501));
+
+    private final long maxBytes;
+    private volatile boolean shared = true;
+    private volatile long staleWhileRevalidate = 0;
+    private volatile long staleIfError = 0;
+
+    private volatile ImDiskResponseCache diskCache;
+    private volatile long maxMemoryEntryBytes = 1024 * 1024;
+
+    //正在后台刷新的缓存键
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong staleCount = new AtomicLong();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建HTTP响应缓存
+     * <p>
+     * <font color="#666666">Build an HTTP response cache</font>
+     *
+     * @param maxBytes 缓存容量上限（字节） <br/> <font color="#666666">Cache capacity (bytes)</font>
+     */
+    public ImResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置是否作为共享缓存
+     * <p>
+     * 共享缓存不保存private响应，只在public、s-maxage或must-revalidate明确允许时保存带Authorization的请求的响应，并优先使用s-maxage。
+     * 缓存由所有会话共用，默认为共享缓存；只有整个进程只使用一个身份时才应设置为私有缓存，否则一个会话的私有响应可能返回给其它会话
+     * <p>
+     * <font color="#666666">Set whether this is a shared cache</font>
+     * <p>
+     * <font color="#666666">A shared cache does not store private responses, stores responses to requests with Authorization only
+     * when public, s-maxage or must-revalidate allow it, and prefers s-maxage. The cache serves every session, so it is a
+     * shared cache by default; only set it to private when the whole process uses a single identity, otherwise a private
+     * response of one session may be served to another.</font>
+     *
+     * @param shared 是否作为共享缓存 <br/> <font color="#666666">Whether this is a shared cache</font>
+     * @return ImResponseCache对象实体 <br/> <font color="#666666">ImResponseCache object entity</font>
+     */
+    public ImResponseCache setShared(boolean shared) {
+        this.shared = shared;
+        return this;
+    }
+
+    /**
+     * 是否作为共享缓存
+     * <p>
+     * <font color="#666666">Whether this is a shared cache</font>
+     *
+     * @return 是否作为共享缓存 <br/> <font color="#666666">Whether this is a shared cache</font>
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * 设置默认的stale-while-revalidate窗口，响应自身的stale-while-revalidate指令优先
+     * <p>
+     * <font color="#666666">Set the default stale-while-revalidate window, the response's own stale-while-revalidate directive takes precedence</font>
+     *
+     * @param staleWhileRevalidate 过期后仍可直接返回的时间（毫秒） <br/> <font color="#666666">Time after expiry during which the response may still be returned (milliseconds)</font>
+     * @return ImResponseCache对象实体 <br/> <font color="#666666">ImResponseCache object entity</font>
+     */
+    public ImResponseCache setStaleWhileRevalidate(long staleWhileRevalidate) {
+        this.staleWhileRevalidate = Math.max(staleWhileRevalidate, 0);
+        return this;
+    }
+
+    /**
+     * 获得默认的stale-while-revalidate窗口
+     * <p>
+     * <font color="#666666">Get the default stale-while-revalidate window</font>
+     *
+     * @return 过期后仍可直接返回的时间（毫秒） <br/> <font color="#666666">Time after expiry during which the response may still be returned (milliseconds)</font>
+     */
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * 设置默认的stale-if-error窗口，响应自身的stale-if-error指令优先
+     * <p>
+     * <font color="#666666">Set the default stale-if-error window, the response's own stale-if-error directive takes precedence</font>
+     *
+     * @param staleIfError 过期后在请求失败时仍可返回的时间（毫秒） <br/> <font color="#666666">Time after expiry during which the response may still be returned when the request fails (milliseconds)</font>
+     * @return ImResponseCache对象实体 <br/> <font color="#666666">ImResponseCache object entity</font>
+     */
+    public ImResponseCache setStaleIfError(long staleIfError) {
+        this.staleIfError = Math.max(staleIfError, 0);
+        return this;
+    }
+
+    /**
+     * 获得默认的stale-if-error窗口
+     * <p>
+     * <font color="#666666">Get the default stale-if-error window</font>
+     *
+     * @return 过期后在请求失败时仍可返回的时间（毫秒） <br/> <font color="#666666">Time after expiry during which the response may still be returned when the request fails (milliseconds)</font>
+     */
+    public long getStaleIfError() {
+        return staleIfError;
+    }
+
+    /**
+     * 设置磁盘缓存，作为内存缓存之后的第二层
+     * <p>
+     * <font color="#666666">Set the disk cache, the second tier behind the memory cache</font>
+     *
+     * @param diskCache 磁盘缓存，为null时不使用磁盘 <br/> <font color="#666666">Disk cache, null to not use the disk</font>
+     * @return ImResponseCache对象实体 <br/> <font color="#666666">ImResponseCache object entity</font>
+     */
+    public ImResponseCache setDiskCache(ImDiskResponseCache diskCache) {
+        this.diskCache = diskCache;
+        return this;
+    }
+
+    /**
+     * 获得磁盘缓存
+     * <p>
+     * <font color="#666666">Get the disk cache</font>
+     *
+     * @return 磁盘缓存，未设置时为null <br/> <font color="#666666">Disk cache, null when not set</font>
+     */
+    public ImDiskResponseCache getDiskCache() {
+        return diskCache;
+    }
+
+    /**
+     * 设置内存中单条响应的大小上限，设置磁盘缓存后，超出的响应只保存在磁盘
+     * <p>
+     * <font color="#666666">Set the size limit of a single response in memory. With a disk cache set, larger responses are kept on disk only.</font>
+     *
+     * @param maxMemoryEntryBytes 单条响应的大小上限（字节） <br/> <font color="#666666">Size limit of a single response (bytes)</font>
+     * @return ImResponseCache对象实体 <br/> <font color="#666666">ImResponseCache object entity</font>
+     */
+    public ImResponseCache setMaxMemoryEntryBytes(long maxMemoryEntryBytes) {
+        this.maxMemoryEntryBytes = Math.max(maxMemoryEntryBytes, 0);
+        return this;
+    }
+
+    /**
+     * 获得缓存容量上限
+     * <p>
+     * <font color="#666666">Get the cache capacity</font>
+     *
+     * @return 缓存容量上限（字节） <br/> <font color="#666666">Cache capacity (bytes)</font>
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * 获得已使用的缓存容量
+     * <p>
+     * <font color="#666666">Get the used cache capacity</font>
+     *
+     * @return 已使用的缓存容量（字节） <br/> <font color="#666666">Used cache capacity (bytes)</font>
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * 获得缓存的响应数量
+     * <p>
+     * <font color="#666666">Get the number of cached responses</font>
+     *
+     * @return 缓存的响应数量 <br/> <font color="#666666">Number of cached responses</font>
+     */
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * 获得缓存命中次数
+     * <p>
+     * <font color="#666666">Get the cache hit count</font>
+     *
+     * @return 缓存命中次数 <br/> <font color="#666666">Cache hit count</font>
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * 获得缓存未命中次数
+     * <p>
+     * <font color="#666666">Get the cache miss count</font>
+     *
+     * @return 缓存未命中次数 <br/> <font color="#666666">Cache miss count</font>
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 获得条件请求返回304的次数
+     * <p>
+     * <font color="#666666">Get the number of conditional requests that returned 304</font>
+     *
+     * @return 条件请求返回304的次数 <br/> <font color="#666666">Number of conditional requests that returned 304</font>
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * 获得返回过期响应的次数
+     * <p>
+     * <font color="#666666">Get the number of stale responses returned</font>
+     *
+     * @return 返回过期响应的次数 <br/> <font color="#666666">Number of stale responses returned</font>
+     */
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    /**
+     * 删除指定URL的缓存响应
+     * <p>
+     * <font color="#666666">Remove the cached responses of the given URL</font>
+     *
+     * @param url 请求URL（含查询参数） <br/> <font color="#666666">Request URL (with query parameters)</font>
+     */
+    public void invalidate(String url) {
+        synchronized (this) {
+            remove(key(ImMethod.GET, url));
+            remove(key(ImMethod.HEAD, url));
+        }
+        ImDiskResponseCache diskCache = this.diskCache;
+        if (diskCache != null) {
+            diskCache.remove(key(ImMethod.GET, url));
+            diskCache.remove(key(ImMethod.HEAD, url));
+        }
+    }
+
+    /**
+     * 清空内存缓存（磁盘缓存通过ImDiskResponseCache.clear清空）
+     * <p>
+     * <font color="#666666">Clear the memory cache (the disk cache is cleared with ImDiskResponseCache.clear)</font>
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 如果缓存记录仍然新鲜，获得缓存响应
+     *
+     * @param entry          通过lookup查找的缓存记录，可以为null
+     * @param requestHeaders 请求的实际Header（键不区分大小写）
+     * @param charset        响应内容编码
+     * @return 缓存响应，缓存记录不新鲜时为null
+     * @throws IOException 响应内容编码不支持
+     */
+    ImResponse get(Entry entry, Map<String, String> requestHeaders, String charset) throws IOException {
+        if (entry == null || !entry.isFresh(System.currentTimeMillis())) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        Map<String, String> requestCacheControl = parseCacheControl(requestHeaders.get("Cache-Control"));
+        if (requestCacheControl.containsKey("no-cache") || "no-cache".equalsIgnoreCase(requestHeaders.get("Pragma"))) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        long maxAge = parseSeconds(requestCacheControl.get("max-age"));
+        if (maxAge >= 0 && entry.currentAge(System.currentTimeMillis()) > maxAge * 1000L) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.toResponse(charset).setCacheStatus(ImCacheStatus.HIT);
+    }
+
+    /**
+     * 【内部方法】 如果缓存记录过期但仍在stale-while-revalidate窗口内，获得过期的缓存响应
+     *
+     * @param entry          通过lookup查找的缓存记录，可以为null
+     * @param requestHeaders 请求的实际Header（键不区分大小写）
+     * @param charset        响应内容编码
+     * @return 过期的缓存响应，不在窗口内时为null
+     * @throws IOException 响应内容编码不支持
+     */
+    ImResponse getStaleWhileRevalidate(Entry entry, Map<String, String> requestHeaders, String charset) throws IOException {
+        if (entry == null || entry.currentAge(System.currentTimeMillis()) >= entry.lifetime + entry.staleWhileRevalidate) {
+            return null;
+        }
+        Map<String, String> requestCacheControl = parseCacheControl(requestHeaders.get("Cache-Control"));
+        if (requestCacheControl.containsKey("no-cache") || "no-cache".equalsIgnoreCase(requestHeaders.get("Pragma"))) {
+            return null;
+        }
+        staleCount.incrementAndGet();
+        return entry.toResponse(charset).setCacheStatus(ImCacheStatus.STALE);
+    }
+
+    /**
+     * 【内部方法】 请求失败时，如果缓存记录仍在stale-if-error窗口内，获得过期的缓存响应
+     *
+     * @param entry   通过lookup查找的缓存记录，可以为null
+     * @param charset 响应内容编码
+     * @return 过期的缓存响应，不在窗口内时为null
+     * @throws IOException 响应内容编码不支持
+     */
+    ImResponse getStaleIfError(Entry entry, String charset) throws IOException {
+        if (entry == null || entry.currentAge(System.currentTimeMillis()) >= entry.lifetime + entry.staleIfError) {
+            return null;
+        }
+        staleCount.incrementAndGet();
+        return entry.toResponse(charset).setCacheStatus(ImCacheStatus.STALE);
+    }
+
+    /**
+     * 【内部方法】 开始后台刷新，同一缓存键已在刷新时返回false
+     */
+    boolean beginRefresh(ImMethod method, String url) {
+        return refreshing.add(key(method, url));
+    }
+
+    /**
+     * 【内部方法】 结束后台刷新
+     */
+    void endRefresh(ImMethod method, String url) {
+        refreshing.remove(key(method, url));
+    }
+
+    /**
+     * 【内部方法】 条件请求返回304后，使用缓存的响应内容及合并后的响应头生成响应，并更新缓存记录
+     *
+     * @param method         请求方法
+     * @param url            请求URL（含查询参数）
+     * @param requestHeaders 请求的实际Header（键不区分大小写）
+     * @param entry          发送条件请求所依据的缓存记录
+     * @param notModified    304响应
+     * @param requestTime    请求发出的时间
+     * @param responseTime   收到响应的时间
+     * @param charset        响应内容编码
+     * @return 还原的响应
+     * @throws IOException 响应内容编码不支持
+     */
+    ImResponse revalidate(ImMethod method, String url, Map<String, String> requestHeaders, Entry entry,
+                          ImResponse notModified, long requestTime, long responseTime, String charset) throws IOException {
+        //以304响应头更新保存的响应头（Content-Length除外，RFC 7234 4.3.4）
+        Map<String, List<String>> merged = new LinkedHashMap<String, List<String>>(entry.headers);
+        List<String> setCookieHeaders = null;
+        for (String name : notModified.getHeaderNames()) {
+            if (name == null || "Content-Length".equalsIgnoreCase(name)) {
+                continue;
+            }
+            if ("Set-Cookie".equalsIgnoreCase(name)) {
+                setCookieHeaders = notModified.getHeaderData(name);
+                continue;
+            }
+            Iterator<String> iterator = merged.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (name.equalsIgnoreCase(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            merged.put(name, notModified.getHeaderData(name));
+        }
+
+        ImResponse imResponse = entry.toResponse(charset);
+        imResponse.setFullHeaders(Collections.unmodifiableMap(merged));
+        imResponse.setSetCookieHeaders(setCookieHeaders);
+        imResponse.setCacheStatus(ImCacheStatus.REVALIDATED);
+        revalidatedCount.incrementAndGet();
+
+        put(method, url, requestHeaders, imResponse, requestTime, responseTime);
+        return imResponse;
+    }
+
+    /**
+     * 【内部方法】 查找与请求匹配的缓存记录（不判断新鲜度）
+     */
+    Entry lookup(ImMethod method, String url, Map<String, String> requestHeaders) {
+        String key = key(method, url);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        //内存未命中时从磁盘读取，不超过单条上限的响应放回内存
+        ImDiskResponseCache diskCache = this.diskCache;
+        if (entry == null && diskCache != null) {
+            entry = diskCache.get(key);
+            if (entry != null && entry.weight <= maxMemoryEntryBytes) {
+                synchronized (this) {
+                    if (!entries.containsKey(key)) {
+                        entries.put(key, entry);
+                        size += entry.weight;
+                        evict();
+                    }
+                }
+            }
+        }
+        if (entry == null || !entry.matches(requestHeaders)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 【内部方法】 保存响应
+     *
+     * @param method         请求方法
+     * @param url            请求URL（含查询参数）
+     * @param requestHeaders 请求的实际Header（键不区分大小写）
+     * @param imResponse     响应
+     * @param requestTime    请求发出的时间
+     * @param responseTime   收到响应的时间
+     */
+    void put(ImMethod method, String url, Map<String, String> requestHeaders, ImResponse imResponse,
+             long requestTime, long responseTime) {
+        Entry entry = createEntry(method, url, requestHeaders, imResponse, requestTime, responseTime);
+        String key = key(method, url);
+        ImDiskResponseCache diskCache = this.diskCache;
+        synchronized (this) {
+            remove(key);
+            //不可缓存的响应替换旧的缓存，有磁盘缓存时较大的响应只保存在磁盘
+            if (entry != null && (diskCache == null || entry.weight <= maxMemoryEntryBytes)) {
+                entries.put(key, entry);
+                size += entry.weight;
+                evict();
+            }
+        }
+        if (diskCache != null) {
+            if (entry == null) {
+                diskCache.remove(key);
+                return;
+            }
+            try {
+                diskCache.put(key, entry);
+            } catch (IOException e) {
+                //磁盘写入失败时只保留内存缓存
+                diskCache.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 根据响应创建缓存记录，不可缓存时返回null
+     */
+    Entry createEntry(ImMethod method, String url, Map<String, String> requestHeaders, ImResponse imResponse,
+                      long requestTime, long responseTime) {
+        if (!CACHEABLE_CODES.contains(imResponse.getResponseCode())) {
+            return null;
+        }
+        Map<String, String> requestCacheControl = parseCacheControl(requestHeaders.get("Cache-Control"));
+        if (requestCacheControl.containsKey("no-store")) {
+            return null;
+        }
+
+        Map<String, List<String>> headers = headersOf(imResponse);
+        Map<String, String> cacheControl = parseCacheControl(headerValue(headers, "Cache-Control"));
+        if (cacheControl.containsKey("no-store")) {
+            return null;
+        }
+        if (shared) {
+            if (cacheControl.containsKey("private")) {
+                return null;
+            }
+            //共享缓存只在明确允许时保存带身份认证的请求的响应
+            if (requestHeaders.containsKey("Authorization") && !cacheControl.containsKey("public")
+                    && !cacheControl.containsKey("s-maxage") && !cacheControl.containsKey("must-revalidate")) {
+                return null;
+            }
+        }
+
+        //Vary
+        String vary = headerValue(headers, "Vary");
+        String[] varyNames = new String[0];
+        if (vary != null && !vary.trim().isEmpty()) {
+            if (vary.trim().equals("*")) {
+                return null;
+            }
+            varyNames = vary.split("\\s*,\\s*");
+        }
+        String[] varyValues = new String[varyNames.length];
+        for (int i = 0; i < varyNames.length; i++) {
+            varyNames[i] = varyNames[i].trim();
+            varyValues[i] = requestHeaders.get(varyNames[i]);
+        }
+
+        //有效期：s-maxage（共享缓存）、max-age、Expires
+        long date = HttpDateTool.parse(headerValue(headers, "Date"));
+        boolean hasDate = date != HttpDateTool.INVALID;
+        long lifetime = -1;
+        if (cacheControl.containsKey("no-cache")) {
+            lifetime = 0;
+        } else if (shared && parseSeconds(cacheControl.get("s-maxage")) >= 0) {
+            lifetime = parseSeconds(cacheControl.get("s-maxage")) * 1000L;
+        } else if (parseSeconds(cacheControl.get("max-age")) >= 0) {
+            lifetime = parseSeconds(cacheControl.get("max-age")) * 1000L;
+        } else if (headerValue(headers, "Expires") != null) {
+            //无法解析的Expires表示已过期
+            long expires = HttpDateTool.parse(headerValue(headers, "Expires"));
+            lifetime = expires == HttpDateTool.INVALID ? 0 : Math.max(0, expires - (hasDate ? date : responseTime));
+        }
+        //没有明确有效期但带有验证器的响应，保存后每次使用前重新验证
+        String etag = headerValue(headers, "ETag");
+        String lastModified = headerValue(headers, "Last-Modified");
+        if (lifetime < 0 && (etag != null || lastModified != null)) {
+            lifetime = 0;
+        }
+        if (lifetime < 0) {
+            return null;
+        }
+
+        //初始年龄（RFC 7234 4.2.3）
+        long apparentAge = hasDate ? Math.max(0, responseTime - date) : 0;
+        long ageValue = Math.max(parseSeconds(headerValue(headers, "Age")), 0) * 1000L;
+        long initialAge = Math.max(apparentAge, ageValue + (responseTime - requestTime));
+
+        //去除Set-Cookie响应头
+        Map<String, List<String>> stored = new LinkedHashMap<String, List<String>>();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (!"Set-Cookie".equalsIgnoreCase(header.getKey()) && !"Set-Cookie2".equalsIgnoreCase(header.getKey())) {
+                stored.put(header.getKey(), header.getValue());
+            }
+        }
+
+        //过期后仍可使用的窗口（RFC 5861），must-revalidate时不可使用过期响应
+        long whileRevalidate = staleWhileRevalidate;
+        long ifError = staleIfError;
+        if (parseSeconds(cacheControl.get("stale-while-revalidate")) >= 0) {
+            whileRevalidate = parseSeconds(cacheControl.get("stale-while-revalidate")) * 1000L;
+        }
+        if (parseSeconds(cacheControl.get("stale-if-error")) >= 0) {
+            ifError = parseSeconds(cacheControl.get("stale-if-error")) * 1000L;
+        }
+        if (cacheControl.containsKey("must-revalidate") || cacheControl.containsKey("proxy-revalidate")) {
+            whileRevalidate = 0;
+            ifError = 0;
+        }
+
+        byte[] body = imResponse.getBytesContent() == null ? new byte[0] : imResponse.getBytesContent();
+        return new Entry(imResponse.getResponseCode(), imResponse.getResponseMessage(),
+                Collections.unmodifiableMap(stored), body, varyNames, varyValues, responseTime, initialAge, lifetime,
+                whileRevalidate, ifError);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.weight;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.weight;
+        }
+    }
+
+    private static String key(ImMethod method, String url) {
+        return method + " " + url;
+    }
+
+    private static Map<String, List<String>> headersOf(ImResponse imResponse) {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        for (String name : imResponse.getHeaderNames()) {
+            headers.put(name, imResponse.getHeaderData(name));
+        }
+        return headers;
+    }
+
+    /**
+     * 【内部方法】 获得响应头的值（不区分大小写，多个值以逗号连接）
+     */
+    static String headerValue(Map<String, List<String>> headers, String name) {
+        String value = null;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                for (String item : header.getValue()) {
+                    value = value == null ? item : value + ", " + item;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 【内部方法】 解析Cache-Control，指令名转为小写
+     */
+    static Map<String, String> parseCacheControl(String value) {
+        if (value == null || value.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> directives = new HashMap<String, String>();
+        for (String directive : value.split(",")) {
+            int equals = directive.indexOf('=');
+            if (equals < 0) {
+                directives.put(directive.trim().toLowerCase(Locale.ROOT), "");
+            } else {
+                String argument = directive.substring(equals + 1).trim();
+                if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+                directives.put(directive.substring(0, equals).trim().toLowerCase(Locale.ROOT), argument);
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * 【内部方法】 解析秒数，无法解析时返回-1
+     */
+    static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(Long.parseLong(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 缓存记录
+     */
+    static final class Entry {
+        final int responseCode;
+        final String responseMessage;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+        final String[] varyNames;
+        final String[] varyValues;
+        final long responseTime;
+        final long initialAge;
+        final long lifetime;
+        final long staleWhileRevalidate;
+        final long staleIfError;
+        final long weight;
+        final String etag;
+        final String lastModified;
+
+        //最近一次转换的字符内容，同一编码无需重复转换
+        private volatile String[] stringContent;
+
+        Entry(int responseCode, String responseMessage, Map<String, List<String>> headers, byte[] body,
+              String[] varyNames, String[] varyValues, long responseTime, long initialAge, long lifetime,
+              long staleWhileRevalidate, long staleIfError) {
+            this.responseCode = responseCode;
+            this.responseMessage = responseMessage;
+            this.headers = headers;
+            this.body = body;
+            this.varyNames = varyNames;
+            this.varyValues = varyValues;
+            this.responseTime = responseTime;
+            this.initialAge = initialAge;
+            this.lifetime = lifetime;
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            this.staleIfError = staleIfError;
+
+            long weight = 128 + body.length;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                weight += header.getKey() == null ? 0 : header.getKey().length() * 2;
+                for (String value : header.getValue()) {
+                    weight += value.length() * 2;
+                }
+            }
+            this.weight = weight;
+            this.etag = headerValue(headers, "ETag");
+            this.lastModified = headerValue(headers, "Last-Modified");
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        long currentAge(long now) {
+            return initialAge + Math.max(0, now - responseTime);
+        }
+
+        boolean isFresh(long now) {
+            return currentAge(now) < lifetime;
+        }
+
+        boolean matches(Map<String, String> requestHeaders) {
+            for (int i = 0; i < varyNames.length; i++) {
+                String value = requestHeaders.get(varyNames[i]);
+                if (value == null ? varyValues[i] != null : !value.equals(varyValues[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        ImResponse toResponse(String charset) throws IOException {
+            String[] content = stringContent;
+            if (content == null || !content[0].equals(charset)) {
+                content = new String[]{charset, ImHttpClient.toStringContent(body, charset)};
+                stringContent = content;
+            }
+            ImResponse imResponse = new ImResponse();
+            imResponse.setResponseCode(responseCode);
+            imResponse.setResponseMessage(responseMessage);
+            imResponse.setBytesContent(body.clone());
+            imResponse.setStringContent(content[1]);
+            imResponse.setFullHeaders(headers);
+            imResponse.setFullCookie("");
+            return imResponse;
+        }
+    }
+}
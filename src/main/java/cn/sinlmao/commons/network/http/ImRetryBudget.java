@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <b>重试预算类</b>
+ * <p>
+ * 该类以令牌桶限制重试占总请求的比例：每个请求存入retryRatio个令牌，每次重试取出一个令牌，令牌不足时不再重试；
+ * 另外每秒补充minRetriesPerSecond个令牌，保证请求量很小时仍可重试。令牌最多积累maxBalance个，
+ * 服务整体故障时重试量不会超过正常流量的固定比例，避免重试放大故障
+ * <br/><br/>
+ * <b>Retry budget class</b>
+ * <p>
+ * This class caps retries at a share of all requests with a token bucket: every request deposits retryRatio tokens,
+ * every retry withdraws one, and no retry is made when the bucket is empty. minRetriesPerSecond tokens are added every
+ * second as well, so that retries still work at very low traffic. At most maxBalance tokens are kept, so during an
+ * outage retries never exceed a fixed share of normal traffic and do not amplify it.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 重试预算类
+ * @create 2019-11-18 14:20
+ * @see ImHttpClient#setRetryBudget(ImRetryBudget)
+ * @since 1.5.0
+ */
+public class ImRetryBudget {
+
+    //令牌以千分之一为单位保存
+    private final static long SCALE = 1000;
+
+    private final long deposit;
+    private final long minRetriesPerSecond;
+    private final long maxBalance;
+
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建重试预算，每秒补充10个令牌，最多积累100个令牌
+     * <p>
+     * <font color="#666666">Build a retry budget that adds 10 tokens per second and keeps at most 100 tokens</font>
+     *
+     * @param retryRatio 重试占请求的比例，如0.1 <br/> <font color="#666666">Share of requests that may be retried, such as 0.1</font>
+     */
+    public ImRetryBudget(double retryRatio) {
+        this(retryRatio, 10, 100);
+    }
+
+    /**
+     * 构建重试预算
+     * <p>
+     * <font color="#666666">Build a retry budget</font>
+     *
+     * @param retryRatio          重试占请求的比例，如0.1 <br/> <font color="#666666">Share of requests that may be retried, such as 0.1</font>
+     * @param minRetriesPerSecond 每秒补充的令牌数 <br/> <font color="#666666">Tokens added per second</font>
+     * @param maxBalance          最多积累的令牌数 <br/> <font color="#666666">Maximum number of tokens kept</font>
+     */
+    public ImRetryBudget(double retryRatio, int minRetriesPerSecond, int maxBalance) {
+        if (retryRatio < 0 || minRetriesPerSecond < 0 || maxBalance < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.deposit = Math.round(retryRatio * SCALE);
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxBalance = maxBalance * SCALE;
+        this.balance = new AtomicLong(Math.min(minRetriesPerSecond, maxBalance) * SCALE);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得当前可用的令牌数
+     * <p>
+     * <font color="#666666">Get the number of tokens currently available</font>
+     *
+     * @return 可用的令牌数 <br/> <font color="#666666">Tokens available</font>
+     */
+    public double getBalance() {
+        refill();
+        return (double) balance.get() / SCALE;
+    }
+
+    /**
+     * 获得已执行的重试次数
+     * <p>
+     * <font color="#666666">Get the number of retries made</font>
+     *
+     * @return 已执行的重试次数 <br/> <font color="#666666">Retries made</font>
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * 获得因预算不足而放弃的重试次数
+     * <p>
+     * <font color="#666666">Get the number of retries given up because the budget was exhausted</font>
+     *
+     * @return 放弃的重试次数 <br/> <font color="#666666">Retries given up</font>
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 每个请求存入令牌
+     */
+    void deposit() {
+        add(deposit);
+    }
+
+    /**
+     * 【内部方法】 重试前取出一个令牌
+     *
+     * @return 是否可以重试
+     */
+    boolean tryWithdraw() {
+        refill();
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                rejectedCount.incrementAndGet();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        retryCount.incrementAndGet();
+        return true;
+    }
+
+    private void refill() {
+        if (minRetriesPerSecond == 0) {
+            return;
+        }
+        long last = lastRefill.get();
+        long now = System.nanoTime();
+        //最多按一分钟计算，避免长时间空闲后溢出
+        long elapsed = Math.min(now - last, TimeUnit.MINUTES.toNanos(1));
+        long tokens = elapsed * minRetriesPerSecond * SCALE / TimeUnit.SECONDS.toNanos(1);
+        //只有一个线程可以补充同一段时间的令牌
+        if (tokens > 0 && lastRefill.compareAndSet(last, now)) {
+            add(tokens);
+        }
+    }
+
+    private void add(long tokens) {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(current + tokens, maxBalance)));
+    }
+}
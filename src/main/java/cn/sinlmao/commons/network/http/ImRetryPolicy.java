@@ -0,0 +1,284 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import cn.sinlmao.commons.network.exception.BulkheadFullException;
+import cn.sinlmao.commons.network.exception.CircuitBreakerOpenException;
+import cn.sinlmao.commons.network.exception.ConcurrencyLimitException;
+import cn.sinlmao.commons.network.exception.RateLimitException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <b>请求重试策略类</b>
+ * <p>
+ * 该类定义请求失败后的重试条件及间隔：建立连接失败时（请求尚未发出）任何方法都可以重试；
+ * 服务器返回502、503、504等指定状态码时，默认只重试幂等方法（GET、HEAD、OPTIONS、PUT、DELETE）。
+ * 重试间隔为带完全抖动的指数退避，即在0到min(maxDelay, baseDelay * 2^(n-1))之间随机选择，避免大量客户端同时重试；
+ * 重试不会超过请求的整体超时时间，并受ImHttpClient的重试预算限制；熔断器打开、超过并发或速率限制、隔离舱已满等快速拒绝不会重试
+ * <br/><br/>
+ * <b>Request retry policy class</b>
+ * <p>
+ * This class defines when and how soon a failed request is retried. Connect failures (the request was never sent) are
+ * retried for any method. Responses with configured status codes such as 502, 503 and 504 are retried for idempotent
+ * methods only (GET, HEAD, OPTIONS, PUT, DELETE) by default. The delay is exponential backoff with full jitter, a random
+ * value between 0 and min(maxDelay, baseDelay * 2^(n-1)), so that many clients do not retry in lockstep. Retries never
+ * go past the call timeout of the request and are limited by the retry budget of ImHttpClient. Fast rejections (open
+ * circuit, concurrency or rate limit exceeded, full bulkhead) are never retried.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 请求重试策略类
+ * @create 2019-11-18 14:05
+ * @see ImRequest#setRetryPolicy(ImRetryPolicy)
+ * @see ImHttpClient#setRetryPolicy(ImRetryPolicy)
+ * @see ImRetryBudget
+ * @since 1.5.0
+ */
+public class ImRetryPolicy {
+
+    private volatile int maxAttempts = 3;
+    private volatile long baseDelay = 100;
+    private volatile long maxDelay = 10000;
+    private volatile boolean retryOnConnectFailure = true;
+    private volatile boolean idempotentOnly = true;
+    private volatile Set<Integer> retryStatusCodes = toSet(502, 503, 504);
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置最多执行次数（包括首次请求），默认为3
+     * <p>
+     * <font color="#666666">Set the maximum number of attempts (including the first request), default is 3</font>
+     *
+     * @param maxAttempts 最多执行次数 <br/> <font color="#666666">Maximum number of attempts</font>
+     * @return ImRetryPolicy对象实体 <br/> <font color="#666666">ImRetryPolicy object entity</font>
+     */
+    public ImRetryPolicy setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        return this;
+    }
+
+    /**
+     * 获得最多执行次数
+     * <p>
+     * <font color="#666666">Get the maximum number of attempts</font>
+     *
+     * @return 最多执行次数 <br/> <font color="#666666">Maximum number of attempts</font>
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 设置退避的基础间隔及最大间隔（毫秒），默认为100及10000
+     * <p>
+     * <font color="#666666">Set the base and maximum backoff delay (milliseconds), default is 100 and 10000</font>
+     *
+     * @param baseDelay 基础间隔 <br/> <font color="#666666">Base delay</font>
+     * @param maxDelay  最大间隔 <br/> <font color="#666666">Maximum delay</font>
+     * @return ImRetryPolicy对象实体 <br/> <font color="#666666">ImRetryPolicy object entity</font>
+     */
+    public ImRetryPolicy setBackoff(long baseDelay, long maxDelay) {
+        this.baseDelay = Math.max(baseDelay, 0);
+        this.maxDelay = Math.max(maxDelay, this.baseDelay);
+        return this;
+    }
+
+    /**
+     * 获得退避的基础间隔（毫秒）
+     * <p>
+     * <font color="#666666">Get the base backoff delay (milliseconds)</font>
+     *
+     * @return 基础间隔 <br/> <font color="#666666">Base delay</font>
+     */
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * 获得退避的最大间隔（毫秒）
+     * <p>
+     * <font color="#666666">Get the maximum backoff delay (milliseconds)</font>
+     *
+     * @return 最大间隔 <br/> <font color="#666666">Maximum delay</font>
+     */
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * 设置建立连接失败时是否重试，默认为true
+     * <p>
+     * <font color="#666666">Set whether to retry when the connection cannot be established, default is true</font>
+     *
+     * @param retryOnConnectFailure 建立连接失败时是否重试 <br/> <font color="#666666">Whether to retry on connect failures</font>
+     * @return ImRetryPolicy对象实体 <br/> <font color="#666666">ImRetryPolicy object entity</font>
+     */
+    public ImRetryPolicy setRetryOnConnectFailure(boolean retryOnConnectFailure) {
+        this.retryOnConnectFailure = retryOnConnectFailure;
+        return this;
+    }
+
+    /**
+     * 建立连接失败时是否重试
+     * <p>
+     * <font color="#666666">Whether to retry when the connection cannot be established</font>
+     *
+     * @return 建立连接失败时是否重试 <br/> <font color="#666666">Whether to retry on connect failures</font>
+     */
+    public boolean isRetryOnConnectFailure() {
+        return retryOnConnectFailure;
+    }
+
+    /**
+     * 设置需要重试的响应状态码，默认为502、503、504
+     * <p>
+     * <font color="#666666">Set the response status codes to retry, default is 502, 503 and 504</font>
+     *
+     * @param codes 响应状态码 <br/> <font color="#666666">Response status codes</font>
+     * @return ImRetryPolicy对象实体 <br/> <font color="#666666">ImRetryPolicy object entity</font>
+     */
+    public ImRetryPolicy setRetryStatusCodes(int... codes) {
+        this.retryStatusCodes = toSet(codes);
+        return this;
+    }
+
+    /**
+     * 获得需要重试的响应状态码
+     * <p>
+     * <font color="#666666">Get the response status codes to retry</font>
+     *
+     * @return 响应状态码 <br/> <font color="#666666">Response status codes</font>
+     */
+    public Set<Integer> getRetryStatusCodes() {
+        return new HashSet<Integer>(retryStatusCodes);
+    }
+
+    /**
+     * 设置按状态码重试时是否只重试幂等方法，默认为true
+     * <p>
+     * <font color="#666666">Set whether only idempotent methods are retried on status codes, default is true</font>
+     *
+     * @param idempotentOnly 是否只重试幂等方法 <br/> <font color="#666666">Whether only idempotent methods are retried</font>
+     * @return ImRetryPolicy对象实体 <br/> <font color="#666666">ImRetryPolicy object entity</font>
+     */
+    public ImRetryPolicy setIdempotentOnly(boolean idempotentOnly) {
+        this.idempotentOnly = idempotentOnly;
+        return this;
+    }
+
+    /**
+     * 按状态码重试时是否只重试幂等方法
+     * <p>
+     * <font color="#666666">Whether only idempotent methods are retried on status codes</font>
+     *
+     * @return 是否只重试幂等方法 <br/> <font color="#666666">Whether only idempotent methods are retried</font>
+     */
+    public boolean isIdempotentOnly() {
+        return idempotentOnly;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 判断请求是否可以重试
+     *
+     * @param method       请求方法
+     * @param failure      请求抛出的异常，可以为null
+     * @param responseCode 响应状态码，未收到响应时为0
+     * @return 是否可以重试
+     */
+    boolean shouldRetry(ImMethod method, IOException failure, int responseCode) {
+        //熔断、并发及速率限制、隔离舱的拒绝用于削减负载，重试只会增加负载
+        if (isRejection(failure)) {
+            return false;
+        }
+        if (failure != null && responseCode == 0) {
+            return retryOnConnectFailure && isConnectFailure(failure);
+        }
+        if (!retryStatusCodes.contains(responseCode)) {
+            return false;
+        }
+        return !idempotentOnly || isIdempotent(method);
+    }
+
+    /**
+     * 【内部方法】 获得第attempt次请求失败后的退避时间（毫秒）
+     *
+     * @param attempt 已执行的次数，从1开始
+     * @return 退避时间
+     */
+    long backoff(int attempt) {
+        long cap = baseDelay << Math.min(attempt - 1, 30);
+        if (cap <= 0 || cap > maxDelay) {
+            cap = maxDelay;
+        }
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * 【内部方法】 是否为幂等方法
+     *
+     * @param method 请求方法
+     * @return 是否为幂等方法
+     */
+    static boolean isIdempotent(ImMethod method) {
+        return method == ImMethod.GET || method == ImMethod.HEAD || method == ImMethod.OPTIONS
+                || method == ImMethod.PUT || method == ImMethod.DELETE;
+    }
+
+    /**
+     * 【内部方法】 是否为客户端的快速拒绝（熔断器打开、超过并发或速率限制、隔离舱已满）
+     *
+     * @param e 请求抛出的异常，可以为null
+     * @return 是否为快速拒绝
+     */
+    static boolean isRejection(IOException e) {
+        return e instanceof CircuitBreakerOpenException || e instanceof ConcurrencyLimitException
+                || e instanceof RateLimitException || e instanceof BulkheadFullException;
+    }
+
+    /**
+     * 【内部方法】 是否为建立连接失败（请求尚未发出）
+     *
+     * @param e 请求抛出的异常
+     * @return 是否为建立连接失败
+     */
+    static boolean isConnectFailure(IOException e) {
+        if (e instanceof ConnectException || e instanceof NoRouteToHostException) {
+            return true;
+        }
+        return e instanceof SocketTimeoutException && e.getMessage() != null
+                && e.getMessage().toLowerCase().startsWith("connect timed out");
+    }
+
+    private static Set<Integer> toSet(int... codes) {
+        Set<Integer> set = new HashSet<Integer>();
+        if (codes != null) {
+            for (int code : codes) {
+                set.add(code);
+            }
+        }
+        return set;
+    }
+}
@@ -16,20 +16,34 @@
 package cn.sinlmao.commons.network.http;
 
 import cn.sinlmao.commons.network.callback.ImSessionCallback;
+import cn.sinlmao.commons.network.exception.AuthenticationException;
 import com.alibaba.fastjson.JSONObject;
 
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * <b>会话状态控制对象类</b>
  * <p>
  * 该类用于需要使用会话状态控制的场景，作为数据存储的对象使用
+ * <p>
+ * 会话可以被并发请求共享：Header采用写时复制，Cookie和Extra保存在并发结构中，每个请求使用无锁获取的ImSessionSnapshot快照
  * <br/><br/>
  * <b>Session state control object class</b>
  * <p>
  * This class is used for scenarios that require session state control and is used as an object of data storage.
+ * <p>
+ * The session can be shared by concurrent requests: headers are copy-on-write, cookies and extras are kept in concurrent
+ * structures, and each request works on an ImSessionSnapshot taken without locking.
  *
  * @author Sinlmao
  * @program Sinlmao Commons Network Utils
@@ -38,18 +52,44 @@ import java.util.Set;
  */
 public class ImSession {
 
-    private boolean needAuthentication = false;
-    private boolean autoAuthentication = false;
-    private int autoAuthenticationTryCount = 3;
+    private volatile boolean needAuthentication = false;
+    private volatile boolean autoAuthentication = false;
+    private volatile int autoAuthenticationTryCount = 3;
+    private volatile long authenticationTimeout = 30000;
+    private volatile ImRateLimiter rateLimiter;
+
+    private volatile ImSessionCallback callback;
+
+    //Header读多写少，采用写时复制
+    private volatile Map<String, String> headers = Collections.emptyMap();
+    private final Object headerLock = new Object();
+
+    private final ImCookieStore cookieStore = new ImCookieStore();
+
+    //替换身份凭据时独占，获取快照时乐观读取，保证快照中的Header与Cookie来自同一次替换
+    private final StampedLock credentialLock = new StampedLock();
+
+    //会话在进程内的唯一标识，用于区分不同会话的请求（如合并请求）
+    private final static AtomicLong IDENTITIES = new AtomicLong();
+    private final long identity = IDENTITIES.incrementAndGet();
 
-    private ImSessionCallback callback;
+    private final Map<String, Object> extras = new ConcurrentHashMap<String, Object>();
 
-    private Map<String, String> headers = new HashMap<String, String>();
-    private Map<String, String> cookies = new HashMap<String, String>();
+    //正在使用该会话的请求数量及最近一次使用时间，会话注册表不压缩正在使用或刚使用过的会话
+    private final AtomicInteger pins = new AtomicInteger();
+    private volatile long lastUsed = System.nanoTime();
 
-    private Map<String, Object> extras = new HashMap<String, Object>();
+    //正在进行的身份认证，同一时刻只有一个调用者执行身份认证，其余调用者等待同一结果
+    private final AtomicReference<CompletableFuture<Boolean>> authenticationFlight = new AtomicReference<CompletableFuture<Boolean>>();
+    //当前线程是否正在执行身份认证回调
+    private final ThreadLocal<Boolean> execCallbackNow = new ThreadLocal<Boolean>();
 
-    protected boolean ExecCallbackNow = false;
+    //身份凭据过期时间及后台刷新
+    private volatile long credentialExpiresAt = -1;
+    private volatile ImRequest refreshRequest;
+    private volatile long refreshMargin;
+    private ScheduledFuture<?> refreshFuture;
+    private final Object refreshLock = new Object();
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
@@ -143,6 +183,175 @@ public class ImSession {
         return autoAuthenticationTryCount;
     }
 
+    /**
+     * 设置等待身份认证的超时时间（毫秒）
+     * <p>
+     * 当多个请求同时需要身份认证时，只有一个请求执行身份认证，其余请求最多等待该时间，超时则抛出AuthenticationException
+     * <p>
+     * <font color="#666666">Set the timeout for waiting for authentication (milliseconds)</font>
+     * <p>
+     * <font color="#666666">When several requests need authentication at the same time, only one of them performs it and the
+     * others wait at most this long, after which AuthenticationException is thrown.</font>
+     *
+     * @param authenticationTimeout 等待身份认证的超时时间 <br/> <font color="#666666">Timeout for waiting for authentication</font>
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession setAuthenticationTimeout(long authenticationTimeout) {
+        this.authenticationTimeout = authenticationTimeout < 1 ? 1 : authenticationTimeout;
+        return this;
+    }
+
+    /**
+     * 获取等待身份认证的超时时间（毫秒）
+     * <p>
+     * <font color="#666666">Get the timeout for waiting for authentication (milliseconds)</font>
+     *
+     * @return authenticationTimeout 等待身份认证的超时时间 <br/> <font color="#666666">Timeout for waiting for authentication</font>
+     * @since 1.5.0
+     */
+    public long getAuthenticationTimeout() {
+        return authenticationTimeout;
+    }
+
+    /**
+     * 设置会话的速率限制，使用该会话的所有请求共用，设置为null时不限制
+     * <p>
+     * <font color="#666666">Set the rate limiter of the session, shared by all requests using it. Set to null for no limit.</font>
+     *
+     * @param rateLimiter 速率限制 <br/> <font color="#666666">Rate limiter</font>
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession setRateLimiter(ImRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * 获取会话的速率限制
+     * <p>
+     * <font color="#666666">Get the rate limiter of the session</font>
+     *
+     * @return 速率限制，未设置时为null <br/> <font color="#666666">Rate limiter, null when not set</font>
+     * @since 1.5.0
+     */
+    public ImRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 设置身份凭据的过期时间（Unix时间戳，毫秒），一般在ImSessionCallback.doAuthentication中取得身份认证后调用
+     * <p>
+     * 如果已经开启后台刷新，将在过期前的提前量时间执行身份认证
+     * <p>
+     * <font color="#666666">Set the expiry time of the credential (Unix timestamp, milliseconds), usually called in
+     * ImSessionCallback.doAuthentication after the authentication has been obtained</font>
+     * <p>
+     * <font color="#666666">If background refresh is enabled, authentication is performed the margin before expiry.</font>
+     *
+     * @param credentialExpiresAt 身份凭据的过期时间，小于0表示未知 <br/> <font color="#666666">Expiry time of the credential, less than 0 means unknown</font>
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession setCredentialExpiresAt(long credentialExpiresAt) {
+        this.credentialExpiresAt = credentialExpiresAt;
+        scheduleRefresh();
+        return this;
+    }
+
+    /**
+     * 获取身份凭据的过期时间（Unix时间戳，毫秒）
+     * <p>
+     * <font color="#666666">Get the expiry time of the credential (Unix timestamp, milliseconds)</font>
+     *
+     * @return credentialExpiresAt 身份凭据的过期时间，小于0表示未知 <br/> <font color="#666666">Expiry time of the credential, less than 0 means unknown</font>
+     * @since 1.5.0
+     */
+    public long getCredentialExpiresAt() {
+        return credentialExpiresAt;
+    }
+
+    /**
+     * 一次性替换身份凭据
+     * <p>
+     * Header和未指定域名的Cookie作为一次整体替换，请求获得的快照要么全部是旧凭据，要么全部是新凭据，不会看到部分更新的Header或Cookie；
+     * 在新凭据写入前，旧凭据在过期前仍然有效
+     * <p>
+     * <font color="#666666">Replace the credentials in one go</font>
+     * <p>
+     * <font color="#666666">Headers and cookies without a domain are replaced together as one update, so the snapshot of a
+     * request sees either all old or all new credentials and never partially updated headers or cookies; the old
+     * credentials stay valid until they expire.</font>
+     *
+     * @param headers             新的Header数据，可以为null <br/> <font color="#666666">New Header data, may be null</font>
+     * @param cookies             新的Cookie数据，可以为null <br/> <font color="#666666">New Cookie data, may be null</font>
+     * @param credentialExpiresAt 身份凭据的过期时间 <br/> <font color="#666666">Expiry time of the credential</font>
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession swapCredentials(Map<String, String> headers, Map<String, String> cookies, long credentialExpiresAt) {
+        long stamp = credentialLock.writeLock();
+        try {
+            if (headers != null && headers.size() > 0) {
+                putHeaders(headers, true);
+            }
+            if (cookies != null && cookies.size() > 0) {
+                cookieStore.setCookies(cookies);
+            }
+        } finally {
+            credentialLock.unlockWrite(stamp);
+        }
+        return setCredentialExpiresAt(credentialExpiresAt);
+    }
+
+    /**
+     * 开启身份凭据后台刷新
+     * <p>
+     * 在身份凭据过期前的提前量时间，由后台线程执行ImSessionCallback.doAuthentication，请求在此期间继续使用旧凭据而不需要等待；
+     * 需要在回调中通过setCredentialExpiresAt或swapCredentials设置过期时间。后台刷新只弱引用会话，不再使用的会话仍会被回收，并随之停止刷新
+     * <p>
+     * <font color="#666666">Enable background refresh of the credential</font>
+     * <p>
+     * <font color="#666666">The margin before the credential expires, a background thread runs
+     * ImSessionCallback.doAuthentication, and requests keep using the old credential meanwhile without waiting. The expiry
+     * must be set in the callback through setCredentialExpiresAt or swapCredentials. The background refresh only holds a
+     * weak reference to the session, so a session no longer in use is still collected and its refresh stops.</font>
+     *
+     * @param refreshRequest 传给身份认证回调的ImRequest <br/> <font color="#666666">ImRequest passed to the authentication callback</font>
+     * @param margin         过期前的提前量（毫秒） <br/> <font color="#666666">Margin before expiry (milliseconds)</font>
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession enableAutoRefresh(ImRequest refreshRequest, long margin) {
+        if (refreshRequest == null) {
+            throw new NullPointerException();
+        }
+        this.refreshRequest = refreshRequest;
+        this.refreshMargin = margin < 0 ? 0 : margin;
+        scheduleRefresh();
+        return this;
+    }
+
+    /**
+     * 关闭身份凭据后台刷新
+     * <p>
+     * <font color="#666666">Disable background refresh of the credential</font>
+     *
+     * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
+     * @since 1.5.0
+     */
+    public ImSession disableAutoRefresh() {
+        synchronized (refreshLock) {
+            refreshRequest = null;
+            if (refreshFuture != null) {
+                refreshFuture.cancel(false);
+                refreshFuture = null;
+            }
+        }
+        return this;
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -170,10 +379,7 @@ public class ImSession {
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession addHeader(String name, String value) {
-        if (!headers.containsKey(name)) {
-            headers.put(name, value);
-        }
-        return this;
+        return putHeaders(Collections.singletonMap(name, value), false);
     }
 
     /**
@@ -186,9 +392,7 @@ public class ImSession {
      */
     public ImSession addHeader(Map<String, String> headers) {
         if (headers != null && headers.size() > 0) {
-            for (String key : headers.keySet()) {
-                addHeader(key, headers.get(key));
-            }
+            putHeaders(headers, false);
         }
         return this;
     }
@@ -203,9 +407,7 @@ public class ImSession {
      */
     public ImSession addHeader(JSONObject headers) {
         if (headers != null && headers.size() > 0) {
-            for (String key : headers.keySet()) {
-                addHeader(key, headers.getString(key));
-            }
+            putHeaders(toStringMap(headers), false);
         }
         return this;
     }
@@ -220,11 +422,7 @@ public class ImSession {
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession setHeader(String name, String value) {
-        if (headers.containsKey(name)) {
-            headers.remove(name);
-        }
-        headers.put(name, value);
-        return this;
+        return putHeaders(Collections.singletonMap(name, value), true);
     }
 
     /**
@@ -237,9 +435,7 @@ public class ImSession {
      */
     public ImSession setHeader(JSONObject headers) {
         if (headers != null && headers.size() > 0) {
-            for (String key : headers.keySet()) {
-                setHeader(key, headers.getString(key));
-            }
+            putHeaders(toStringMap(headers), true);
         }
         return this;
     }
@@ -254,9 +450,7 @@ public class ImSession {
      */
     public ImSession setHeader(Map<String, String> headers) {
         if (headers != null && headers.size() > 0) {
-            for (String key : headers.keySet()) {
-                setHeader(key, headers.get(key));
-            }
+            putHeaders(headers, true);
         }
         return this;
     }
@@ -273,9 +467,7 @@ public class ImSession {
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession addCookie(String name, String value) {
-        if (!cookies.containsKey(name)) {
-            cookies.put(name, value);
-        }
+        cookieStore.addCookie(name, value);
         return this;
     }
 
@@ -323,10 +515,7 @@ public class ImSession {
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession setCookie(String name, String value) {
-        if (cookies.containsKey(name)) {
-            cookies.remove(name);
-        }
-        cookies.put(name, value);
+        cookieStore.setCookie(name, value);
         return this;
     }
 
@@ -340,9 +529,7 @@ public class ImSession {
      */
     public ImSession setCookie(Map<String, String> cookies) {
         if (cookies != null && cookies.size() > 0) {
-            for (String key : cookies.keySet()) {
-                setCookie(key, cookies.get(key));
-            }
+            cookieStore.setCookies(cookies);
         }
         return this;
     }
@@ -357,9 +544,7 @@ public class ImSession {
      */
     public ImSession setCookie(JSONObject cookies) {
         if (cookies != null && cookies.size() > 0) {
-            for (String key : cookies.keySet()) {
-                setCookie(key, cookies.getString(key));
-            }
+            cookieStore.setCookies(toStringMap(cookies));
         }
         return this;
     }
@@ -376,8 +561,8 @@ public class ImSession {
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession addExtra(String name, Object value) {
-        if (!extras.containsKey(name)) {
-            extras.put(name, value);
+        if (value != null) {
+            extras.putIfAbsent(name, value);
         }
         return this;
     }
@@ -420,16 +605,21 @@ public class ImSession {
      * 设置Extra（额外/附加）数据，当数据已经存在，则以最后设置的为准
      * <p>
      * <font color="#666666">Set the Extra (extra/additional) data. When the data already exists, the last setting is subject to</font>
+     * <p>
+     * 设置为null时将移除该数据
+     * <p>
+     * <font color="#666666">Setting null removes the data</font>
      *
      * @param name  Header键 <br/> <font color="#666666">Extra Key</font>
      * @param value Header值 <br/> <font color="#666666">Extra Value</font>
      * @return ImSession对象实体 <br/> <font color="#666666">ImSession object entity</font>
      */
     public ImSession setExtra(String name, Object value) {
-        if (!extras.containsKey(name)) {
+        if (value == null) {
             extras.remove(name);
+        } else {
+            extras.put(name, value);
         }
-        extras.put(name, value);
         return this;
     }
 
@@ -512,7 +702,7 @@ public class ImSession {
      * @return Cookie值 <br /> <font color="#666666">Cookie Value</font>
      */
     public String getCookieData(String name) {
-        return cookies.get(name);
+        return cookieStore.getCookieData(name);
     }
 
     /**
@@ -523,7 +713,7 @@ public class ImSession {
      * @return 所有Cookie键 <br /> <font color="#666666">All Cookie keys</font>
      */
     public Set<String> getCookieNames() {
-        return cookies.keySet();
+        return cookieStore.getCookieNames();
     }
 
     /**
@@ -534,7 +724,20 @@ public class ImSession {
      * @return Cookie数量 <br /> <font color="#666666">Cookies count</font>
      */
     public int getCookieSize() {
-        return cookies.size();
+        return cookieStore.getCookieSize();
+    }
+
+    /**
+     * 获得会话的Cookie存储
+     * <p>
+     * <font color="#666666">Get the cookie store of the session</font>
+     *
+     * @return Cookie存储 <br /> <font color="#666666">Cookie store</font>
+     * @see ImCookieStore
+     * @since 1.5.0
+     */
+    public ImCookieStore getCookieStore() {
+        return cookieStore;
     }
 
     /**
@@ -573,6 +776,312 @@ public class ImSession {
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * 获得会话状态快照，快照包含当前所有Header和未指定域名的Cookie
+     * <p>
+     * <font color="#666666">Get a snapshot of the session state, including all current headers and cookies without a domain</font>
+     *
+     * @return 会话状态快照 <br /> <font color="#666666">Session state snapshot</font>
+     * @see ImSessionSnapshot
+     * @since 1.5.0
+     */
+    public ImSessionSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * 获得适用于请求URL的会话状态快照
+     * <p>
+     * 快照在获取后不再变化，请求在执行期间始终看到一致的Header和Cookie；获取快照通常不需要加锁，仅在与swapCredentials并发时等待其完成
+     * <p>
+     * <font color="#666666">Get a snapshot of the session state that applies to the request URL</font>
+     * <p>
+     * <font color="#666666">A snapshot does not change once taken, so a request always sees consistent headers and cookies
+     * during its execution. Taking a snapshot normally does not lock, it only waits when it races with swapCredentials.</font>
+     *
+     * @param requestUrl 请求URL <br /> <font color="#666666">Request URL</font>
+     * @return 会话状态快照 <br /> <font color="#666666">Session state snapshot</font>
+     * @see ImSessionSnapshot
+     * @since 1.5.0
+     */
+    public ImSessionSnapshot snapshot(URL requestUrl) {
+        long stamp = credentialLock.tryOptimisticRead();
+        Map<String, String> headers = this.headers;
+        String cookieHeader = getCookieHeader(requestUrl);
+        if (!credentialLock.validate(stamp)) {
+            //与替换身份凭据并发时，在读锁内重新读取
+            stamp = credentialLock.readLock();
+            try {
+                headers = this.headers;
+                cookieHeader = getCookieHeader(requestUrl);
+            } finally {
+                credentialLock.unlockRead(stamp);
+            }
+        }
+        return new ImSessionSnapshot(identity, headers, cookieHeader);
+    }
+
+    private String getCookieHeader(URL requestUrl) {
+        return requestUrl == null ? ImCookieStore.serialize(cookieStore.getGlobalCookies()) : cookieStore.getCookieHeader(requestUrl);
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 以写时复制的方式写入Header
+     *
+     * @param values    Header数据
+     * @param overwrite 是否覆盖已存在的数据
+     * @return ImSession对象实体
+     */
+    private ImSession putHeaders(Map<String, String> values, boolean overwrite) {
+        synchronized (headerLock) {
+            Map<String, String> copy = new HashMap<String, String>(headers);
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (overwrite || !copy.containsKey(entry.getKey())) {
+                    copy.put(entry.getKey(), entry.getValue());
+                }
+            }
+            headers = Collections.unmodifiableMap(copy);
+        }
+        return this;
+    }
+
+    private static Map<String, String> toStringMap(JSONObject json) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (String key : json.keySet()) {
+            map.put(key, json.getString(key));
+        }
+        return map;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 检查身份认证状态，必要时执行身份认证
+     * <p>
+     * 同一时刻只有一个调用者执行doAuthentication，其余调用者等待同一结果；在身份认证回调中发起的请求不再检查身份认证
+     *
+     * @param imRequest ImRequest会话请求数据
+     * @param timeout   等待身份认证的超时时间（毫秒）
+     * @throws AuthenticationException 未取得身份认证、身份认证失败或等待超时
+     */
+    protected void checkAuthentication(ImRequest imRequest, long timeout) throws AuthenticationException {
+        ImSessionCallback callback = this.callback;
+        //未设置回调接口或不需要身份认证
+        if (callback == null || !needAuthentication) {
+            return;
+        }
+        //身份认证回调中发起的请求
+        if (isExecCallbackNow()) {
+            return;
+        }
+        //已经取得身份认证
+        if (callIsAuthentication(callback, imRequest)) {
+            return;
+        }
+        if (!autoAuthentication) {
+            throw new AuthenticationException(AuthenticationException.NotHaveAuthentication);
+        }
+        authenticate(callback, imRequest, timeout, false);
+    }
+
+    /**
+     * 【内部方法】 合并执行身份认证
+     *
+     * @param force 是否在已经取得身份认证时仍然执行doAuthentication（用于后台刷新）
+     */
+    private void authenticate(ImSessionCallback callback, ImRequest imRequest, long timeout, boolean force) throws AuthenticationException {
+        CompletableFuture<Boolean> flight = new CompletableFuture<Boolean>();
+        CompletableFuture<Boolean> current;
+        do {
+            current = authenticationFlight.get();
+        } while (current == null && !authenticationFlight.compareAndSet(null, flight));
+
+        //已有调用者正在执行身份认证，等待其结果
+        if (current != null) {
+            boolean isAuthentication;
+            try {
+                isAuthentication = current.get(timeout, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new AuthenticationException(AuthenticationException.AuthenticationTimeout, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AuthenticationException(AuthenticationException.AuthenticationTimeout, e);
+            } catch (ExecutionException e) {
+                throw new AuthenticationException(AuthenticationException.AuthenticationFailed, e.getCause());
+            }
+            if (!isAuthentication) {
+                throw new AuthenticationException(AuthenticationException.NotHaveAuthentication);
+            }
+            return;
+        }
+
+        //由当前调用者执行身份认证
+        boolean isAuthentication;
+        try {
+            //获得最大尝试次数
+            int count = autoAuthenticationTryCount;
+            //其它调用者可能刚刚完成身份认证
+            isAuthentication = !force && callIsAuthentication(callback, imRequest);
+            //循环取得身份认证
+            while (!isAuthentication && count > 0) {
+                callDoAuthentication(callback, imRequest);
+                count--;
+                isAuthentication = callIsAuthentication(callback, imRequest);
+            }
+            flight.complete(isAuthentication);
+        } catch (RuntimeException e) {
+            //与等待同一结果的调用者一致，回调异常包装为身份认证失败
+            flight.completeExceptionally(e);
+            throw new AuthenticationException(AuthenticationException.AuthenticationFailed, e);
+        } catch (Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            authenticationFlight.compareAndSet(flight, null);
+        }
+        //是否取得身份认证，此时如果还未取得身份认证，则抛出异常
+        if (!isAuthentication) {
+            throw new AuthenticationException(AuthenticationException.NotHaveAuthentication);
+        }
+    }
+
+    private boolean callIsAuthentication(ImSessionCallback callback, ImRequest imRequest) {
+        Boolean previous = execCallbackNow.get();
+        execCallbackNow.set(Boolean.TRUE);
+        try {
+            return callback.isAuthentication(this, imRequest);
+        } finally {
+            execCallbackNow.set(previous);
+        }
+    }
+
+    private boolean callDoAuthentication(ImSessionCallback callback, ImRequest imRequest) {
+        Boolean previous = execCallbackNow.get();
+        execCallbackNow.set(Boolean.TRUE);
+        try {
+            return callback.doAuthentication(this, imRequest);
+        } finally {
+            execCallbackNow.set(previous);
+        }
+    }
+
+    /**
+     * 【内部方法】 按身份凭据过期时间安排后台刷新
+     */
+    private void scheduleRefresh() {
+        synchronized (refreshLock) {
+            if (refreshFuture != null) {
+                refreshFuture.cancel(false);
+                refreshFuture = null;
+            }
+            if (refreshRequest == null || credentialExpiresAt < 0) {
+                return;
+            }
+            long delay = credentialExpiresAt - refreshMargin - System.currentTimeMillis();
+            refreshFuture = RefreshScheduler.SCHEDULER.schedule(new RefreshTask(this), Math.max(delay, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 【内部方法】 后台执行身份认证，失败时在凭据过期前重试
+     */
+    private void refresh() {
+        ImSessionCallback callback = this.callback;
+        ImRequest imRequest = this.refreshRequest;
+        if (callback == null || imRequest == null) {
+            return;
+        }
+        long expiresAt = credentialExpiresAt;
+        try {
+            authenticate(callback, imRequest, authenticationTimeout, true);
+            //成功后由回调设置新的过期时间，并据此安排下一次刷新
+        } catch (RuntimeException e) {
+            callback.onError(this, imRequest, e);
+            synchronized (refreshLock) {
+                long retry = Math.max(refreshMargin / 4, 1000);
+                if (refreshRequest != null && credentialExpiresAt == expiresAt
+                        && expiresAt - System.currentTimeMillis() > retry) {
+                    refreshFuture = RefreshScheduler.SCHEDULER.schedule(new RefreshTask(this), retry, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台刷新任务，只弱引用会话，不再使用的会话可以被回收，回收后任务不再执行
+     */
+    private static final class RefreshTask implements Runnable {
+        private final WeakReference<ImSession> session;
+
+        RefreshTask(ImSession imSession) {
+            this.session = new WeakReference<ImSession>(imSession);
+        }
+
+        @Override
+        public void run() {
+            ImSession imSession = session.get();
+            if (imSession != null) {
+                imSession.refresh();
+            }
+        }
+    }
+
+    /**
+     * 后台刷新使用的共享调度线程，取消的任务立即从队列中移除，避免频繁重新安排刷新时队列堆积
+     */
+    private static final class RefreshScheduler {
+        static final ScheduledThreadPoolExecutor SCHEDULER = new ScheduledThreadPoolExecutor(2, runnable -> {
+            Thread thread = new Thread(runnable, "ImSession-Refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            SCHEDULER.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    /**
+     * 【内部方法】 当前线程是否正在执行身份认证回调
+     */
+    protected boolean isExecCallbackNow() {
+        return Boolean.TRUE.equals(execCallbackNow.get());
+    }
+
+    /**
+     * 【内部方法】 标记会话正在被请求使用，使用结束时调用unpin
+     */
+    void pin() {
+        pins.incrementAndGet();
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * 【内部方法】 标记请求结束使用会话
+     */
+    void unpin() {
+        lastUsed = System.nanoTime();
+        pins.decrementAndGet();
+    }
+
+    /**
+     * 【内部方法】 记录会话的使用时间
+     */
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+
+    /**
+     * 【内部方法】 会话是否没有正在进行的请求，且距最近一次使用已超过给定时间
+     */
+    boolean isIdle(long minIdleNanos) {
+        return pins.get() == 0 && System.nanoTime() - lastUsed >= minIdleNanos;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
     protected ImSessionCallback getCallback() {
         return callback;
     }
@@ -582,14 +1091,16 @@ public class ImSession {
     }
 
     protected void setHeaders(Map<String, String> headers) {
-        this.headers = headers;
+        synchronized (headerLock) {
+            this.headers = Collections.unmodifiableMap(new HashMap<String, String>(headers));
+        }
     }
 
     protected Map<String, String> getCookies() {
-        return cookies;
+        return cookieStore.getGlobalCookies();
     }
 
     protected void setCookies(Map<String, String> cookies) {
-        this.cookies = cookies;
+        cookieStore.setGlobalCookies(cookies);
     }
 }
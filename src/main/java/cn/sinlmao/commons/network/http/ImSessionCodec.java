@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import com.alibaba.fastjson.JSON;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <b>会话状态二进制编解码类</b>
+ * <p>
+ * 该类将ImSession的Header、Cookie、Extra数据及身份凭据过期时间编码为紧凑的二进制数据（变长整数及UTF-8字符串），
+ * Extra数据以JSON形式保存，恢复后为JSON对应的类型。解码时Header、Cookie名称及域名、路径会被驻留，以便大量会话共享同一字符串
+ * <br/><br/>
+ * <b>Session state binary codec class</b>
+ * <p>
+ * This class encodes the headers, cookies, extras and credential expiry of an ImSession into compact binary data
+ * (variable-length integers and UTF-8 strings). Extras are stored as JSON and come back as the corresponding JSON types.
+ * Header names, cookie names, domains and paths are interned on decode so that many sessions share the same strings.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 会话状态二进制编解码类
+ * @create 2019-11-16 10:10
+ * @since 1.5.0
+ */
+final class ImSessionCodec {
+
+    private final static byte FORMAT_VERSION = 1;
+
+    private final static int FLAG_HOST_ONLY = 1;
+    private final static int FLAG_SECURE = 2;
+    private final static int FLAG_HTTP_ONLY = 4;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 编码会话状态
+     *
+     * @param imSession ImSession会话状态数据
+     * @return 二进制数据
+     */
+    static byte[] encode(ImSession imSession) {
+        Writer writer = new Writer(256);
+        writer.writeByte(FORMAT_VERSION);
+
+        //Header数据
+        Map<String, String> headers = imSession.getHeaders();
+        writer.writeVarLong(headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            writer.writeString(header.getKey());
+            writer.writeString(header.getValue());
+        }
+
+        //未指定域名的Cookie数据
+        Map<String, String> cookies = imSession.getCookieStore().getGlobalCookies();
+        writer.writeVarLong(cookies.size());
+        for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+            writer.writeString(cookie.getKey());
+            writer.writeString(cookie.getValue());
+        }
+
+        //按域名保存的Cookie数据
+        List<ImCookieStore.Entry> entries = imSession.getCookieStore().getEntries();
+        writer.writeVarLong(entries.size());
+        for (ImCookieStore.Entry entry : entries) {
+            writer.writeString(entry.name);
+            writer.writeString(entry.value);
+            writer.writeString(entry.domain);
+            writer.writeString(entry.path);
+            writer.writeByte((entry.hostOnly ? FLAG_HOST_ONLY : 0)
+                    | (entry.secure ? FLAG_SECURE : 0)
+                    | (entry.httpOnly ? FLAG_HTTP_ONLY : 0));
+            writer.writeVarLong(entry.expiresAt + 1);
+        }
+
+        //Extra数据
+        writer.writeVarLong(imSession.getExtraSize());
+        for (String name : imSession.getExtraNames()) {
+            writer.writeString(name);
+            writer.writeString(JSON.toJSONString(imSession.getExtraValue(name)));
+        }
+
+        writer.writeVarLong(imSession.getCredentialExpiresAt() + 1);
+        return writer.toByteArray();
+    }
+
+    /**
+     * 解码会话状态并写入ImSession
+     *
+     * @param data      二进制数据
+     * @param imSession ImSession会话状态数据
+     */
+    static void decode(ByteBuffer data, ImSession imSession) {
+        ByteBuffer buffer = data.duplicate();
+        if (buffer.get() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported session data format.");
+        }
+
+        int size = (int) readVarLong(buffer);
+        HashMap<String, String> headers = new HashMap<String, String>(size * 2);
+        for (int i = 0; i < size; i++) {
+            headers.put(readString(buffer).intern(), readString(buffer));
+        }
+        imSession.setHeader(headers);
+
+        size = (int) readVarLong(buffer);
+        LinkedHashMap<String, String> cookies = new LinkedHashMap<String, String>(size * 2);
+        for (int i = 0; i < size; i++) {
+            cookies.put(readString(buffer).intern(), readString(buffer));
+        }
+        imSession.getCookieStore().setCookies(cookies);
+
+        size = (int) readVarLong(buffer);
+        for (int i = 0; i < size; i++) {
+            String name = readString(buffer).intern();
+            String value = readString(buffer);
+            String domain = readString(buffer).intern();
+            String path = readString(buffer).intern();
+            int flags = buffer.get();
+            long expiresAt = readVarLong(buffer) - 1;
+            imSession.getCookieStore().restoreEntry(name, value, domain, (flags & FLAG_HOST_ONLY) != 0, path,
+                    expiresAt, (flags & FLAG_SECURE) != 0, (flags & FLAG_HTTP_ONLY) != 0);
+        }
+
+        size = (int) readVarLong(buffer);
+        for (int i = 0; i < size; i++) {
+            String name = readString(buffer).intern();
+            imSession.setExtra(name, JSON.parse(readString(buffer)));
+        }
+
+        long credentialExpiresAt = readVarLong(buffer) - 1;
+        if (credentialExpiresAt >= 0) {
+            imSession.setCredentialExpiresAt(credentialExpiresAt);
+        }
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    static long readVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    static String readString(ByteBuffer buffer) {
+        int length = (int) readVarLong(buffer);
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 可增长的字节写入器
+     */
+    static final class Writer {
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeString(String value) {
+            byte[] data = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+            writeVarLong(data.length);
+            writeBytes(data, 0, data.length);
+        }
+
+        void writeBytes(byte[] data, int offset, int length) {
+            ensure(length);
+            System.arraycopy(data, offset, bytes, size, length);
+            size += length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+    }
+
+    private ImSessionCodec() {
+    }
+}
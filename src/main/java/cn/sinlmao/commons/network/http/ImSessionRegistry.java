@@ -0,0 +1,556 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * <b>会话注册表类</b>
+ * <p>
+ * 该类按ID管理大量ImSession：最近使用的会话保持为活跃对象，超出数量上限的会话按LRU顺序压缩为紧凑的二进制数据，
+ * 再次访问时重新展开；压缩数据超出内存上限时，最久未使用的会话写入ImSessionStore（未设置时丢弃）。
+ * 正在执行请求的会话及最近使用未超过最短闲置时间的会话不会被压缩，此时活跃会话可能暂时超出数量上限；
+ * 压缩和展开在注册表的锁之外进行，不阻塞其他会话的访问。
+ * <p>
+ * 会话被压缩后，之前取得的ImSession对象不再由注册表管理，其后续修改不会被保存；压缩时会关闭会话的自动刷新，
+ * 回调及自动刷新等配置应由会话工厂在展开时重新设置
+ * <br/><br/>
+ * <b>Session registry class</b>
+ * <p>
+ * This class manages a large number of ImSessions by ID. Recently used sessions stay live, sessions beyond the limit
+ * are packed into compact binary data in LRU order and inflated again on access. When the packed data exceeds its memory
+ * budget, the least recently used sessions are spilled to the ImSessionStore (or dropped if none is set). Sessions
+ * with requests in flight, and sessions used within the minimum idle time, are never packed, so the live sessions may
+ * exceed the limit for a while. Packing and inflation run outside the registry lock and do not block access to other
+ * sessions.
+ * <p>
+ * Once a session is packed, an ImSession obtained earlier is no longer managed by the registry and later changes to it
+ * are not kept. Auto refresh is disabled when packing, so the session factory should set callbacks and auto refresh
+ * again on inflation.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 会话注册表类
+ * @create 2019-11-16 15:20
+ * @see ImSession
+ * @see ImSessionStore
+ * @since 1.5.0
+ */
+public class ImSessionRegistry {
+
+    private final Function<String, ImSession> factory;
+
+    //活跃会话（按访问顺序）
+    private final LinkedHashMap<String, ImSession> hot = new LinkedHashMap<String, ImSession>(16, 0.75f, true);
+    //压缩会话（按访问顺序）
+    private final LinkedHashMap<String, byte[]> idle = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long idleBytes = 0;
+    //正在压缩及正在展开的会话，同一会话的访问等待其完成
+    private final Map<String, CompletableFuture<Void>> packing = new HashMap<String, CompletableFuture<Void>>();
+    private final Map<String, CompletableFuture<Void>> inflating = new HashMap<String, CompletableFuture<Void>>();
+
+    private int maxHotSessions = 1024;
+    private long minIdleNanos = TimeUnit.SECONDS.toNanos(1);
+    private long maxIdleBytes = 64L * 1024 * 1024;
+    private ImSessionStore sessionStore;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 构建会话注册表，新会话使用默认构造的ImSession
+     * <p>
+     * <font color="#666666">Build a session registry, new sessions are default-constructed ImSessions</font>
+     */
+    public ImSessionRegistry() {
+        this(sessionId -> new ImSession());
+    }
+
+    /**
+     * 构建会话注册表
+     * <p>
+     * <font color="#666666">Build a session registry</font>
+     *
+     * @param factory 会话工厂，用于创建新会话及展开压缩的会话 <br/> <font color="#666666">Session factory, used to create new sessions and to inflate packed sessions</font>
+     */
+    public ImSessionRegistry(Function<String, ImSession> factory) {
+        this.factory = factory;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 设置活跃会话的数量上限
+     * <p>
+     * <font color="#666666">Set the maximum number of live sessions</font>
+     *
+     * @param maxHotSessions 活跃会话数量上限 <br/> <font color="#666666">Maximum number of live sessions</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public ImSessionRegistry setMaxHotSessions(int maxHotSessions) {
+        List<Packing> victims;
+        synchronized (this) {
+            this.maxHotSessions = maxHotSessions < 1 ? 1 : maxHotSessions;
+            victims = evict();
+        }
+        pack(victims);
+        return this;
+    }
+
+    /**
+     * 获得活跃会话的数量上限
+     * <p>
+     * <font color="#666666">Get the maximum number of live sessions</font>
+     *
+     * @return 活跃会话数量上限 <br/> <font color="#666666">Maximum number of live sessions</font>
+     */
+    public synchronized int getMaxHotSessions() {
+        return maxHotSessions;
+    }
+
+    /**
+     * 设置压缩会话的内存上限
+     * <p>
+     * <font color="#666666">Set the memory budget of packed sessions</font>
+     *
+     * @param maxIdleBytes 压缩会话内存上限（字节） <br/> <font color="#666666">Memory budget of packed sessions (bytes)</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public synchronized ImSessionRegistry setMaxIdleBytes(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes < 0 ? 0 : maxIdleBytes;
+        spill();
+        return this;
+    }
+
+    /**
+     * 获得压缩会话的内存上限
+     * <p>
+     * <font color="#666666">Get the memory budget of packed sessions</font>
+     *
+     * @return 压缩会话内存上限（字节） <br/> <font color="#666666">Memory budget of packed sessions (bytes)</font>
+     */
+    public synchronized long getMaxIdleBytes() {
+        return maxIdleBytes;
+    }
+
+    /**
+     * 设置会话的最短闲置时间，最近一次使用后未超过该时间的会话不会被压缩
+     * <p>
+     * <font color="#666666">Set the minimum idle time, sessions used more recently than this are not packed</font>
+     *
+     * @param minIdleTime 最短闲置时间（毫秒），默认为1000 <br/> <font color="#666666">Minimum idle time (milliseconds), 1000 by default</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public synchronized ImSessionRegistry setMinIdleTime(long minIdleTime) {
+        this.minIdleNanos = TimeUnit.MILLISECONDS.toNanos(minIdleTime < 0 ? 0 : minIdleTime);
+        return this;
+    }
+
+    /**
+     * 获得会话的最短闲置时间
+     * <p>
+     * <font color="#666666">Get the minimum idle time of sessions</font>
+     *
+     * @return 最短闲置时间（毫秒） <br/> <font color="#666666">Minimum idle time (milliseconds)</font>
+     */
+    public synchronized long getMinIdleTime() {
+        return TimeUnit.NANOSECONDS.toMillis(minIdleNanos);
+    }
+
+    /**
+     * 设置会话持久化存储，超出内存上限的会话将写入该存储
+     * <p>
+     * <font color="#666666">Set the session store, sessions beyond the memory budget are spilled to it</font>
+     *
+     * @param sessionStore 会话持久化存储 <br/> <font color="#666666">Session store</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public synchronized ImSessionRegistry setSessionStore(ImSessionStore sessionStore) {
+        this.sessionStore = sessionStore;
+        return this;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 根据会话ID获得会话，压缩或已写入存储的会话将被展开
+     * <p>
+     * <font color="#666666">Get a session by ID, packed or spilled sessions are inflated</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @return ImSession会话，不存在时为null <br/> <font color="#666666">ImSession session, null when it does not exist</font>
+     */
+    public ImSession get(String sessionId) {
+        while (true) {
+            CompletableFuture<Void> flight;
+            ByteBuffer data;
+            synchronized (this) {
+                ImSession imSession = hot.get(sessionId);
+                if (imSession != null) {
+                    imSession.touch();
+                    return imSession;
+                }
+                //正在压缩或展开时等待其完成后重新查找
+                flight = packing.get(sessionId);
+                if (flight == null) {
+                    flight = inflating.get(sessionId);
+                }
+                if (flight == null) {
+                    byte[] packed = idle.remove(sessionId);
+                    if (packed != null) {
+                        idleBytes -= packed.length;
+                        data = ByteBuffer.wrap(packed);
+                    } else {
+                        data = sessionStore == null ? null : sessionStore.get(sessionId);
+                    }
+                    if (data == null) {
+                        return null;
+                    }
+                    flight = new CompletableFuture<Void>();
+                    inflating.put(sessionId, flight);
+                } else {
+                    data = null;
+                }
+            }
+            if (data == null) {
+                flight.handle((result, e) -> null).join();
+                continue;
+            }
+            return inflate(sessionId, data, flight);
+        }
+    }
+
+    /**
+     * 根据会话ID获得会话，不存在时通过会话工厂创建
+     * <p>
+     * <font color="#666666">Get a session by ID, creating it through the session factory when it does not exist</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @return ImSession会话 <br/> <font color="#666666">ImSession session</font>
+     */
+    public ImSession getOrCreate(String sessionId) {
+        while (true) {
+            ImSession imSession = get(sessionId);
+            if (imSession != null) {
+                return imSession;
+            }
+            imSession = factory.apply(sessionId);
+            List<Packing> victims;
+            synchronized (this) {
+                //创建期间已由其他线程创建或写入时重新获取
+                if (hot.containsKey(sessionId) || idle.containsKey(sessionId) || packing.containsKey(sessionId)
+                        || inflating.containsKey(sessionId) || (sessionStore != null && sessionStore.get(sessionId) != null)) {
+                    continue;
+                }
+                imSession.touch();
+                hot.put(sessionId, imSession);
+                victims = evict();
+            }
+            pack(victims);
+            return imSession;
+        }
+    }
+
+    /**
+     * 添加或替换会话
+     * <p>
+     * <font color="#666666">Add or replace a session</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @param imSession ImSession会话 <br/> <font color="#666666">ImSession session</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public ImSessionRegistry put(String sessionId, ImSession imSession) {
+        List<Packing> victims;
+        synchronized (this) {
+            discard(sessionId);
+            imSession.touch();
+            hot.put(sessionId, imSession);
+            victims = evict();
+        }
+        pack(victims);
+        return this;
+    }
+
+    /**
+     * 删除会话（包括已写入存储的数据）
+     * <p>
+     * <font color="#666666">Remove a session (including data spilled to the store)</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public synchronized ImSessionRegistry remove(String sessionId) {
+        ImSession imSession = hot.remove(sessionId);
+        if (imSession != null) {
+            imSession.disableAutoRefresh();
+        }
+        discard(sessionId);
+        if (sessionStore != null) {
+            sessionStore.remove(sessionId);
+        }
+        return this;
+    }
+
+    /**
+     * 立即压缩指定的活跃会话，正在执行请求的会话不会被压缩
+     * <p>
+     * <font color="#666666">Pack the given live session now, a session with requests in flight is not packed</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public ImSessionRegistry release(String sessionId) {
+        List<Packing> victims = new ArrayList<Packing>(1);
+        synchronized (this) {
+            ImSession imSession = hot.get(sessionId);
+            if (imSession == null || !imSession.isIdle(0)) {
+                return this;
+            }
+            hot.remove(sessionId);
+            victims.add(beginPack(sessionId, imSession));
+        }
+        pack(victims);
+        return this;
+    }
+
+    /**
+     * 将所有会话写入会话持久化存储
+     * <p>
+     * <font color="#666666">Save all sessions to the session store</font>
+     *
+     * @return ImSessionRegistry对象实体 <br/> <font color="#666666">ImSessionRegistry object entity</font>
+     */
+    public ImSessionRegistry saveAll() {
+        List<String> sessionIds;
+        List<ImSession> sessions;
+        synchronized (this) {
+            if (sessionStore == null) {
+                throw new IllegalStateException("No session store is set.");
+            }
+            for (Map.Entry<String, byte[]> entry : idle.entrySet()) {
+                sessionStore.save(entry.getKey(), entry.getValue());
+            }
+            sessionIds = new ArrayList<String>(hot.keySet());
+            sessions = new ArrayList<ImSession>(hot.values());
+        }
+        //在锁外编码活跃会话，期间已删除或替换的会话不再写入
+        for (int i = 0; i < sessionIds.size(); i++) {
+            String sessionId = sessionIds.get(i);
+            ImSession imSession = sessions.get(i);
+            byte[] data = ImSessionCodec.encode(imSession);
+            synchronized (this) {
+                if (sessionStore != null && (hot.get(sessionId) == imSession || packing.containsKey(sessionId) || idle.containsKey(sessionId))) {
+                    sessionStore.save(sessionId, data);
+                }
+            }
+        }
+        return this;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 获得内存中的会话数量（活跃及压缩）
+     * <p>
+     * <font color="#666666">Get the number of sessions in memory (live and packed)</font>
+     *
+     * @return 会话数量 <br/> <font color="#666666">Sessions count</font>
+     */
+    public synchronized int size() {
+        return hot.size() + idle.size();
+    }
+
+    /**
+     * 获得活跃会话数量
+     * <p>
+     * <font color="#666666">Get the number of live sessions</font>
+     *
+     * @return 活跃会话数量 <br/> <font color="#666666">Live sessions count</font>
+     */
+    public synchronized int getHotSize() {
+        return hot.size();
+    }
+
+    /**
+     * 获得压缩会话数量
+     * <p>
+     * <font color="#666666">Get the number of packed sessions</font>
+     *
+     * @return 压缩会话数量 <br/> <font color="#666666">Packed sessions count</font>
+     */
+    public synchronized int getIdleSize() {
+        return idle.size();
+    }
+
+    /**
+     * 获得压缩会话占用的字节数
+     * <p>
+     * <font color="#666666">Get the bytes used by packed sessions</font>
+     *
+     * @return 字节数 <br/> <font color="#666666">Bytes count</font>
+     */
+    public synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 在锁外展开会话，完成后加入活跃会话；期间会话被删除或替换时使用当前的活跃会话
+     */
+    private ImSession inflate(String sessionId, ByteBuffer data, CompletableFuture<Void> flight) {
+        ImSession imSession = null;
+        List<Packing> victims = null;
+        try {
+            ImSession inflated = factory.apply(sessionId);
+            ImSessionCodec.decode(data, inflated);
+            synchronized (this) {
+                if (inflating.remove(sessionId, flight)) {
+                    inflated.touch();
+                    hot.put(sessionId, inflated);
+                    victims = evict();
+                    imSession = inflated;
+                } else {
+                    imSession = hot.get(sessionId);
+                }
+            }
+        } finally {
+            if (imSession == null) {
+                synchronized (this) {
+                    inflating.remove(sessionId, flight);
+                }
+            }
+            flight.complete(null);
+        }
+        pack(victims);
+        return imSession;
+    }
+
+    /**
+     * 【内部方法】 按LRU顺序选出超出数量上限的闲置活跃会话，由调用者在锁外压缩
+     */
+    private List<Packing> evict() {
+        List<Packing> victims = null;
+        int excess = hot.size() - maxHotSessions;
+        Iterator<Map.Entry<String, ImSession>> iterator = hot.entrySet().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            Map.Entry<String, ImSession> eldest = iterator.next();
+            //正在使用或刚使用过的会话保持活跃
+            if (!eldest.getValue().isIdle(minIdleNanos)) {
+                continue;
+            }
+            iterator.remove();
+            excess--;
+            if (victims == null) {
+                victims = new ArrayList<Packing>();
+            }
+            victims.add(beginPack(eldest.getKey(), eldest.getValue()));
+        }
+        return victims;
+    }
+
+    /**
+     * 【内部方法】 按LRU顺序写出超出内存上限的压缩会话
+     */
+    private void spill() {
+        Iterator<Map.Entry<String, byte[]>> iterator = idle.entrySet().iterator();
+        while (idleBytes > maxIdleBytes && iterator.hasNext()) {
+            Map.Entry<String, byte[]> eldest = iterator.next();
+            iterator.remove();
+            idleBytes -= eldest.getValue().length;
+            if (sessionStore != null) {
+                sessionStore.save(eldest.getKey(), eldest.getValue());
+            }
+        }
+    }
+
+    private Packing beginPack(String sessionId, ImSession imSession) {
+        Packing victim = new Packing(sessionId, imSession);
+        packing.put(sessionId, victim.done);
+        return victim;
+    }
+
+    /**
+     * 【内部方法】 在锁外压缩会话，完成后加入压缩会话；期间会话被删除或替换时丢弃压缩数据，压缩失败时恢复为活跃会话
+     */
+    private void pack(List<Packing> victims) {
+        if (victims == null) {
+            return;
+        }
+        RuntimeException failure = null;
+        for (Packing victim : victims) {
+            byte[] packed = null;
+            try {
+                victim.imSession.disableAutoRefresh();
+                packed = ImSessionCodec.encode(victim.imSession);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            synchronized (this) {
+                if (packing.remove(victim.sessionId, victim.done)) {
+                    if (packed != null) {
+                        idle.put(victim.sessionId, packed);
+                        idleBytes += packed.length;
+                        spill();
+                    } else {
+                        hot.put(victim.sessionId, victim.imSession);
+                    }
+                }
+            }
+            victim.done.complete(null);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * 【内部方法】 丢弃会话的压缩数据，并使进行中的压缩或展开不再生效
+     */
+    private void discard(String sessionId) {
+        byte[] packed = idle.remove(sessionId);
+        if (packed != null) {
+            idleBytes -= packed.length;
+        }
+        packing.remove(sessionId);
+        inflating.remove(sessionId);
+    }
+
+    /**
+     * 正在压缩的会话
+     */
+    private static final class Packing {
+        final String sessionId;
+        final ImSession imSession;
+        final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+        Packing(String sessionId, ImSession imSession) {
+            this.sessionId = sessionId;
+            this.imSession = imSession;
+        }
+    }
+}
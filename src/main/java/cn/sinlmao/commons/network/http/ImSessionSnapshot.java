@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <b>会话状态快照类</b>
+ * <p>
+ * 该类为ImSession在某一时刻的只读快照，用于请求在执行期间获得一致的Header和Cookie数据。
+ * Cookie以预先序列化的Cookie头保存，仅在Cookie变化后才重新序列化，请求自身的Header和Cookie直接叠加在快照之上
+ * <br/><br/>
+ * <b>Session state snapshot class</b>
+ * <p>
+ * This class is a read-only snapshot of an ImSession at a point in time, so that a request sees consistent headers and
+ * cookies during its execution. Cookies are kept as a pre-serialized Cookie header that is only re-serialized after a
+ * cookie changes, and the request's own headers and cookies are layered over the snapshot.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 会话状态快照类
+ * @create 2019-11-14 16:05
+ * @see ImSession
+ * @since 1.5.0
+ */
+public final class ImSessionSnapshot {
+
+    private final long sessionIdentity;
+    private final Map<String, String> headers;
+    private final String cookieHeader;
+    private volatile Map<String, String> cookies;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部】 构建会话状态快照，传入的Header数据必须为不可变数据
+     *
+     * @param sessionIdentity 会话在进程内的唯一标识
+     * @param headers         不可变的Header数据
+     * @param cookieHeader    已序列化的Cookie头
+     */
+    ImSessionSnapshot(long sessionIdentity, Map<String, String> headers, String cookieHeader) {
+        this.sessionIdentity = sessionIdentity;
+        this.headers = headers;
+        this.cookieHeader = cookieHeader;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 根据Header键获得对应值
+     * <p>
+     * <font color="#666666">Get the corresponding value according to the Header key</font>
+     *
+     * @param name Header键 <br /> <font color="#666666">Header Key</font>
+     * @return Header值 <br /> <font color="#666666">Header Value</font>
+     */
+    public String getHeaderValue(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * 获得所有Header键
+     * <p>
+     * <font color="#666666">Get all Header keys</font>
+     *
+     * @return 所有Header键 <br /> <font color="#666666">All Header keys</font>
+     */
+    public Set<String> getHeaderNames() {
+        return headers.keySet();
+    }
+
+    /**
+     * 获得所有Header数据
+     * <p>
+     * <font color="#666666">Get all Header data</font>
+     *
+     * @return 只读的Header数据 <br /> <font color="#666666">Read-only Header data</font>
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * 根据Cookie键获得对应值
+     * <p>
+     * <font color="#666666">Get the corresponding value according to the Cookie key</font>
+     *
+     * @param name Cookie键 <br /> <font color="#666666">Cookie Key</font>
+     * @return Cookie值 <br /> <font color="#666666">Cookie Value</font>
+     */
+    public String getCookieData(String name) {
+        return getCookies().get(name);
+    }
+
+    /**
+     * 获得所有Cookie键
+     * <p>
+     * <font color="#666666">Get all Cookie keys</font>
+     *
+     * @return 所有Cookie键 <br /> <font color="#666666">All Cookie keys</font>
+     */
+    public Set<String> getCookieNames() {
+        return getCookies().keySet();
+    }
+
+    /**
+     * 获得所有Cookie数据
+     * <p>
+     * <font color="#666666">Get all Cookie data</font>
+     *
+     * @return 只读的Cookie数据 <br /> <font color="#666666">Read-only Cookie data</font>
+     */
+    public Map<String, String> getCookies() {
+        Map<String, String> cookies = this.cookies;
+        if (cookies == null) {
+            cookies = new LinkedHashMap<String, String>();
+            if (!cookieHeader.isEmpty()) {
+                for (String pair : cookieHeader.split("; ")) {
+                    int index = pair.indexOf('=');
+                    if (index > 0) {
+                        cookies.put(pair.substring(0, index), pair.substring(index + 1));
+                    }
+                }
+            }
+            cookies = Collections.unmodifiableMap(cookies);
+            this.cookies = cookies;
+        }
+        return cookies;
+    }
+
+    /**
+     * 获得已序列化的Cookie头
+     * <p>
+     * <font color="#666666">Get the serialized Cookie header</font>
+     *
+     * @return Cookie头，没有Cookie时为空字符串 <br /> <font color="#666666">Cookie header, empty when there is no cookie</font>
+     */
+    public String getCookieHeader() {
+        return cookieHeader;
+    }
+
+    /**
+     * 【内部方法】 获得会话在进程内的唯一标识
+     *
+     * @return 会话标识
+     */
+    long getSessionIdentity() {
+        return sessionIdentity;
+    }
+}
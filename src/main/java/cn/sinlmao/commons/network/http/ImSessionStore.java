@@ -0,0 +1,557 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * <b>会话状态持久化存储类</b>
+ * <p>
+ * 该类以仅追加的二进制日志文件保存ImSession的Cookie、Header和Extra数据，启动时通过内存映射读取文件并建立索引，
+ * 会话在首次恢复时才解码；写入由后台线程批量执行，不占用请求线程，日志中过期数据过多时自动压缩
+ * <br/><br/>
+ * <b>Session state persistent store class</b>
+ * <p>
+ * This class keeps the cookies, headers and extras of ImSessions in an append-only binary log file. On startup the file
+ * is memory-mapped and indexed, and a session is only decoded when it is first restored. Writes are batched by a
+ * background thread off the request path, and the log is compacted automatically when it holds too much stale data.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 会话状态持久化存储类
+ * @create 2019-11-16 11:30
+ * @see ImSession
+ * @since 1.5.0
+ */
+public class ImSessionStore implements Closeable {
+
+    private final static int MAGIC = 0x494D5353;    // "IMSS"
+    private final static int FILE_VERSION = 1;
+    private final static int FILE_HEADER_SIZE = 8;
+    private final static int RECORD_HEADER_SIZE = 8;
+
+    private final static byte TYPE_PUT = 1;
+    private final static byte TYPE_REMOVE = 2;
+
+    private final static int MAX_BATCH = 1024;
+
+    private final File file;
+    private FileChannel channel;
+
+    //会话ID到最新会话数据的索引（启动时为内存映射文件的切片）
+    private final ConcurrentHashMap<String, ByteBuffer> index = new ConcurrentHashMap<String, ByteBuffer>();
+    //有效数据压缩后的文件大小，随索引的增删同步更新
+    private final AtomicLong liveSize = new AtomicLong(FILE_HEADER_SIZE);
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
+    private final Thread writer;
+    private volatile boolean closed = false;
+    private volatile IOException writeError;
+
+    private volatile double compactionRatio = 2.0;
+    private volatile long compactionMinSize = 4 * 1024 * 1024;
+    //自动压缩失败后，文件增长到该大小时再重试（仅由写入线程访问）
+    private long compactionRetrySize = 0;
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 打开或创建会话状态持久化存储
+     * <p>
+     * 文件尾部因崩溃而不完整的记录将被截断
+     * <p>
+     * <font color="#666666">Open or create a session state persistent store</font>
+     * <p>
+     * <font color="#666666">A record at the end of the file that is incomplete because of a crash is truncated.</font>
+     *
+     * @param file 日志文件 <br/> <font color="#666666">Log file</font>
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    public ImSessionStore(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+        writer = new Thread(this::writeLoop, "ImSessionStore-Writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 保存会话状态
+     * <p>
+     * 会话状态在调用线程上编码，写入文件由后台线程批量执行
+     * <p>
+     * <font color="#666666">Save the session state</font>
+     * <p>
+     * <font color="#666666">The session state is encoded on the calling thread, and the file is written in batches by a
+     * background thread.</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @param imSession ImSession会话状态数据 <br/> <font color="#666666">ImSession session state data</font>
+     */
+    public void save(String sessionId, ImSession imSession) {
+        save(sessionId, ImSessionCodec.encode(imSession));
+    }
+
+    /**
+     * 【内部方法】 保存已编码的会话状态
+     */
+    void save(String sessionId, byte[] data) {
+        checkOpen();
+        putIndex(sessionId, ByteBuffer.wrap(data));
+        queue.add(new Record(TYPE_PUT, sessionId, data));
+    }
+
+    /**
+     * 恢复会话状态
+     * <p>
+     * <font color="#666666">Restore the session state</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     * @param imSession 需要写入的ImSession <br/> <font color="#666666">ImSession to write into</font>
+     * @return 是否存在该会话 <br/> <font color="#666666">Whether the session exists</font>
+     */
+    public boolean restore(String sessionId, ImSession imSession) {
+        ByteBuffer data = index.get(sessionId);
+        if (data == null) {
+            return false;
+        }
+        ImSessionCodec.decode(data, imSession);
+        return true;
+    }
+
+    /**
+     * 【内部方法】 获得已编码的会话状态
+     */
+    ByteBuffer get(String sessionId) {
+        return index.get(sessionId);
+    }
+
+    /**
+     * 删除会话状态
+     * <p>
+     * <font color="#666666">Remove the session state</font>
+     *
+     * @param sessionId 会话ID <br/> <font color="#666666">Session ID</font>
+     */
+    public void remove(String sessionId) {
+        checkOpen();
+        if (removeIndex(sessionId)) {
+            queue.add(new Record(TYPE_REMOVE, sessionId, new byte[0]));
+        }
+    }
+
+    /**
+     * 获得所有会话ID
+     * <p>
+     * <font color="#666666">Get all session IDs</font>
+     *
+     * @return 所有会话ID <br/> <font color="#666666">All session IDs</font>
+     */
+    public Set<String> getSessionIds() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * 获得会话数量
+     * <p>
+     * <font color="#666666">Get the count of sessions</font>
+     *
+     * @return 会话数量 <br/> <font color="#666666">Sessions count</font>
+     */
+    public int getSessionSize() {
+        return index.size();
+    }
+
+    /**
+     * 等待已提交的写入全部落盘
+     * <p>
+     * <font color="#666666">Wait until all submitted writes are on disk</font>
+     *
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    public void flush() throws IOException {
+        checkOpen();
+        CountDownLatch latch = new CountDownLatch(1);
+        queue.add(latch);
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the session store.", e);
+        }
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    /**
+     * 立即压缩日志文件，只保留每个会话的最新数据
+     * <p>
+     * <font color="#666666">Compact the log file now, keeping only the latest data of each session</font>
+     *
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    public void compact() throws IOException {
+        checkOpen();
+        CompactRequest request = new CompactRequest();
+        queue.add(request);
+        try {
+            request.latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting the session store.", e);
+        }
+        if (request.error != null) {
+            throw request.error;
+        }
+    }
+
+    /**
+     * 设置自动压缩的条件：文件大小超过最小值，且超过有效数据大小的倍数
+     * <p>
+     * <font color="#666666">Set when to compact automatically: the file is larger than the minimum size and larger than the
+     * live data by the given ratio</font>
+     *
+     * @param compactionRatio   文件大小与有效数据大小的倍数 <br/> <font color="#666666">Ratio of file size to live data size</font>
+     * @param compactionMinSize 最小文件大小（字节） <br/> <font color="#666666">Minimum file size (bytes)</font>
+     * @return ImSessionStore对象实体 <br/> <font color="#666666">ImSessionStore object entity</font>
+     */
+    public ImSessionStore setCompaction(double compactionRatio, long compactionMinSize) {
+        this.compactionRatio = compactionRatio < 1.1 ? 1.1 : compactionRatio;
+        this.compactionMinSize = compactionMinSize < 0 ? 0 : compactionMinSize;
+        return this;
+    }
+
+    /**
+     * 写入所有待写数据并关闭存储
+     * <p>
+     * <font color="#666666">Write all pending data and close the store</font>
+     *
+     * @throws IOException IO异常 <br/> <font color="#666666">IO exception</font>
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 【内部方法】 通过内存映射读取日志文件并建立索引
+     */
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < FILE_HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FILE_VERSION).flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            channel.position(FILE_HEADER_SIZE);
+            return;
+        }
+
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FILE_VERSION) {
+            throw new IOException("Not a session store file: " + file);
+        }
+
+        CRC32 crc = new CRC32();
+        int position = FILE_HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= size) {
+            int length = mapped.getInt(position);
+            int checksum = mapped.getInt(position + 4);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + (long) length > size) {
+                break;
+            }
+            ByteBuffer body = slice(mapped, position + RECORD_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            byte type = body.get(0);
+            int idLength = body.getShort(1) & 0xFFFF;
+            byte[] id = new byte[idLength];
+            ByteBuffer idBuffer = body.duplicate();
+            idBuffer.position(3);
+            idBuffer.get(id);
+            String sessionId = new String(id, StandardCharsets.UTF_8);
+            if (type == TYPE_PUT) {
+                putIndex(sessionId, slice(body, 3 + idLength, length - 3 - idLength));
+            } else {
+                removeIndex(sessionId);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        //截断尾部不完整的记录
+        if (position < size) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+    }
+
+    /**
+     * 【内部方法】 后台批量写入
+     */
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<Object>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                if (closed) {
+                    break;
+                }
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH);
+
+            List<Record> records = new ArrayList<Record>();
+            for (Object item : batch) {
+                if (item instanceof Record) {
+                    records.add((Record) item);
+                    continue;
+                }
+                //遇到等待点时先写入之前的记录
+                writeRecords(records);
+                records.clear();
+                if (item instanceof CountDownLatch) {
+                    ((CountDownLatch) item).countDown();
+                } else if (item instanceof CompactRequest) {
+                    CompactRequest request = (CompactRequest) item;
+                    try {
+                        doCompact();
+                    } catch (IOException e) {
+                        request.error = e;
+                    }
+                    request.latch.countDown();
+                }
+            }
+            writeRecords(records);
+            batch.clear();
+
+            //自动压缩，失败时原文件仍可使用，等文件再增长一倍后重试
+            long size;
+            try {
+                size = channel.size();
+            } catch (IOException e) {
+                writeError = e;
+                continue;
+            }
+            if (size > compactionMinSize && size > liveSize.get() * compactionRatio && size >= compactionRetrySize) {
+                try {
+                    doCompact();
+                    compactionRetrySize = 0;
+                } catch (IOException e) {
+                    compactionRetrySize = size * 2;
+                }
+            }
+        }
+    }
+
+    /**
+     * 【内部方法】 将一批记录一次性写入并落盘
+     */
+    private void writeRecords(List<Record> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        int total = 0;
+        for (Record record : records) {
+            total += record.size();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        for (Record record : records) {
+            record.writeTo(buffer);
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            writeError = e;
+        }
+    }
+
+    /**
+     * 【内部方法】 将有效数据写入新文件并原子替换日志文件
+     */
+    private void doCompact() throws IOException {
+        File temp = new File(file.getPath() + ".compact");
+        Map<String, ByteBuffer> snapshot = new HashMap<String, ByteBuffer>(index);
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(FILE_VERSION).flip();
+            out.write(header);
+            for (Map.Entry<String, ByteBuffer> entry : snapshot.entrySet()) {
+                //复制到堆内存，释放对旧文件映射的引用
+                ByteBuffer source = entry.getValue().duplicate();
+                byte[] data = new byte[source.remaining()];
+                source.get(data);
+                index.replace(entry.getKey(), entry.getValue(), ByteBuffer.wrap(data));
+
+                Record record = new Record(TYPE_PUT, entry.getKey(), data);
+                ByteBuffer buffer = ByteBuffer.allocate(record.size());
+                record.writeTo(buffer);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(true);
+        }
+
+        //替换成功前保持原文件打开，替换失败时继续使用原文件
+        FileChannel previous = channel;
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //部分平台不能替换已打开的文件，关闭后重试，仍失败时重新打开原文件
+            previous.close();
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException again) {
+                Files.deleteIfExists(temp.toPath());
+                channel = open();
+                throw again;
+            }
+        }
+        channel = open();
+        previous.close();
+    }
+
+    /**
+     * 【内部方法】 打开日志文件并定位到末尾
+     */
+    private FileChannel open() throws IOException {
+        FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        opened.position(opened.size());
+        return opened;
+    }
+
+    /**
+     * 【内部方法】 更新索引并累计有效数据大小
+     */
+    private void putIndex(String sessionId, ByteBuffer data) {
+        ByteBuffer previous = index.put(sessionId, data);
+        long delta = recordSize(sessionId, data);
+        if (previous != null) {
+            delta -= recordSize(sessionId, previous);
+        }
+        liveSize.addAndGet(delta);
+    }
+
+    /**
+     * 【内部方法】 从索引删除并扣除其数据大小
+     */
+    private boolean removeIndex(String sessionId) {
+        ByteBuffer previous = index.remove(sessionId);
+        if (previous == null) {
+            return false;
+        }
+        liveSize.addAndGet(-recordSize(sessionId, previous));
+        return true;
+    }
+
+    private static long recordSize(String sessionId, ByteBuffer data) {
+        return RECORD_HEADER_SIZE + 3 + sessionId.getBytes(StandardCharsets.UTF_8).length + data.remaining();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("The session store is closed.");
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 日志记录：[长度][CRC32][类型][会话ID长度][会话ID][会话数据]
+     */
+    private static final class Record {
+        final byte type;
+        final byte[] id;
+        final byte[] data;
+
+        Record(byte type, String sessionId, byte[] data) {
+            this.type = type;
+            this.id = sessionId.getBytes(StandardCharsets.UTF_8);
+            this.data = data;
+            if (id.length > 0xFFFF) {
+                throw new IllegalArgumentException("Session ID is too long.");
+            }
+        }
+
+        int size() {
+            return RECORD_HEADER_SIZE + 3 + id.length + data.length;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            int length = 3 + id.length + data.length;
+            ByteBuffer body = ByteBuffer.allocate(length);
+            body.put(type).putShort((short) id.length).put(id).put(data).flip();
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            buffer.putInt(length).putInt((int) crc.getValue()).put(body);
+        }
+    }
+
+    private static final class CompactRequest {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile IOException error;
+    }
+}
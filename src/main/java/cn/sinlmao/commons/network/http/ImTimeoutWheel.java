@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * <b>哈希时间轮定时器类</b>
+ * <p>
+ * 该类以一个后台线程按固定刻度推进时间轮，到期时执行任务。添加和取消定时任务均为无锁的O(1)操作，
+ * 大量几乎总是被取消的超时任务（如请求超时）几乎没有开销；到期时间的精度为一个刻度。
+ * 所有任务在同一线程上执行，任务只能标记状态或把工作交给其他线程，不得阻塞，否则其他超时将无法按时触发
+ * <br/><br/>
+ * <b>Hashed wheel timer class</b>
+ * <p>
+ * This class advances a timing wheel by fixed ticks on one background thread and runs tasks when they expire. Adding
+ * and cancelling a timeout are lock-free O(1) operations, so large numbers of timeouts that are almost always cancelled
+ * (such as request timeouts) cost almost nothing; expiry is accurate to one tick. All tasks run on the same thread, so a
+ * task must only flag state or hand work to another thread and never block, or every other timeout stops firing.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description 哈希时间轮定时器类
+ * @create 2019-11-18 10:20
+ * @since 1.5.0
+ */
+final class ImTimeoutWheel {
+
+    //请求超时共用的定时器
+    final static ImTimeoutWheel SHARED = new ImTimeoutWheel(10, 512);
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    private final long startTime = System.nanoTime();
+
+    private volatile Thread worker;
+    private long tick;
+
+    /**
+     * 构造哈希时间轮定时器
+     *
+     * @param tickMillis 刻度（毫秒）
+     * @param wheelSize  时间轮格数，向上取整为2的幂
+     */
+    ImTimeoutWheel(long tickMillis, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMillis, 1));
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 添加定时任务，任务在定时器线程中执行，应尽快返回
+     *
+     * @param task        到期时执行的任务
+     * @param delayMillis 延迟时间（毫秒）
+     * @return 定时任务
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        if (worker == null) {
+            start();
+        }
+        long delay = TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        Timeout timeout = new Timeout(task, System.nanoTime() - startTime + delay);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if (worker == null) {
+            Thread thread = new Thread(this::run, "ImHttpClient-timeout-wheel");
+            thread.setDaemon(true);
+            thread.start();
+            worker = thread;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep;
+            while ((sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    //定时器线程不会被中止
+                }
+            }
+            transferPending();
+            expire(buckets[(int) (tick & mask)], deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * 【内部方法】 将新添加的定时任务放入对应的格子
+     */
+    private void transferPending() {
+        //每个刻度最多处理固定数量，避免添加过快时阻塞时间轮
+        for (int i = 0; i < 100000; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state != Timeout.ST_INIT) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadline / tickNanos, tick);
+            timeout.rounds = (ticks - tick) / buckets.length;
+            int index = (int) (ticks & mask);
+            timeout.bucket = index;
+            timeout.next = buckets[index];
+            if (buckets[index] != null) {
+                buckets[index].prev = timeout;
+            }
+            buckets[index] = timeout;
+        }
+    }
+
+    /**
+     * 【内部方法】 执行格子中到期的任务，并移除已取消的任务
+     */
+    private void expire(Timeout head, long deadline) {
+        Timeout timeout = head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.state == Timeout.ST_CANCELLED) {
+                remove(timeout);
+            } else if (timeout.rounds <= 0 && timeout.deadline <= deadline) {
+                remove(timeout);
+                timeout.expire();
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void remove(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 定时任务
+     */
+    static final class Timeout {
+
+        private final static int ST_INIT = 0;
+        private final static int ST_CANCELLED = 1;
+        private final static int ST_EXPIRED = 2;
+
+        private final static AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final Runnable task;
+        private final long deadline;
+        private volatile int state = ST_INIT;
+
+        //以下字段只由定时器线程访问
+        private long rounds;
+        private int bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消定时任务，已取消的任务在定时器线程下次经过时移除
+         *
+         * @return 是否在到期前取消
+         */
+        boolean cancel() {
+            return STATE.compareAndSet(this, ST_INIT, ST_CANCELLED);
+        }
+
+        /**
+         * 获取定时任务是否已经到期执行
+         *
+         * @return 是否已经到期
+         */
+        boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    //任务异常不影响定时器线程
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.tools;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <b>HTTP日期解析工具类</b>
+ * <p>
+ * 该类按照RFC 6265 5.1.1的算法解析HTTP日期，兼容RFC 1123、RFC 850及asctime格式，解析结果会被缓存
+ * <br /><br />
+ * <b>HTTP date parsing tool class</b>
+ * <p>
+ * This class parses HTTP dates with the algorithm of RFC 6265 5.1.1, which accepts the RFC 1123, RFC 850 and asctime
+ * formats. Parse results are cached.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description HTTP日期解析工具类
+ * @create 2019-11-15 09:40
+ * @since 1.5.0
+ */
+public class HttpDateTool {
+
+    private final static String[] MONTHS = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+
+    /**
+     * 无法解析时的返回值，早于1970年的有效日期为负数，因此不使用-1等负数表示失败
+     * <p>
+     * <font color="#777777">Value returned when a date cannot be parsed. Valid dates before 1970 are negative, so no
+     * ordinary negative value such as -1 is used to signal a failure.</font>
+     */
+    public final static long INVALID = Long.MIN_VALUE;
+
+    private final static int CACHE_SIZE = 256;
+    private final static ConcurrentHashMap<String, Long> CACHE = new ConcurrentHashMap<String, Long>();
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * 解析HTTP日期
+     * <p>
+     * <font color="#777777">Parse an HTTP date</font>
+     *
+     * @param date HTTP日期字符串 <br/> <font color="#777777">HTTP date string</font>
+     * @return Unix时间戳（毫秒），无法解析时返回{@link #INVALID} <br/> <font color="#777777">Unix timestamp (milliseconds), {@link #INVALID} when it cannot be parsed</font>
+     */
+    public static long parse(String date) {
+        if (date == null || date.isEmpty()) {
+            return INVALID;
+        }
+        Long cached = CACHE.get(date);
+        if (cached != null) {
+            return cached;
+        }
+        long millis = parse(date, 0, date.length());
+        if (CACHE.size() >= CACHE_SIZE) {
+            CACHE.clear();
+        }
+        CACHE.put(date, millis);
+        return millis;
+    }
+
+    /**
+     * 解析字符串指定区间内的HTTP日期（不使用缓存）
+     * <p>
+     * <font color="#777777">Parse an HTTP date within the given range of a string (without the cache)</font>
+     *
+     * @param text  字符串 <br/> <font color="#777777">String</font>
+     * @param start 起始索引（包含） <br/> <font color="#777777">Start index (inclusive)</font>
+     * @param end   结束索引（不包含） <br/> <font color="#777777">End index (exclusive)</font>
+     * @return Unix时间戳（毫秒），无法解析时返回{@link #INVALID} <br/> <font color="#777777">Unix timestamp (milliseconds), {@link #INVALID} when it cannot be parsed</font>
+     */
+    public static long parse(CharSequence text, int start, int end) {
+        int hour = -1, minute = -1, second = -1, day = -1, month = -1, year = -1;
+
+        int i = start;
+        while (i < end) {
+            //跳过分隔符
+            while (i < end && isDelimiter(text.charAt(i))) {
+                i++;
+            }
+            int tokenStart = i;
+            while (i < end && !isDelimiter(text.charAt(i))) {
+                i++;
+            }
+            if (tokenStart == i) {
+                break;
+            }
+
+            //时间：1*2DIGIT ":" 1*2DIGIT ":" 1*2DIGIT
+            if (hour < 0) {
+                int[] time = parseTime(text, tokenStart, i);
+                if (time != null) {
+                    hour = time[0];
+                    minute = time[1];
+                    second = time[2];
+                    continue;
+                }
+            }
+            int digits = leadingDigits(text, tokenStart, i);
+            //日：1*2DIGIT
+            if (day < 0 && digits >= 1 && digits <= 2) {
+                day = number(text, tokenStart, tokenStart + digits);
+                continue;
+            }
+            //月：月份名称前三个字母
+            if (month < 0 && i - tokenStart >= 3) {
+                int index = monthIndex(text, tokenStart);
+                if (index >= 0) {
+                    month = index;
+                    continue;
+                }
+            }
+            //年：2*4DIGIT
+            if (year < 0 && digits >= 2 && digits <= 4) {
+                year = number(text, tokenStart, tokenStart + digits);
+            }
+        }
+
+        if (hour < 0 || day < 0 || month < 0 || year < 0) {
+            return INVALID;
+        }
+        if (year >= 70 && year <= 99) {
+            year += 1900;
+        } else if (year >= 0 && year <= 69) {
+            year += 2000;
+        }
+        if (day < 1 || day > 31 || year < 1601 || hour > 23 || minute > 59 || second > 59) {
+            return INVALID;
+        }
+        return (daysFromCivil(year, month + 1, day) * 86400L + hour * 3600L + minute * 60L + second) * 1000L;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static boolean isDelimiter(char c) {
+        return c == 0x09
+                || (c >= 0x20 && c <= 0x2F)
+                || (c >= 0x3B && c <= 0x40)
+                || (c >= 0x5B && c <= 0x60)
+                || (c >= 0x7B && c <= 0x7E);
+    }
+
+    private static int leadingDigits(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        return i - start;
+    }
+
+    private static int number(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int[] parseTime(CharSequence text, int start, int end) {
+        int[] time = new int[3];
+        int i = start;
+        for (int part = 0; part < 3; part++) {
+            int digits = leadingDigits(text, i, end);
+            if (digits < 1 || digits > 2) {
+                return null;
+            }
+            time[part] = number(text, i, i + digits);
+            i += digits;
+            if (part < 2) {
+                if (i >= end || text.charAt(i) != ':') {
+                    return null;
+                }
+                i++;
+            }
+        }
+        return time;
+    }
+
+    private static int monthIndex(CharSequence text, int start) {
+        for (int m = 0; m < MONTHS.length; m++) {
+            String month = MONTHS[m];
+            if (Character.toLowerCase(text.charAt(start)) == month.charAt(0)
+                    && Character.toLowerCase(text.charAt(start + 1)) == month.charAt(1)
+                    && Character.toLowerCase(text.charAt(start + 2)) == month.charAt(2)) {
+                return m;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 公历日期到1970-01-01的天数
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yoe = year - era * 400;
+        long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+}
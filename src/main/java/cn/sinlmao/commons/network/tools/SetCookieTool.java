@@ -0,0 +1,177 @@
+/**
+ * Copyright (c) 2019, Sinlmao (888@1st.com).
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cn.sinlmao.commons.network.tools;
+
+import cn.sinlmao.commons.network.bean.ImResponseCookie;
+
+/**
+ * <b>Set-Cookie响应头解析工具类</b>
+ * <p>
+ * 该类单次遍历Set-Cookie响应头，直接填充ImResponseCookie，并将Max-Age、Expires换算为过期时间戳
+ * <br /><br />
+ * <b>Set-Cookie response header parsing tool class</b>
+ * <p>
+ * This class walks the Set-Cookie response header once, fills the ImResponseCookie directly and converts Max-Age and
+ * Expires into an expiry timestamp.
+ *
+ * @author Sinlmao
+ * @program Sinlmao Commons Network Utils
+ * @description Set-Cookie响应头解析工具类
+ * @create 2019-11-15 10:30
+ * @see ImResponseCookie
+ * @since 1.5.0
+ */
+public class SetCookieTool {
+
+    /**
+     * 解析一个Set-Cookie响应头
+     * <p>
+     * <font color="#777777">Parse a Set-Cookie response header</font>
+     *
+     * @param header Set-Cookie响应头的值 <br/> <font color="#777777">Value of the Set-Cookie response header</font>
+     * @param now    当前时间（Unix时间戳，毫秒），用于计算Max-Age <br/> <font color="#777777">Current time (Unix timestamp, milliseconds), used to compute Max-Age</font>
+     * @return Cookie数据，没有Cookie名称时返回null <br/> <font color="#777777">Cookie data, null when there is no cookie name</font>
+     */
+    public static ImResponseCookie parse(String header, long now) {
+        if (header == null) {
+            return null;
+        }
+        int length = header.length();
+
+        //处理Cookie的Key-Value属性
+        int end = header.indexOf(';');
+        if (end < 0) {
+            end = length;
+        }
+        int equals = indexOf(header, '=', 0, end);
+        int nameStart = skipSpace(header, 0, end);
+        int nameEnd = trimEnd(header, nameStart, equals < 0 ? end : equals);
+        if (nameEnd <= nameStart) {
+            return null;
+        }
+        ImResponseCookie cookie = new ImResponseCookie();
+        cookie.setName(header.substring(nameStart, nameEnd));
+        if (equals < 0) {
+            //如果没有=号，说此为标记符
+            cookie.setValue("null");
+        } else {
+            int valueStart = skipSpace(header, equals + 1, end);
+            cookie.setValue(header.substring(valueStart, trimEnd(header, valueStart, end)));
+        }
+
+        //处理Cookie的其它属性
+        long maxAgeAt = Long.MIN_VALUE;
+        long expiresAt = -1;
+        int start = end + 1;
+        while (start < length) {
+            end = header.indexOf(';', start);
+            if (end < 0) {
+                end = length;
+            }
+            int keyStart = skipSpace(header, start, end);
+            equals = indexOf(header, '=', keyStart, end);
+            int keyEnd = trimEnd(header, keyStart, equals < 0 ? end : equals);
+            int valueStart = equals < 0 ? end : skipSpace(header, equals + 1, end);
+            int valueEnd = trimEnd(header, valueStart, end);
+            int keyLength = keyEnd - keyStart;
+
+            if (is(header, keyStart, keyLength, "domain")) {    //处理Cookie的domain属性
+                cookie.setDomain(header.substring(valueStart, valueEnd));
+            } else if (is(header, keyStart, keyLength, "path")) {    //处理Cookie的path属性
+                cookie.setPath(header.substring(valueStart, valueEnd));
+            } else if (is(header, keyStart, keyLength, "expires")) {    //处理Cookie的expires属性
+                String expires = header.substring(valueStart, valueEnd);
+                cookie.setExpires(expires);
+                long parsed = HttpDateTool.parse(expires);
+                if (parsed != HttpDateTool.INVALID) {
+                    //早于1970年的日期（如用于删除Cookie的1900年）同样视为已过期
+                    expiresAt = Math.max(parsed, 0);
+                }
+            } else if (is(header, keyStart, keyLength, "max-age")) {    //处理Cookie的max-age属性
+                cookie.setMaxAge(header.substring(valueStart, valueEnd));
+                long seconds = parseLong(header, valueStart, valueEnd);
+                if (seconds != Long.MIN_VALUE) {
+                    maxAgeAt = seconds <= 0 ? 0 : now + seconds * 1000L;
+                }
+            } else if (is(header, keyStart, keyLength, "secure")) {    //处理Cookie的secure属性
+                cookie.setSecure(true);
+            } else if (is(header, keyStart, keyLength, "httponly")) {    //处理Cookie的httpOnly属性
+                cookie.setHttpOnly(true);
+            }
+            start = end + 1;
+        }
+
+        //Max-Age优先于Expires
+        cookie.setExpiresAtMillis(maxAgeAt != Long.MIN_VALUE ? maxAgeAt : expiresAt);
+        return cookie;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    private static boolean is(String text, int start, int length, String name) {
+        return length == name.length() && text.regionMatches(true, start, name, 0, length);
+    }
+
+    private static int indexOf(String text, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSpace(String text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(String text, int start, int end) {
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 解析Max-Age的整数值，无法解析时返回Long.MIN_VALUE
+     */
+    private static long parseLong(String text, int start, int end) {
+        if (start >= end) {
+            return Long.MIN_VALUE;
+        }
+        boolean negative = text.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i >= end) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            //超过范围时按最大值处理
+            if (value > (Long.MAX_VALUE / 1000 - 9) / 10) {
+                return negative ? 0 : Long.MAX_VALUE / 1000 / 2;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+}